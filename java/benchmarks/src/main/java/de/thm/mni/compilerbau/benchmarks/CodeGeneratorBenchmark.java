@@ -0,0 +1,41 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+import de.thm.mni.compilerbau.phases._06_codegen.CodeGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link CodeGenerator#generateCode} on the programs of the corpus.
+ * The generated code is formatted as usual, but discarded instead of being written to a file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodeGeneratorBenchmark {
+    @Param({Corpus.RUNTIME_TESTS, Corpus.SYNTHETIC})
+    public String corpus;
+
+    private List<Compilation> compilations;
+
+    @Setup
+    public void setup() throws Exception {
+        compilations = Corpus.compile(corpus);
+        compilations.forEach(compilation -> compilation.check().allocVars());
+    }
+
+    @Benchmark
+    public void generateCode() {
+        for (Compilation compilation : compilations) {
+            PrintWriter output = new PrintWriter(Writer.nullWriter());
+            new CodeGenerator(output, new CodeGenerator.Options(), null).generateCode(compilation.program, compilation.table);
+            output.flush();
+        }
+    }
+}
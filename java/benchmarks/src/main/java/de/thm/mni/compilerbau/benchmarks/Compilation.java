@@ -0,0 +1,31 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+import de.thm.mni.compilerbau.absyn.Program;
+import de.thm.mni.compilerbau.phases._04a_tablebuild.TableBuilder;
+import de.thm.mni.compilerbau.phases._04b_semant.ProcedureBodyChecker;
+import de.thm.mni.compilerbau.phases._05_varalloc.VarAllocator;
+import de.thm.mni.compilerbau.table.SymbolTable;
+
+/**
+ * A parsed program together with its symbol table.
+ * The later phases can be run on it step by step to prepare the input of the benchmarked phase.
+ */
+final class Compilation {
+    final Program program;
+    final SymbolTable table;
+
+    Compilation(Program program) {
+        this.program = program;
+        this.table = new TableBuilder(false).buildSymbolTable(program);
+    }
+
+    Compilation check() {
+        new ProcedureBodyChecker().checkProcedures(program, table);
+        return this;
+    }
+
+    Compilation allocVars() {
+        new VarAllocator(new VarAllocator.Options()).allocVars(program, table);
+        return this;
+    }
+}
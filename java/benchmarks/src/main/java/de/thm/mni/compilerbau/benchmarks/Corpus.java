@@ -0,0 +1,112 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+import de.thm.mni.compilerbau.CommandLineOptions;
+import de.thm.mni.compilerbau.absyn.Program;
+import de.thm.mni.compilerbau.phases._01_scanner.Scanner;
+import de.thm.mni.compilerbau.phases._02_03_parser.Parser;
+import de.thm.mni.compilerbau.utils.SplError;
+import java_cup.runtime.DefaultSymbolFactory;
+import java_cup.runtime.SymbolFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The SPL programs the benchmarks are run on.
+ * <p>
+ * The corpus {@value RUNTIME_TESTS} consists of every program in 'tests/runtime_tests' that compiles without any
+ * command line options. Its location can be changed with the system property 'spl.corpus'.
+ * The corpus {@value SYNTHETIC} is a single large program generated by {@link SyntheticProgram}.
+ */
+final class Corpus {
+    static final String RUNTIME_TESTS = "runtime_tests";
+    static final String SYNTHETIC = "synthetic";
+
+    private static final int SYNTHETIC_PROCEDURES = 400;
+
+    private static final CommandLineOptions options = new CommandLineOptions();
+
+    @SuppressWarnings("deprecation")
+    private static final SymbolFactory symbolFactory = new DefaultSymbolFactory();
+
+    private Corpus() {
+    }
+
+    /**
+     * Loads the source code of all programs in a corpus.
+     *
+     * @param name The name of the corpus.
+     * @return The source code of every program in the corpus.
+     */
+    static List<String> load(String name) throws IOException {
+        switch (name) {
+            case RUNTIME_TESTS:
+                return loadRuntimeTests(Paths.get(System.getProperty("spl.corpus", "../tests/runtime_tests")));
+            case SYNTHETIC:
+                return List.of(SyntheticProgram.generate(SYNTHETIC_PROCEDURES));
+            default:
+                throw new IllegalArgumentException(String.format("Unknown corpus '%s'", name));
+        }
+    }
+
+    /**
+     * Loads a corpus and runs the phases up to the semantic analysis on every program.
+     *
+     * @param name The name of the corpus.
+     * @return The parsed programs together with their symbol tables.
+     */
+    static List<Compilation> compile(String name) throws Exception {
+        List<Compilation> compilations = new ArrayList<>();
+        for (String source : load(name)) compilations.add(new Compilation(parse(source)));
+        return compilations;
+    }
+
+    static Scanner scanner(String source) {
+        Scanner scanner = new Scanner(new StringReader(source));
+        scanner.options = options;
+        return scanner;
+    }
+
+    static Program parse(String source) throws Exception {
+        Parser parser = new Parser(scanner(source), symbolFactory);
+        parser.options = options;
+        return (Program) parser.parse().value;
+    }
+
+    private static List<String> loadRuntimeTests(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.toString().endsWith(".spl")).sorted().collect(Collectors.toList());
+        }
+
+        List<String> sources = new ArrayList<>();
+        for (Path file : files) {
+            String source = Files.readString(file);
+            if (compilesWithoutErrors(source)) sources.add(source);
+        }
+        if (sources.isEmpty()) throw new IOException(String.format("No SPL programs found in '%s'", directory));
+        return sources;
+    }
+
+    /**
+     * Some of the runtime tests need command line options or are expected to fail.
+     * Those are excluded, as the later phases cannot be benchmarked on them.
+     */
+    private static boolean compilesWithoutErrors(String source) {
+        try {
+            new Compilation(parse(source)).check();
+            return true;
+        } catch (SplError error) {
+            return false;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
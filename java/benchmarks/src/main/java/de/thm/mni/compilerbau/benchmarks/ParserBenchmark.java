@@ -0,0 +1,35 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+import de.thm.mni.compilerbau.phases._02_03_parser.Parser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link Parser} by building the abstract syntax tree of every program in the corpus.
+ * This includes the time spent in the scanner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({Corpus.RUNTIME_TESTS, Corpus.SYNTHETIC})
+    public String corpus;
+
+    private List<String> sources;
+
+    @Setup
+    public void setup() throws Exception {
+        sources = Corpus.load(corpus);
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws Exception {
+        for (String source : sources) blackhole.consume(Corpus.parse(source));
+    }
+}
@@ -0,0 +1,36 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+import de.thm.mni.compilerbau.phases._04b_semant.ProcedureBodyChecker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ProcedureBodyChecker#checkProcedures} on the programs of the corpus.
+ * The symbol tables are built beforehand.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcedureBodyCheckerBenchmark {
+    @Param({Corpus.RUNTIME_TESTS, Corpus.SYNTHETIC})
+    public String corpus;
+
+    private List<Compilation> compilations;
+
+    @Setup
+    public void setup() throws Exception {
+        compilations = Corpus.compile(corpus);
+    }
+
+    @Benchmark
+    public void checkProcedures() {
+        for (Compilation compilation : compilations) {
+            new ProcedureBodyChecker().checkProcedures(compilation.program, compilation.table);
+        }
+    }
+}
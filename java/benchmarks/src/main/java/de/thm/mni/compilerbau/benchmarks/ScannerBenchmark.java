@@ -0,0 +1,43 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+import de.thm.mni.compilerbau.phases._01_scanner.Scanner;
+import de.thm.mni.compilerbau.phases._02_03_parser.Sym;
+import java_cup.runtime.Symbol;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link Scanner} by reading all tokens of every program in the corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerBenchmark {
+    @Param({Corpus.RUNTIME_TESTS, Corpus.SYNTHETIC})
+    public String corpus;
+
+    private List<String> sources;
+
+    @Setup
+    public void setup() throws Exception {
+        sources = Corpus.load(corpus);
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole) throws Exception {
+        for (String source : sources) {
+            Scanner scanner = Corpus.scanner(source);
+            Symbol token;
+            do {
+                token = scanner.next_token();
+                blackhole.consume(token);
+            } while (token.sym != Sym.EOF);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+import de.thm.mni.compilerbau.absyn.Position;
+import de.thm.mni.compilerbau.phases._04b_semant.ProcedureBodyChecker;
+import de.thm.mni.compilerbau.table.Entry;
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.table.VariableEntry;
+import de.thm.mni.compilerbau.types.PrimitiveType;
+import de.thm.mni.compilerbau.types.Type;
+import de.thm.mni.compilerbau.utils.SplError;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the successful lookups, entries and type checks of the semantic analysis on their own, with the same
+ * checks as {@link de.thm.mni.compilerbau.phases._04a_tablebuild.TableBuilder} and {@link ProcedureBodyChecker}.
+ * The errors are only built if they are thrown, so with the GC profiler {@link #lookup} and {@link #checkType} report
+ * about 0 B/op, and {@link #enter} no more than {@link #enterUnchecked}, which stores the same symbols without
+ * checking for redeclarations. The bytes left are the entries of the hash map of the table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SymbolTableBenchmark {
+    private static final int SYMBOLS = 64;
+    private static final Position POSITION = new Position(1, 1);
+
+    private final Identifier[] names = new Identifier[SYMBOLS];
+    private final Identifier[] lookedUpNames = new Identifier[SYMBOLS];
+    private final VariableEntry[] entries = new VariableEntry[SYMBOLS];
+    private final Type[] types = new Type[SYMBOLS];
+    private SymbolTable globalTable;
+    private SymbolTable localTable;
+
+    @Setup
+    public void setup() {
+        globalTable = new SymbolTable();
+        localTable = new SymbolTable(globalTable);
+        for (int i = 0; i < SYMBOLS; i++) {
+            names[i] = new Identifier("variable" + i);
+            // Equal, but not identical to the names entered, like the identifiers of the syntax tree
+            lookedUpNames[i] = new Identifier("variable" + i);
+            entries[i] = new VariableEntry(PrimitiveType.intType, false);
+            types[i] = PrimitiveType.intType;
+            (i % 2 == 0 ? localTable : globalTable).enter(names[i], entries[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public void lookup(Blackhole blackhole) {
+        for (Identifier name : lookedUpNames) {
+            Entry entry = localTable.lookup(name);
+            if (entry == null) throw SplError.UndefinedVariable(POSITION, name);
+            blackhole.consume(entry);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public void checkType() {
+        for (Type type : types) {
+            ProcedureBodyChecker.checkType(PrimitiveType.intType, type, POSITION);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public SymbolTable enter() {
+        SymbolTable table = new SymbolTable(globalTable);
+        for (int i = 0; i < SYMBOLS; i++) {
+            if (!table.enter(names[i], entries[i])) throw SplError.RedeclarationAsVariable(POSITION, names[i]);
+        }
+        return table;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public SymbolTable enterUnchecked() {
+        SymbolTable table = new SymbolTable(globalTable);
+        for (int i = 0; i < SYMBOLS; i++) {
+            table.enter(names[i], entries[i]);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,78 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generates large SPL programs to benchmark the compiler on inputs bigger than the runtime tests.
+ * <p>
+ * Every procedure walks over one- and two-dimensional arrays in nested loops, evaluates deeply nested arithmetic
+ * expressions, branches on comparisons and calls its predecessor, so every phase has a realistic amount of work.
+ * The generated program only has to compile, it is never run.
+ */
+final class SyntheticProgram {
+    private static final String[] OPERATORS = {"+", "-", "*", "/"};
+    private static final String[] COMPARISONS = {"=", "#", "<", "<=", ">", ">="};
+    private static final String[] OPERANDS = {"a", "i", "j", "k", "v[i]", "v[j]", "m[i][j]", "w[k]"};
+    private static final int EXPRESSION_DEPTH = 5;
+
+    private final Random random = new Random(42); // Fixed seed, so every benchmark run compiles the same program
+    private final StringBuilder source = new StringBuilder();
+
+    private SyntheticProgram() {
+    }
+
+    /**
+     * @param procedures The number of procedures besides 'main' the program consists of.
+     * @return The source code of the generated program.
+     */
+    static String generate(int procedures) {
+        return new SyntheticProgram().program(procedures);
+    }
+
+    private String program(int procedures) {
+        source.append("type vector = array [16] of int;\n");
+        source.append("type matrix = array [16] of vector;\n\n");
+        for (int i = 0; i < procedures; i++) procedure(i);
+        source.append("proc main() {\n");
+        source.append("  var v: vector;\n");
+        source.append("  var m: matrix;\n");
+        source.append(String.format("  p%d(1, v, m);\n", procedures - 1));
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private void procedure(int number) {
+        source.append(String.format("proc p%d(a: int, ref v: vector, ref m: matrix) {\n", number));
+        source.append("  var i: int;\n");
+        source.append("  var j: int;\n");
+        source.append("  var k: int;\n");
+        source.append("  var w: vector;\n");
+        source.append("  i := 0;\n");
+        source.append("  k := a - a / 16 * 16;\n");
+        source.append("  while (i < 16) {\n");
+        source.append("    j := 0;\n");
+        source.append("    while (j < 16) {\n");
+        source.append(String.format("      m[i][j] := %s;\n", expression(EXPRESSION_DEPTH)));
+        source.append("      j := j + 1;\n");
+        source.append("    }\n");
+        source.append(String.format("    if (%s %s %s) {\n", expression(2), pick(COMPARISONS), expression(2)));
+        source.append(String.format("      v[i] := %s;\n", expression(3)));
+        source.append("    } else {\n");
+        source.append(String.format("      w[k] := -%s;\n", expression(3)));
+        source.append("    }\n");
+        source.append("    i := i + 1;\n");
+        source.append("  }\n");
+        if (number > 0) source.append(String.format("  p%d(%s, w, m);\n", number - 1, expression(2)));
+        else source.append("  printi(v[0]);\n");
+        source.append("}\n\n");
+    }
+
+    private String expression(int depth) {
+        if (depth == 0) return random.nextBoolean() ? pick(OPERANDS) : Integer.toString(random.nextInt(100) + 1);
+        return String.format("(%s %s %s)", expression(depth - 1), pick(OPERATORS), expression(depth - 1));
+    }
+
+    private String pick(String[] choices) {
+        return choices[random.nextInt(choices.length)];
+    }
+}
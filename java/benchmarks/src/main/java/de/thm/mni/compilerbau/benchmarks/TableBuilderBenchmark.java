@@ -0,0 +1,37 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+import de.thm.mni.compilerbau.absyn.Program;
+import de.thm.mni.compilerbau.phases._04a_tablebuild.TableBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link TableBuilder#buildSymbolTable} on the already parsed programs of the corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableBuilderBenchmark {
+    @Param({Corpus.RUNTIME_TESTS, Corpus.SYNTHETIC})
+    public String corpus;
+
+    private List<Program> programs;
+
+    @Setup
+    public void setup() throws Exception {
+        programs = new ArrayList<>();
+        for (String source : Corpus.load(corpus)) programs.add(Corpus.parse(source));
+    }
+
+    @Benchmark
+    public void buildSymbolTable(Blackhole blackhole) {
+        for (Program program : programs) blackhole.consume(new TableBuilder(false).buildSymbolTable(program));
+    }
+}
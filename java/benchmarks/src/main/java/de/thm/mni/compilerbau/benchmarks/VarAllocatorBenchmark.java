@@ -0,0 +1,37 @@
+package de.thm.mni.compilerbau.benchmarks;
+
+import de.thm.mni.compilerbau.phases._05_varalloc.VarAllocator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link VarAllocator#allocVars} on the programs of the corpus.
+ * The programs are checked beforehand, as the allocation relies on the types computed by the semantic analysis.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VarAllocatorBenchmark {
+    @Param({Corpus.RUNTIME_TESTS, Corpus.SYNTHETIC})
+    public String corpus;
+
+    private List<Compilation> compilations;
+
+    @Setup
+    public void setup() throws Exception {
+        compilations = Corpus.compile(corpus);
+        compilations.forEach(Compilation::check);
+    }
+
+    @Benchmark
+    public void allocVars() {
+        for (Compilation compilation : compilations) {
+            new VarAllocator(new VarAllocator.Options()).allocVars(compilation.program, compilation.table);
+        }
+    }
+}
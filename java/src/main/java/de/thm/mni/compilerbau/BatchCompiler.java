@@ -0,0 +1,124 @@
+package de.thm.mni.compilerbau;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many SPL files concurrently on a bounded thread pool (--batch).
+ * <p>
+ * The output of every file is captured by {@link OutputCapture} and printed in the order the files were given,
+ * so it does not depend on the scheduling of the compilations.
+ * The exit code is the one of the first file that failed to compile, or 0 if all files compiled successfully.
+ */
+class BatchCompiler {
+    private final CommandLineOptions options;
+
+    BatchCompiler(CommandLineOptions options) {
+        this.options = options;
+    }
+
+    int run() {
+        List<Path> files;
+        try {
+            files = collectFiles();
+        } catch (IOException e) {
+            System.err.printf("An error occurred: Cannot read directory '%s'\n", e.getMessage());
+            return 1;
+        }
+
+        OutputCapture.install();
+        ExecutorService workers = Executors.newFixedThreadPool(options.jobs);
+        try {
+            List<Future<OutputCapture>> results = new ArrayList<>();
+            for (Path file : files) {
+                CommandLineOptions fileOptions = options.forFile(file.toString(), codeFilename(file));
+                results.add(workers.submit(() -> OutputCapture.run(() -> Main.compile(fileOptions))));
+            }
+
+            int exitCode = 0;
+            int failedFiles = 0;
+            for (int i = 0; i < files.size(); i++) {
+                int fileExitCode = report(files.get(i), results.get(i));
+                if (fileExitCode != 0) {
+                    failedFiles++;
+                    if (exitCode == 0) exitCode = fileExitCode;
+                }
+            }
+
+            if (failedFiles > 0) System.err.printf("%d of %d files failed to compile\n", failedFiles, files.size());
+            return exitCode;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Lists the given files and all '.spl' files in the given directories and their subdirectories.
+     */
+    private List<Path> collectFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String input : options.batchInputs) {
+            Path path = Paths.get(input);
+            if (!Files.isDirectory(path)) {
+                files.add(path);
+                continue;
+            }
+
+            try (Stream<Path> walk = Files.walk(path)) {
+                files.addAll(walk.filter(file -> file.toString().endsWith(".spl") && Files.isRegularFile(file))
+                        .sorted()
+                        .collect(Collectors.toList()));
+            } catch (IOException | RuntimeException e) {
+                throw new IOException(input, e);
+            }
+        }
+        return files;
+    }
+
+    private static String codeFilename(Path file) {
+        String name = file.toString();
+        int extension = name.lastIndexOf('.');
+        if (extension <= name.lastIndexOf(file.getFileSystem().getSeparator())) extension = name.length();
+        return name.substring(0, extension) + ".s";
+    }
+
+    /**
+     * Waits for the compilation of a file and prints its output, headed by the name of the file.
+     *
+     * @return The exit code of the compilation.
+     */
+    private static int report(Path file, Future<OutputCapture> result) {
+        try {
+            OutputCapture output = result.get();
+            print(System.out, file, output.out);
+            print(System.err, file, output.err);
+            return output.exitCode;
+        } catch (ExecutionException e) {
+            System.err.printf("%s:\nAn error occurred: %s\n", file, e.getCause());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.printf("%s:\nAn error occurred: Interrupted\n", file);
+            return 1;
+        }
+    }
+
+    private static void print(PrintStream stream, Path file, ByteArrayOutputStream output) {
+        if (output.size() == 0) return;
+        stream.printf("%s:\n", file);
+        stream.print(output);
+        stream.flush();
+    }
+}
@@ -1,30 +1,71 @@
 package de.thm.mni.compilerbau;
 
-import java.io.*;
+import de.thm.mni.compilerbau.phases._05_varalloc.VarAllocator;
+import de.thm.mni.compilerbau.phases._06_codegen.CodeCache;
+import de.thm.mni.compilerbau.phases._06_codegen.CodeGenerator;
 
-import static java.lang.System.exit;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 
 public class CommandLineOptions {
     enum PhaseOption {
-        TOKENS, PARSE, ABSYN, TABLES, SEMANT, VARS;
+        TOKENS, PARSE, ABSYN, TABLES, SEMANT, CFG, VARS;
     }
 
     public PhaseOption phaseOption = null;
     public boolean ershovOptimization = false;
+    public boolean inlining = false;
+    public boolean constantFolding = false;
+    public boolean rangeAnalysis = false;
+    public boolean rangeReport = false;
+    public boolean ssaForm = false;
+    public boolean immediateOperands = false;
+    public boolean strengthReduction = false;
+    public boolean peepholeOptimization = false;
+    public boolean registerVariables = false;
+    public boolean linearScan = false;
+    public boolean loopOptimization = false;
+    public boolean inductionVariables = false;
+    public boolean tailCalls = false;
+    public boolean registerArguments = false;
+    public boolean deadProcedures = false;
+    public boolean slotColoring = false;
     public boolean doWhileEnabled = false;
+    public boolean serverMode = false;
+    public boolean batchMode = false;
+    public int jobs = Runtime.getRuntime().availableProcessors();
+    public List<String> batchInputs = List.of();
+    public String cacheDirectory = null;
+    public int cacheSizeMegabytes = CodeCache.DEFAULT_SIZE_MEGABYTES;
     public String inFilename = "";
     public String outFilename = "";
     //tests/runtime_tests/fak.spl
 
+    /**
+     * Thrown instead of exiting the JVM if the compiler has to stop after parsing the command line,
+     * so a running compile server is not terminated by a malformed request.
+     */
+    static class Exit extends RuntimeException {
+        final int exitCode;
+
+        Exit(int exitCode) {
+            super(null, null, false, false);
+            this.exitCode = exitCode;
+        }
+    }
+
     private static void usageError(String format, Object... args) {
         System.err.printf("Usage error: " + format, args);
         System.err.println();
         showUsage(System.err);
-        exit(1);
+        throw new Exit(1);
     }
 
     private static void showUsage(PrintStream out) {
         out.println("Usage: 'java -jar spl.jar' [OPTION] INPUT_FILE [OUTPUT_FILE]");
+        out.println("       'java -jar spl.jar' --batch [--jobs=N] [OPTION] INPUT_FILE_OR_DIRECTORY...");
+        out.println("       'java -jar spl.jar' --server");
         out.println();
         out.println("Executes all compiler phases up to (and including) the specified one.");
         out.println("If no flag is specified, all phases are run and code is written to the output file.");
@@ -34,9 +75,47 @@ public class CommandLineOptions {
         out.println("  --absyn      Phase 3: Creates an abstract syntax tree from the input tokens and prints it.");
         out.println("  --tables     Phase 4a: Builds a symbol table and prints its entries.");
         out.println("  --semant     Phase 4b: Performs the semantic analysis.");
+        out.println("  --cfg        Phase 4e: Builds the control flow graph of every procedure and prints it.");
+        out.println("  --ssa        Converts the control flow graphs printed by --cfg into SSA form. Implies --cfg.");
         out.println("  --vars       Phase 5: Allocates memory space for variables and prints the amount of allocated memory.");
         out.println("  --ershov     Enable register optimization using the ershov number.");
+        out.println("  --inline     Enable replacing calls of small procedures by their bodies.");
+        out.println("  --constantFolding");
+        out.println("               Enable the evaluation of constant expressions and conditions at compile time.");
+        out.println("  --rangeAnalysis");
+        out.println("               Enable the removal of index checks of array accesses that are always inside the bounds.");
+        out.println("  --rangeReport");
+        out.println("               Like --rangeAnalysis, but also prints how many index checks are removed in every procedure.");
+        out.println("  --immediates Enable immediate operands and the folding of variable offsets into loads and stores.");
+        out.println("  --strengthReduction");
+        out.println("               Enable the replacement of multiplications and divisions by constants with shifts.");
+        out.println("  --peephole   Enable the removal of redundant instructions from the generated code.");
+        out.println("  --registerVariables");
+        out.println("               Enable keeping local variables and value parameters of type int in registers.");
+        out.println("  --linearScan Enable register allocation by linear scan over the whole procedure, which also keeps");
+        out.println("               local variables in registers. --registerVariables has no effect then.");
+        out.println("  --loopOptimization");
+        out.println("               Enable testing the condition of while loops at the end and, with --linearScan, moving");
+        out.println("               computations that do not change inside a loop in front of it.");
+        out.println("  --inductionVariables");
+        out.println("               Enable replacing the address computations of array accesses in while loops by pointers");
+        out.println("               advanced together with the loop variables. Implies --linearScan.");
+        out.println("  --tailCalls  Enable calls at the end of a procedure reusing its stack frame. Recursive calls become jumps.");
+        out.println("  --registerArguments");
+        out.println("               Enable passing the first four arguments of procedures declared in the program in registers.");
+        out.println("  --deadProcedures");
+        out.println("               Enable removing procedures never called from main and imports of unused runtime routines.");
+        out.println("  --slotColoring");
+        out.println("               Enable local variables whose values are never needed at the same time to share a stack slot.");
         out.println("  --doWhile    Enable the do-while statement.");
+        out.println("  --cache=DIR  Reuses the code of unchanged procedures from previous compilations stored in DIR.");
+        out.println("  --cacheSize=MB");
+        out.println("               Removes the least recently used procedures when the cache exceeds MB megabytes (default: " + CodeCache.DEFAULT_SIZE_MEGABYTES + ").");
+        out.println("  --batch      Compiles all given files and all '.spl' files in the given directories concurrently.");
+        out.println("               The code for 'foo.spl' is written to 'foo.s'. Exits with the code of the first failed file.");
+        out.println("  --jobs=N     Compiles at most N files at the same time in batch mode (default: number of cores).");
+        out.println("  --server     Keep running and compile the files requested by 'eco32tools/bin/splclient'.");
+        out.println("               Listens on the loopback port given by SPL_SERVER_PORT (default: " + CompileServer.DEFAULT_PORT + ").");
         out.println("  --help       Show this help.");
     }
 
@@ -47,6 +126,7 @@ public class CommandLineOptions {
 
     static CommandLineOptions parse(String[] args) {
         CommandLineOptions options = new CommandLineOptions();
+        List<String> positionalArguments = new ArrayList<>();
 
         for (String name : args) {
             switch (name) {
@@ -65,31 +145,183 @@ public class CommandLineOptions {
                 case "--semant":
                     options.setPhaseOption(PhaseOption.SEMANT);
                     break;
+                case "--cfg":
+                    options.setPhaseOption(PhaseOption.CFG);
+                    break;
+                case "--ssa":
+                    options.ssaForm = true;
+                    break;
                 case "--vars":
                     options.setPhaseOption(PhaseOption.VARS);
                     break;
                 case "--ershov":
                     options.ershovOptimization = true;
                     break;
+                case "--inline":
+                    options.inlining = true;
+                    break;
+                case "--constantFolding":
+                    options.constantFolding = true;
+                    break;
+                case "--rangeAnalysis":
+                    options.rangeAnalysis = true;
+                    break;
+                case "--rangeReport":
+                    options.rangeAnalysis = true;
+                    options.rangeReport = true;
+                    break;
+                case "--immediates":
+                    options.immediateOperands = true;
+                    break;
+                case "--strengthReduction":
+                    options.strengthReduction = true;
+                    break;
+                case "--peephole":
+                    options.peepholeOptimization = true;
+                    break;
+                case "--registerVariables":
+                    options.registerVariables = true;
+                    break;
+                case "--linearScan":
+                    options.linearScan = true;
+                    break;
+                case "--loopOptimization":
+                    options.loopOptimization = true;
+                    break;
+                case "--inductionVariables":
+                    options.linearScan = true;
+                    options.inductionVariables = true;
+                    break;
+                case "--tailCalls":
+                    options.tailCalls = true;
+                    break;
+                case "--registerArguments":
+                    options.registerArguments = true;
+                    break;
+                case "--deadProcedures":
+                    options.deadProcedures = true;
+                    break;
+                case "--slotColoring":
+                    options.slotColoring = true;
+                    break;
                 case "--doWhile":
                     options.doWhileEnabled = true;
                     break;
+                case "--server":
+                    options.serverMode = true;
+                    break;
+                case "--batch":
+                    options.batchMode = true;
+                    break;
                 case "--help":
                     showUsage(System.out);
-                    exit(0);
+                    throw new Exit(0);
                 default:
-                    if (!name.startsWith("--")) {
-                        if (options.inFilename.isEmpty()) options.inFilename = name;
-                        else if (options.outFilename.isEmpty()) options.outFilename = name;
-                        else usageError("Too many positional arguments!");
+                    if (name.startsWith("--jobs=")) {
+                        options.jobs = parsePositiveNumber("number of jobs", name.substring("--jobs=".length()));
+                    } else if (name.startsWith("--cache=")) {
+                        options.cacheDirectory = name.substring("--cache=".length());
+                        if (options.cacheDirectory.isEmpty()) usageError("No cache directory!");
+                    } else if (name.startsWith("--cacheSize=")) {
+                        options.cacheSizeMegabytes = parsePositiveNumber("cache size", name.substring("--cacheSize=".length()));
+                    } else if (!name.startsWith("--")) {
+                        positionalArguments.add(name);
                     } else {
                         usageError("Unknown option '%s'!", name);
                     }
             }
         }
 
-        if (options.inFilename.isEmpty()) usageError("No input file!");
+        if (options.ssaForm) {
+            if (options.phaseOption == null) options.phaseOption = PhaseOption.CFG;
+            else if (options.phaseOption != PhaseOption.CFG) usageError("--ssa can only be combined with --cfg!");
+        }
+
+        if (options.serverMode) {
+            if (options.batchMode) usageError("The server cannot run in batch mode!");
+            if (!positionalArguments.isEmpty()) usageError("The server does not take an input file!");
+        } else if (options.batchMode) {
+            if (positionalArguments.isEmpty()) usageError("No input file!");
+            options.batchInputs = List.copyOf(positionalArguments);
+        } else {
+            if (positionalArguments.isEmpty()) usageError("No input file!");
+            if (positionalArguments.size() > 2) usageError("Too many positional arguments!");
+            options.inFilename = positionalArguments.get(0);
+            if (positionalArguments.size() == 2) options.outFilename = positionalArguments.get(1);
+        }
+
+        return options;
+    }
+
+    private static int parsePositiveNumber(String description, String number) {
+        try {
+            int value = Integer.parseInt(number);
+            if (value > 0) return value;
+        } catch (NumberFormatException ignored) {
+        }
+        usageError("Invalid %s '%s'!", description, number);
+        return 0;
+    }
+
+    /**
+     * Creates the options to compile a single file in batch mode.
+     *
+     * @param inFilename  The file to compile.
+     * @param outFilename The file the code is written to.
+     * @return A copy of these options for the given files.
+     */
+    CommandLineOptions forFile(String inFilename, String outFilename) {
+        CommandLineOptions options = new CommandLineOptions();
+        options.phaseOption = phaseOption;
+        options.ershovOptimization = ershovOptimization;
+        options.inlining = inlining;
+        options.constantFolding = constantFolding;
+        options.rangeAnalysis = rangeAnalysis;
+        options.rangeReport = rangeReport;
+        options.ssaForm = ssaForm;
+        options.immediateOperands = immediateOperands;
+        options.strengthReduction = strengthReduction;
+        options.peepholeOptimization = peepholeOptimization;
+        options.registerVariables = registerVariables;
+        options.linearScan = linearScan;
+        options.loopOptimization = loopOptimization;
+        options.inductionVariables = inductionVariables;
+        options.tailCalls = tailCalls;
+        options.registerArguments = registerArguments;
+        options.deadProcedures = deadProcedures;
+        options.slotColoring = slotColoring;
+        options.doWhileEnabled = doWhileEnabled;
+        options.cacheDirectory = cacheDirectory;
+        options.cacheSizeMegabytes = cacheSizeMegabytes;
+        options.inFilename = inFilename;
+        options.outFilename = outFilename;
+        return options;
+    }
+
+    VarAllocator.Options varAllocationOptions() {
+        VarAllocator.Options options = new VarAllocator.Options();
+        options.showVarAlloc = phaseOption == PhaseOption.VARS;
+        options.ershovOptimization = ershovOptimization;
+        options.immediateOperands = immediateOperands;
+        options.registerVariables = registerVariables && !linearScan;
+        options.tailCalls = tailCalls;
+        options.registerArguments = registerArguments;
+        options.slotColoring = slotColoring;
+        return options;
+    }
 
+    CodeGenerator.Options codeGenerationOptions() {
+        CodeGenerator.Options options = new CodeGenerator.Options();
+        options.ershovOptimization = ershovOptimization;
+        options.immediateOperands = immediateOperands;
+        options.strengthReduction = strengthReduction;
+        options.peephole = peepholeOptimization;
+        options.registerVariables = registerVariables && !linearScan;
+        options.linearScan = linearScan;
+        options.loopOptimization = loopOptimization;
+        options.inductionVariables = inductionVariables;
+        options.tailCalls = tailCalls;
+        options.usedImports = deadProcedures;
         return options;
     }
 
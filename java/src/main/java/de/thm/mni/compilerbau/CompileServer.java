@@ -0,0 +1,113 @@
+package de.thm.mni.compilerbau;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a warm JVM running and compiles SPL programs on request, so a build does not pay the JVM startup and the JIT
+ * warmup for every single file. The client for this server is 'eco32tools/bin/splclient'.
+ * <p>
+ * The server only listens on the loopback interface. A request consists of the working directory of the client,
+ * the number of command line arguments and the arguments themselves, each on its own line. The response contains
+ * every line the compiler printed, prefixed with "O " for stdout and "E " for stderr, followed by "X " and the
+ * exit code of the compilation.
+ * <p>
+ * Requests are handled concurrently, the output of each one is captured by {@link OutputCapture}.
+ */
+class CompileServer {
+    static final int DEFAULT_PORT = 4711;
+    static final String PORT_VARIABLE = "SPL_SERVER_PORT";
+
+    private final int port;
+    private final ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+    CompileServer(int port) {
+        this.port = port;
+    }
+
+    /**
+     * @return The port given by the environment variable {@value PORT_VARIABLE} or {@value DEFAULT_PORT} if it is not set.
+     */
+    static int configuredPort() {
+        String port = System.getenv(PORT_VARIABLE);
+        if (port == null || port.isEmpty()) return DEFAULT_PORT;
+
+        try {
+            return Integer.parseInt(port);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("%s is not a valid port: '%s'", PORT_VARIABLE, port));
+        }
+    }
+
+    /**
+     * Accepts requests until the JVM is terminated.
+     */
+    void run() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            OutputCapture.install();
+            System.err.printf("SPL compile server listening on %s\n", serverSocket.getLocalSocketAddress());
+
+            while (true) {
+                Socket client = serverSocket.accept();
+                workers.execute(() -> handle(client));
+            }
+        }
+    }
+
+    private void handle(Socket client) {
+        try (client;
+             BufferedReader request = new BufferedReader(new InputStreamReader(client.getInputStream()));
+             PrintWriter response = new PrintWriter(new OutputStreamWriter(client.getOutputStream()))) {
+            Path workingDirectory = Paths.get(readLine(request));
+            String[] args = new String[Integer.parseInt(readLine(request))];
+            for (int i = 0; i < args.length; i++) args[i] = readLine(request);
+
+            OutputCapture result = OutputCapture.run(() -> compile(workingDirectory, args));
+            sendLines(response, "O ", result.out);
+            sendLines(response, "E ", result.err);
+            response.println("X " + result.exitCode);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("An error occurred while handling a request: " + e);
+        }
+    }
+
+    /**
+     * Compiles a file like {@link Main#main} does, but resolves the file names relative to the working directory of
+     * the client.
+     */
+    private static int compile(Path workingDirectory, String[] args) {
+        CommandLineOptions options;
+        try {
+            options = CommandLineOptions.parse(args);
+        } catch (CommandLineOptions.Exit e) {
+            return e.exitCode;
+        }
+
+        if (options.serverMode || options.batchMode) {
+            System.err.println("An error occurred: The compile server only compiles single files");
+            return 1;
+        }
+
+        options.inFilename = workingDirectory.resolve(options.inFilename).toString();
+        if (!options.outFilename.isEmpty()) options.outFilename = workingDirectory.resolve(options.outFilename).toString();
+        if (options.cacheDirectory != null) options.cacheDirectory = workingDirectory.resolve(options.cacheDirectory).toString();
+        return Main.compile(options);
+    }
+
+    private static String readLine(BufferedReader request) throws IOException {
+        String line = request.readLine();
+        if (line == null) throw new EOFException("Incomplete request");
+        return line;
+    }
+
+    private static void sendLines(PrintWriter response, String prefix, ByteArrayOutputStream output) throws IOException {
+        BufferedReader lines = new BufferedReader(new StringReader(output.toString()));
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) response.println(prefix + line);
+    }
+}
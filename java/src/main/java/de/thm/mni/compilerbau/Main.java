@@ -6,7 +6,13 @@ import de.thm.mni.compilerbau.phases._02_03_parser.Parser;
 import de.thm.mni.compilerbau.phases._02_03_parser.Sym;
 import de.thm.mni.compilerbau.phases._04a_tablebuild.TableBuilder;
 import de.thm.mni.compilerbau.phases._04b_semant.ProcedureBodyChecker;
+import de.thm.mni.compilerbau.phases._04c_constfold.ConstantFolder;
+import de.thm.mni.compilerbau.phases._04d_rangeanalysis.RangeAnalysis;
+import de.thm.mni.compilerbau.phases._04e_cfg.CfgBuilder;
+import de.thm.mni.compilerbau.phases._04f_inline.Inliner;
+import de.thm.mni.compilerbau.phases._04g_callgraph.CallGraph;
 import de.thm.mni.compilerbau.phases._05_varalloc.VarAllocator;
+import de.thm.mni.compilerbau.phases._06_codegen.CodeCache;
 import de.thm.mni.compilerbau.phases._06_codegen.CodeGenerator;
 import de.thm.mni.compilerbau.table.Identifier;
 import de.thm.mni.compilerbau.utils.SplError;
@@ -18,18 +24,12 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Paths;
 
 import static java.lang.System.exit;
 
 class Main {
 
-    /**
-     * CUP encourages you to use {@link java_cup.runtime.ComplexSymbolFactory} as a {@link SymbolFactory} which we
-     * don't need. The default implementation provides more than enough information for our needs.
-     */
-    @SuppressWarnings("deprecation")
-    private static final SymbolFactory symbolFactory = new DefaultSymbolFactory();
-
     /**
      * Prints a token to stdout to realize the --tokens output.
      *
@@ -50,8 +50,34 @@ class Main {
 
 
     public static void main(String[] args) {
-        CommandLineOptions options = CommandLineOptions.parse(args);
+        CommandLineOptions options;
+        try {
+            options = CommandLineOptions.parse(args);
+        } catch (CommandLineOptions.Exit e) {
+            exit(e.exitCode);
+            return;
+        }
+
+        if (options.batchMode) exit(new BatchCompiler(options).run());
+        if (!options.serverMode) exit(compile(options));
+
+        try {
+            new CompileServer(CompileServer.configuredPort()).run();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("An error occurred: Cannot start the compile server: " + e.getMessage());
+            exit(1);
+        }
+    }
 
+    /**
+     * Runs all phases requested by the command line options on the input file.
+     * All output is written to {@link System#out} and {@link System#err}.
+     * Nothing is shared between compilations, so several files can be compiled concurrently.
+     *
+     * @param options The parsed command line options.
+     * @return The exit code of the compiler.
+     */
+    static int compile(CommandLineOptions options) {
         try (FileReader input = new FileReader(options.inFilename)) {
             Scanner scanner = new Scanner(input);
             scanner.options = options; // Inject the command line options into the scanner to grant it access to feature flags.
@@ -62,9 +88,14 @@ class Main {
                     token = scanner.next_token();
                     showToken(token);
                 } while (token.sym != Sym.EOF);
-                exit(0);
+                return 0;
             }
 
+            // CUP encourages you to use ComplexSymbolFactory as a SymbolFactory which we don't need.
+            // The default implementation provides more than enough information for our needs.
+            @SuppressWarnings("deprecation")
+            SymbolFactory symbolFactory = new DefaultSymbolFactory();
+
             //Parse errors are caught by the below exception handler
             Parser parser = new Parser(scanner, symbolFactory);
             parser.options = options; // Inject the command line options into the parser to grant it access to feature flags.
@@ -72,44 +103,56 @@ class Main {
 
             if (options.phaseOption == CommandLineOptions.PhaseOption.PARSE) {
                 System.out.println("Input parsed successfully!");
-                exit(0);
+                return 0;
             }
 
             if (options.phaseOption == CommandLineOptions.PhaseOption.ABSYN) {
                 System.out.println(program);
-                exit(0);
+                return 0;
             }
 
             final var table = new TableBuilder(options.phaseOption == CommandLineOptions.PhaseOption.TABLES).buildSymbolTable(program);
-            if (options.phaseOption == CommandLineOptions.PhaseOption.TABLES) exit(0);
+            if (options.phaseOption == CommandLineOptions.PhaseOption.TABLES) return 0;
 
             new ProcedureBodyChecker().checkProcedures(program, table);
             if (options.phaseOption == CommandLineOptions.PhaseOption.SEMANT) {
                 System.out.println("No semantic errors found!");
-                exit(0);
+                return 0;
             }
 
-            new VarAllocator(options.phaseOption == CommandLineOptions.PhaseOption.VARS, options.ershovOptimization).allocVars(program, table);
-            if (options.phaseOption == CommandLineOptions.PhaseOption.VARS) exit(0);
+            if (options.inlining) program = new Inliner().inlineProcedures(program, table);
+            if (options.constantFolding) program = new ConstantFolder().foldConstants(program);
+            if (options.deadProcedures) program = new CallGraph(program).removeUnreachable(program);
+            if (options.rangeAnalysis) new RangeAnalysis(options.rangeReport).removeIndexChecks(program, table);
+            if (options.phaseOption == CommandLineOptions.PhaseOption.CFG) {
+                new CfgBuilder(true, options.ssaForm).buildGraphs(program, table);
+                return 0;
+            }
+
+            new VarAllocator(options.varAllocationOptions()).allocVars(program, table);
+            if (options.phaseOption == CommandLineOptions.PhaseOption.VARS) return 0;
 
+            CodeCache cache = options.cacheDirectory == null ? null
+                    : new CodeCache(Paths.get(options.cacheDirectory), options.cacheSizeMegabytes * 1024L * 1024L);
             try (PrintWriter out = options.getOutputWriter()) {
-                new CodeGenerator(out, options.ershovOptimization).generateCode(program, table);
+                new CodeGenerator(out, options.codeGenerationOptions(), cache).generateCode(program, table);
             } catch (IOException e) {
                 System.err.printf("An error occurred: Cannot open output file '%s'\n", options.outFilename);
-                exit(1);
+                return 1;
             }
+            return 0;
         } catch (FileNotFoundException e) {
             System.err.printf("An error occurred: Cannot open input file '%s'\n", options.inFilename);
-            exit(1);
+            return 1;
         } catch (SplError error) {
             System.err.println("An error occurred:");
             if (error.position.line >= 0) System.err.printf("Line %d, Column %d: ", error.position.line, error.position.column);
             System.err.println(error.getMessage());
-            exit(error.errorCode);
+            return error.errorCode;
         } catch (Exception e) {
             System.err.println("An error occurred: " + e.getMessage());
             e.printStackTrace();
-            exit(1);
+            return 1;
         }
     }
 }
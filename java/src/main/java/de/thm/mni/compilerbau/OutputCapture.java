@@ -0,0 +1,93 @@
+package de.thm.mni.compilerbau;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.function.IntSupplier;
+
+/**
+ * Captures everything a compilation writes to {@link System#out} and {@link System#err}, so several compilations can
+ * run concurrently without mixing their output.
+ * <p>
+ * {@link #install()} replaces both streams once with streams that write to the buffers of the compilation running
+ * on the current thread, or to the original streams if there is none.
+ */
+class OutputCapture {
+    private static ThreadLocalOutputStream stdout = null;
+    private static ThreadLocalOutputStream stderr = null;
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    int exitCode;
+
+    private OutputCapture() {
+    }
+
+    static synchronized void install() {
+        if (stdout != null) return;
+
+        stdout = new ThreadLocalOutputStream(System.out);
+        stderr = new ThreadLocalOutputStream(System.err);
+        System.setOut(new PrintStream(stdout, true));
+        System.setErr(new PrintStream(stderr, true));
+    }
+
+    /**
+     * Runs a compilation on the current thread and captures its output.
+     * {@link #install()} has to be called before.
+     *
+     * @param compilation The compilation to run, returning its exit code.
+     * @return The captured output and exit code.
+     */
+    static OutputCapture run(IntSupplier compilation) {
+        OutputCapture capture = new OutputCapture();
+        stdout.set(capture.out);
+        stderr.set(capture.err);
+        try {
+            capture.exitCode = compilation.getAsInt();
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            stdout.remove();
+            stderr.remove();
+        }
+        return capture;
+    }
+
+    /**
+     * Writes to the stream set for the current thread, or to the original stream if none is set.
+     * {@link PrintStream} passes everything written in one call on to this stream before returning, so concurrent
+     * compilations never see each other's output.
+     */
+    private static class ThreadLocalOutputStream extends OutputStream {
+        private final ThreadLocal<OutputStream> target;
+
+        ThreadLocalOutputStream(OutputStream fallback) {
+            this.target = ThreadLocal.withInitial(() -> fallback);
+        }
+
+        void set(OutputStream stream) {
+            target.set(stream);
+        }
+
+        void remove() {
+            target.remove();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target.get().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target.get().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.get().flush();
+        }
+    }
+}
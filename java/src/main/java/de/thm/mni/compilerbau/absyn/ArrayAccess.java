@@ -11,6 +11,7 @@ import de.thm.mni.compilerbau.absyn.visitor.Visitor;
 public class ArrayAccess extends Variable {
     public final Variable array;
     public final Expression index;
+    public boolean indexChecked = true; // This value may be cleared by the range analysis in phase 4d
 
     /**
      * Creates a new node representing an array access.
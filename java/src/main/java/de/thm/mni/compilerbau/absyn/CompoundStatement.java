@@ -11,6 +11,7 @@ import java.util.stream.Collectors;
  * <p>
  * {@link CompoundStatement}s are used whenever it is necessary to semantically combine multiple statements into a single one.
  * This is for example the case with {@link WhileStatement}s, which can only hold a single statement as their body.
+ * The list of statements is immutable and supports fast random access.
  */
 public class CompoundStatement extends Statement {
     public final List<Statement> statements;
@@ -23,7 +24,7 @@ public class CompoundStatement extends Statement {
      */
     public CompoundStatement(Position position, List<Statement> statements) {
         super(position);
-        this.statements = statements;
+        this.statements = List.copyOf(statements);
     }
 
     @Override
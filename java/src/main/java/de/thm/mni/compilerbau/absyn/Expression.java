@@ -12,6 +12,7 @@ import de.thm.mni.compilerbau.types.Type;
  */
 public abstract class Expression extends Node {
     public Type dataType = null;
+    public Integer ershovNumber = null; // This value has to be set in phase 5
 
     public Expression(Position position) {
         super(position);
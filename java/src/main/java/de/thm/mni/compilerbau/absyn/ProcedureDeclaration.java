@@ -13,6 +13,7 @@ import java.util.stream.Collectors;
  * When declaring a procedure, you have to provide a name, which is used as an identifier in this declaration.
  * Additionally a declaration of a procedure, declares its parameters as a list, a list of local variables and
  * a list of statements in the body of the procedure.
+ * All of these lists are immutable and support fast random access.
  */
 public class ProcedureDeclaration extends GlobalDeclaration {
     /**
@@ -39,9 +40,9 @@ public class ProcedureDeclaration extends GlobalDeclaration {
      */
     public ProcedureDeclaration(Position position, Identifier name, List<ParameterDeclaration> parameters, List<VariableDeclaration> variables, List<Statement> body) {
         super(position, name);
-        this.parameters = parameters;
-        this.variables = variables;
-        this.body = body;
+        this.parameters = List.copyOf(parameters);
+        this.variables = List.copyOf(variables);
+        this.body = List.copyOf(body);
     }
 
     @Override
@@ -9,6 +9,7 @@ import java.util.stream.Collectors;
  * This class represents the root of the AST.
  * <p>
  * A program in SPL consists of a list of global declarations ({@link TypeDeclaration} and {@link ProcedureDeclaration}).
+ * The list of declarations is immutable and supports fast random access.
  */
 public class Program extends Node {
     public final List<GlobalDeclaration> declarations;
@@ -21,7 +22,17 @@ public class Program extends Node {
      */
     public Program(Position position, List<GlobalDeclaration> declarations) {
         super(position);
-        this.declarations = declarations;
+        this.declarations = List.copyOf(declarations);
+    }
+
+    /**
+     * @return The procedure declarations of this program in source order.
+     */
+    public List<ProcedureDeclaration> procedures() {
+        return declarations.stream()
+                .filter(declaration -> declaration instanceof ProcedureDeclaration)
+                .map(declaration -> (ProcedureDeclaration) declaration)
+                .collect(Collectors.toList());
     }
 
     @Override
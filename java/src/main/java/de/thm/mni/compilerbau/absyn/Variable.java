@@ -10,6 +10,7 @@ import de.thm.mni.compilerbau.types.Type;
  */
 public abstract class Variable extends Node {
     public Type dataType = null;
+    public Integer ershovNumber = null; // This value has to be set in phase 5
 
     public Variable(Position position) {
         super(position);
@@ -36,7 +36,10 @@ public class TableBuilder extends DoNothingVisitor {
         SymbolTable globalTable=TableInitializer.initializeGlobalTable();
         TableBuilderVisitor tableBuilderVisitor=new TableBuilderVisitor(globalTable);
         program.accept(tableBuilderVisitor);
-        Entry mainError = globalTable.lookup(new Identifier("main"), SplError.MainIsMissing());
+        Entry mainError = globalTable.lookup(new Identifier("main"));
+        if (mainError == null) {
+            throw SplError.MainIsMissing();
+        }
 
         if (!(mainError instanceof ProcedureEntry)) {
             throw SplError.MainIsNotAProcedure();
@@ -80,7 +83,10 @@ public class TableBuilder extends DoNothingVisitor {
 
         @Override
         public void visit(NamedTypeExpression namedTypeExpression) {
-            Entry entry = globalTable.lookup(namedTypeExpression.name,SplError.UndefinedType(namedTypeExpression.position,namedTypeExpression.name));
+            Entry entry = globalTable.lookup(namedTypeExpression.name);
+            if (entry == null) {
+                throw SplError.UndefinedType(namedTypeExpression.position, namedTypeExpression.name);
+            }
             if(!(entry instanceof TypeEntry)){
                 throw SplError.NotAType(namedTypeExpression.position,namedTypeExpression.name);
             }
@@ -94,9 +100,10 @@ public class TableBuilder extends DoNothingVisitor {
                 throw SplError.MustBeAReferenceParameter(parameterDeclaration.position, parameterDeclaration.name);
             }
 
-            localTable.enter(parameterDeclaration.name,
-                    new VariableEntry(parameterDeclaration.typeExpression.dataType, parameterDeclaration.isReference),
-                    SplError.RedeclarationAsParameter(parameterDeclaration.position, parameterDeclaration.name));
+            VariableEntry entry = new VariableEntry(parameterDeclaration.typeExpression.dataType, parameterDeclaration.isReference);
+            if (!localTable.enter(parameterDeclaration.name, entry)) {
+                throw SplError.RedeclarationAsParameter(parameterDeclaration.position, parameterDeclaration.name);
+            }
         }
 
         @Override
@@ -108,8 +115,9 @@ public class TableBuilder extends DoNothingVisitor {
                 paraType.add(new ParameterType(n.typeExpression.dataType, n.isReference));
             });
             procedureDeclaration.variables.forEach((m -> m.accept(this)));
-            globalTable.enter(procedureDeclaration.name, new ProcedureEntry(localTable, paraType));
-            printSymbolTableAtEndOfProcedure(procedureDeclaration.name, new ProcedureEntry(localTable, paraType));
+            ProcedureEntry procedureEntry = new ProcedureEntry(localTable, paraType);
+            globalTable.enter(procedureDeclaration.name, procedureEntry);
+            if (showTables) printSymbolTableAtEndOfProcedure(procedureDeclaration.name, procedureEntry);
         }
 
         @Override
@@ -121,13 +129,18 @@ public class TableBuilder extends DoNothingVisitor {
         public void visit(TypeDeclaration typeDeclaration) {
             typeDeclaration.typeExpression.accept(this);
             TypeEntry typeEntry=new TypeEntry(typeDeclaration.typeExpression.dataType);
-            globalTable.enter(typeDeclaration.name,typeEntry,SplError.RedeclarationAsType(typeDeclaration.position,typeDeclaration.name));
+            if (!globalTable.enter(typeDeclaration.name, typeEntry)) {
+                throw SplError.RedeclarationAsType(typeDeclaration.position, typeDeclaration.name);
+            }
         }
 
         @Override
         public void visit(VariableDeclaration variableDeclaration) {
             variableDeclaration.typeExpression.accept(this);
-            localTable.enter(variableDeclaration.name, new VariableEntry(variableDeclaration.typeExpression.dataType, false), SplError.RedeclarationAsVariable(variableDeclaration.position, variableDeclaration.name));
+            VariableEntry entry = new VariableEntry(variableDeclaration.typeExpression.dataType, false);
+            if (!localTable.enter(variableDeclaration.name, entry)) {
+                throw SplError.RedeclarationAsVariable(variableDeclaration.position, variableDeclaration.name);
+            }
         }
 
     }
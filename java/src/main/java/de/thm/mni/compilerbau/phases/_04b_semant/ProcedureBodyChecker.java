@@ -9,9 +9,9 @@ import de.thm.mni.compilerbau.types.ArrayType;
 import de.thm.mni.compilerbau.types.PrimitiveType;
 import de.thm.mni.compilerbau.types.Type;
 import de.thm.mni.compilerbau.utils.NotImplemented;
+import de.thm.mni.compilerbau.utils.Parallel;
 import de.thm.mni.compilerbau.utils.SplError;
 
-
 /**
  * This class is used to check if the currently compiled SPL program is semantically valid.
  * The body of each procedure has to be checked, consisting of {@link Statement}s, {@link Variable}s and {@link Expression}s.
@@ -20,11 +20,24 @@ import de.thm.mni.compilerbau.utils.SplError;
  */
 public class ProcedureBodyChecker extends DoNothingVisitor {
 
+    /**
+     * Checks all procedure bodies in parallel. The procedures only read the completed global table.
+     */
     public void checkProcedures(Program program, SymbolTable globalTable) {
         //TODO (assignment 4b): Check all procedure bodies for semantic errors
-        ProcedureBodyCheckerVisitor procedureBodyCheckerVisitor = new ProcedureBodyCheckerVisitor(globalTable);
-        program.accept(procedureBodyCheckerVisitor);
+        Parallel.forEach(program.procedures(), procedure -> procedure.accept(new ProcedureBodyCheckerVisitor(globalTable)));
+    }
 
+    /**
+     * Checks the type of an operand. Like the lookups of the visitor, this builds the error only if it is thrown, so
+     * checking a correct program allocates nothing.
+     *
+     * @throws SplError If the operand is not of the expected type.
+     */
+    public static void checkType(Type expected, Type actual, Position position) throws SplError {
+        if (!expected.equals(actual)) {
+            throw SplError.OperatorDifferentTypes(position);
+        }
     }
 
     class ProcedureBodyCheckerVisitor extends DoNothingVisitor {
@@ -82,7 +95,10 @@ public class ProcedureBodyChecker extends DoNothingVisitor {
         }
 
         public void visit(CallStatement callStatement) {
-            Entry entry = table.lookup(callStatement.procedureName, SplError.UndefinedProcedure(callStatement.position, callStatement.procedureName));
+            Entry entry = table.lookup(callStatement.procedureName);
+            if (entry == null) {
+                throw SplError.UndefinedProcedure(callStatement.position, callStatement.procedureName);
+            }
             if (!(entry instanceof ProcedureEntry)) {
                 throw SplError.CallOfNonProcedure(callStatement.position, callStatement.procedureName);
             }
@@ -106,12 +122,6 @@ public class ProcedureBodyChecker extends DoNothingVisitor {
 
         }
 
-        protected void checkType(Type expected, Type actual, SplError error) throws SplError {
-            if(!expected.equals(actual)){
-                throw error;
-            }
-        }
-
         public void visit(ProcedureDeclaration procedureDeclaration){
             ProcedureEntry entry =(ProcedureEntry) table.lookup(procedureDeclaration.name);
             localTable = entry.localTable;
@@ -123,20 +133,23 @@ public class ProcedureBodyChecker extends DoNothingVisitor {
             binaryExpression.rightOperand.accept(this);
             if(binaryExpression.operator.isArithmetic()){
                 if (binaryExpression.leftOperand.dataType.equals(PrimitiveType.boolType) && binaryExpression.rightOperand.dataType.equals(PrimitiveType.boolType)) throw SplError.ArithmeticOperatorNonInteger(binaryExpression.position);
-                checkType(PrimitiveType.intType, binaryExpression.leftOperand.dataType, SplError.OperatorDifferentTypes(binaryExpression.position));
-                checkType(PrimitiveType.intType, binaryExpression.rightOperand.dataType, SplError.OperatorDifferentTypes(binaryExpression.position));
+                checkType(PrimitiveType.intType, binaryExpression.leftOperand.dataType, binaryExpression.position);
+                checkType(PrimitiveType.intType, binaryExpression.rightOperand.dataType, binaryExpression.position);
                 binaryExpression.dataType = PrimitiveType.intType;
             } else {
                 if (binaryExpression.leftOperand.dataType.equals(PrimitiveType.boolType) && binaryExpression.rightOperand.dataType.equals(PrimitiveType.boolType)) throw SplError.ComparisonNonInteger(binaryExpression.position);
-                checkType(PrimitiveType.intType, binaryExpression.leftOperand.dataType, SplError.OperatorDifferentTypes(binaryExpression.position));
-                checkType(PrimitiveType.intType, binaryExpression.rightOperand.dataType, SplError.OperatorDifferentTypes(binaryExpression.position));
+                checkType(PrimitiveType.intType, binaryExpression.leftOperand.dataType, binaryExpression.position);
+                checkType(PrimitiveType.intType, binaryExpression.rightOperand.dataType, binaryExpression.position);
                 binaryExpression.dataType = PrimitiveType.boolType;
             }
         }
 
 
         public void visit(NamedVariable namedVariable) {
-            Entry entry = localTable.lookup(namedVariable.name, SplError.UndefinedVariable(namedVariable.position, namedVariable.name));
+            Entry entry = localTable.lookup(namedVariable.name);
+            if (entry == null) {
+                throw SplError.UndefinedVariable(namedVariable.position, namedVariable.name);
+            }
             if (!(entry instanceof VariableEntry)) {
                 throw SplError.NotAVariable(namedVariable.position, namedVariable.name);
             }
@@ -0,0 +1,375 @@
+package de.thm.mni.compilerbau.phases._04c_constfold;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.types.ArrayType;
+import de.thm.mni.compilerbau.types.PrimitiveType;
+import de.thm.mni.compilerbau.utils.Parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is used to evaluate constant parts of expressions at compile time (--constantFolding).
+ * <p>
+ * The folding runs after the semantic analysis, so the rebuilt nodes carry the data types computed by it and errors
+ * are still reported for code that is removed.
+ * <ul>
+ * <li>Arithmetic on literals is computed with the wrap-around semantics of 32 bit integers.</li>
+ * <li>Neutral operands like in x + 0, x * 1 or x / 1 are removed and x * 0 becomes 0. Negations written as 0 - x are
+ * merged into surrounding additions and subtractions, constants are combined with constants of nested operations.</li>
+ * <li>If and while statements whose condition compares two constants are replaced with the part that is executed.</li>
+ * </ul>
+ * Divisions by 0 and of the smallest integer by -1 are never folded, so they still fail at runtime. For the same
+ * reason, an operand is only dropped (as in x * 0) if its evaluation cannot fail.
+ */
+public class ConstantFolder {
+
+    /**
+     * Folds the constants in all procedures in parallel.
+     *
+     * @return The program with all procedures folded.
+     */
+    public Program foldConstants(Program program) {
+        List<GlobalDeclaration> declarations = Parallel.map(program.declarations, declaration -> {
+            if (!(declaration instanceof ProcedureDeclaration)) return declaration;
+            return new FoldingVisitor().fold((ProcedureDeclaration) declaration);
+        });
+        return new Program(program.position, declarations);
+    }
+
+    private static class FoldingVisitor extends DoNothingVisitor {
+        /**
+         * The rebuilt node, set by every visit method.
+         */
+        private Node result;
+
+        ProcedureDeclaration fold(ProcedureDeclaration procedureDeclaration) {
+            List<Statement> body = foldStatements(procedureDeclaration.body);
+            if (body == procedureDeclaration.body) return procedureDeclaration;
+            return new ProcedureDeclaration(procedureDeclaration.position, procedureDeclaration.name,
+                    procedureDeclaration.parameters, procedureDeclaration.variables, body);
+        }
+
+        private Statement fold(Statement statement) {
+            statement.accept(this);
+            return (Statement) result;
+        }
+
+        private Expression fold(Expression expression) {
+            expression.accept(this);
+            return (Expression) result;
+        }
+
+        private Variable fold(Variable variable) {
+            variable.accept(this);
+            return (Variable) result;
+        }
+
+        /**
+         * @return The folded statements, or the given list itself if no statement has changed.
+         */
+        private List<Statement> foldStatements(List<Statement> statements) {
+            List<Statement> folded = new ArrayList<>(statements.size());
+            boolean changed = false;
+            for (Statement statement : statements) {
+                Statement foldedStatement = fold(statement);
+                folded.add(foldedStatement);
+                changed |= foldedStatement != statement;
+            }
+            return changed ? folded : statements;
+        }
+
+        @Override
+        public void visit(AssignStatement assignStatement) {
+            Variable target = fold(assignStatement.target);
+            Expression value = fold(assignStatement.value);
+            result = target == assignStatement.target && value == assignStatement.value
+                    ? assignStatement
+                    : new AssignStatement(assignStatement.position, target, value);
+        }
+
+        @Override
+        public void visit(CallStatement callStatement) {
+            List<Expression> arguments = new ArrayList<>(callStatement.arguments.size());
+            boolean changed = false;
+            for (Expression argument : callStatement.arguments) {
+                Expression folded = fold(argument);
+                arguments.add(folded);
+                changed |= folded != argument;
+            }
+            result = changed ? new CallStatement(callStatement.position, callStatement.procedureName, arguments) : callStatement;
+        }
+
+        @Override
+        public void visit(CompoundStatement compoundStatement) {
+            List<Statement> statements = foldStatements(compoundStatement.statements);
+            result = statements == compoundStatement.statements
+                    ? compoundStatement
+                    : new CompoundStatement(compoundStatement.position, statements);
+        }
+
+        @Override
+        public void visit(EmptyStatement emptyStatement) {
+            result = emptyStatement;
+        }
+
+        @Override
+        public void visit(IfStatement ifStatement) {
+            Expression condition = fold(ifStatement.condition);
+            Boolean constantCondition = constantCondition(condition);
+            if (constantCondition != null) {
+                result = fold(constantCondition ? ifStatement.thenPart : ifStatement.elsePart);
+                return;
+            }
+
+            Statement thenPart = fold(ifStatement.thenPart);
+            Statement elsePart = fold(ifStatement.elsePart);
+            result = condition == ifStatement.condition && thenPart == ifStatement.thenPart && elsePart == ifStatement.elsePart
+                    ? ifStatement
+                    : new IfStatement(ifStatement.position, condition, thenPart, elsePart);
+        }
+
+        @Override
+        public void visit(WhileStatement whileStatement) {
+            Expression condition = fold(whileStatement.condition);
+            if (Boolean.FALSE.equals(constantCondition(condition))) {
+                result = new EmptyStatement(whileStatement.position);
+                return;
+            }
+
+            Statement body = fold(whileStatement.body);
+            result = condition == whileStatement.condition && body == whileStatement.body
+                    ? whileStatement
+                    : new WhileStatement(whileStatement.position, condition, body);
+        }
+
+        @Override
+        public void visit(NamedVariable namedVariable) {
+            result = namedVariable;
+        }
+
+        @Override
+        public void visit(ArrayAccess arrayAccess) {
+            Variable array = fold(arrayAccess.array);
+            Expression index = fold(arrayAccess.index);
+            if (array == arrayAccess.array && index == arrayAccess.index) {
+                result = arrayAccess;
+            } else {
+                ArrayAccess folded = new ArrayAccess(arrayAccess.position, array, index);
+                folded.dataType = arrayAccess.dataType;
+                result = folded;
+            }
+        }
+
+        @Override
+        public void visit(VariableExpression variableExpression) {
+            Variable variable = fold(variableExpression.variable);
+            if (variable == variableExpression.variable) {
+                result = variableExpression;
+            } else {
+                VariableExpression folded = new VariableExpression(variableExpression.position, variable);
+                folded.dataType = variableExpression.dataType;
+                result = folded;
+            }
+        }
+
+        @Override
+        public void visit(IntLiteral intLiteral) {
+            result = intLiteral;
+        }
+
+        @Override
+        public void visit(BinaryExpression binaryExpression) {
+            Expression left = fold(binaryExpression.leftOperand);
+            Expression right = fold(binaryExpression.rightOperand);
+            Expression simplified = binaryExpression.operator.isArithmetic()
+                    ? simplify(binaryExpression.position, binaryExpression.operator, left, right)
+                    : null;
+
+            if (simplified != null) {
+                result = simplified;
+            } else if (left == binaryExpression.leftOperand && right == binaryExpression.rightOperand) {
+                result = binaryExpression;
+            } else {
+                BinaryExpression folded = new BinaryExpression(binaryExpression.position, binaryExpression.operator, left, right);
+                folded.dataType = binaryExpression.dataType;
+                result = folded;
+            }
+        }
+
+        /**
+         * Simplifies an arithmetic expression whose operands have already been folded.
+         *
+         * @return The simplified expression, or null if it cannot be simplified.
+         */
+        private Expression simplify(Position position, BinaryExpression.Operator operator, Expression left, Expression right) {
+            Integer leftValue = value(left);
+            Integer rightValue = value(right);
+            if (leftValue != null && rightValue != null) {
+                Integer folded = evaluate(operator, leftValue, rightValue);
+                return folded == null ? null : literal(position, folded);
+            }
+
+            switch (operator) {
+                case ADD:
+                    if (isValue(right, 0)) return left;
+                    if (isValue(left, 0)) return right;
+                    if (negated(right) != null) return arithmetic(position, BinaryExpression.Operator.SUB, left, negated(right));
+                    if (rightValue != null) return combineAddends(position, left, rightValue);
+                    break;
+                case SUB:
+                    if (isValue(right, 0)) return left;
+                    if (isValue(left, 0) && negated(right) != null) return negated(right);
+                    if (negated(right) != null) return arithmetic(position, BinaryExpression.Operator.ADD, left, negated(right));
+                    if (rightValue != null && rightValue != Integer.MIN_VALUE) return combineAddends(position, left, -rightValue);
+                    break;
+                case MUL:
+                    if (isValue(right, 1)) return left;
+                    if (isValue(left, 1)) return right;
+                    if (isValue(right, 0) && !canFail(left)) return right;
+                    if (isValue(left, 0) && !canFail(right)) return left;
+                    if (rightValue != null) return combineFactors(position, left, rightValue);
+                    if (leftValue != null) return combineFactors(position, right, leftValue);
+                    break;
+                case DIV:
+                    if (isValue(right, 1)) return left;
+                    break;
+            }
+            return null;
+        }
+
+        /**
+         * Merges the constant into an addition or subtraction of a constant: (x + c1) + c2 becomes x + (c1 + c2).
+         *
+         * @return The merged expression, or null if the expression does not add a constant.
+         */
+        private Expression combineAddends(Position position, Expression expression, int addend) {
+            if (!(expression instanceof BinaryExpression)) return null;
+            BinaryExpression inner = (BinaryExpression) expression;
+            Integer innerValue = value(inner.rightOperand);
+            if (innerValue == null) return null;
+
+            int sum;
+            if (inner.operator == BinaryExpression.Operator.ADD) sum = innerValue + addend;
+            else if (inner.operator == BinaryExpression.Operator.SUB) sum = addend - innerValue;
+            else return null;
+
+            if (sum == 0) return inner.leftOperand;
+            return sum < 0 && sum != Integer.MIN_VALUE
+                    ? arithmetic(position, BinaryExpression.Operator.SUB, inner.leftOperand, literal(position, -sum))
+                    : arithmetic(position, BinaryExpression.Operator.ADD, inner.leftOperand, literal(position, sum));
+        }
+
+        /**
+         * Merges the constant into a multiplication with a constant: (x * c1) * c2 becomes x * (c1 * c2).
+         *
+         * @return The merged expression, or null if the expression does not multiply with a constant.
+         */
+        private Expression combineFactors(Position position, Expression expression, int factor) {
+            if (!(expression instanceof BinaryExpression)) return null;
+            BinaryExpression inner = (BinaryExpression) expression;
+            if (inner.operator != BinaryExpression.Operator.MUL || value(inner.rightOperand) == null) return null;
+            return arithmetic(position, BinaryExpression.Operator.MUL, inner.leftOperand,
+                    literal(position, value(inner.rightOperand) * factor));
+        }
+
+        /**
+         * @return The result of the arithmetic operation on both values, or null if it has to fail at runtime.
+         */
+        private static Integer evaluate(BinaryExpression.Operator operator, int left, int right) {
+            switch (operator) {
+                case ADD:
+                    return left + right;
+                case SUB:
+                    return left - right;
+                case MUL:
+                    return left * right;
+                case DIV:
+                    if (right == 0 || left == Integer.MIN_VALUE && right == -1) return null;
+                    return left / right;
+                default:
+                    throw new IllegalArgumentException("Not an arithmetic operator: " + operator);
+            }
+        }
+
+        /**
+         * @return The result of a comparison of two constants, or null if the condition is not constant.
+         */
+        private static Boolean constantCondition(Expression condition) {
+            BinaryExpression comparison = (BinaryExpression) condition;
+            Integer left = value(comparison.leftOperand);
+            Integer right = value(comparison.rightOperand);
+            if (left == null || right == null) return null;
+
+            switch (comparison.operator) {
+                case EQU:
+                    return left.equals(right);
+                case NEQ:
+                    return !left.equals(right);
+                case LST:
+                    return left < right;
+                case LSE:
+                    return left <= right;
+                case GRT:
+                    return left > right;
+                case GRE:
+                    return left >= right;
+                default:
+                    throw new IllegalArgumentException("Not a comparison operator: " + comparison.operator);
+            }
+        }
+
+        /**
+         * @return true if evaluating the expression may stop the program, because of a division or an array index.
+         */
+        private static boolean canFail(Expression expression) {
+            if (expression instanceof IntLiteral) return false;
+            if (expression instanceof VariableExpression) return canFail(((VariableExpression) expression).variable);
+            BinaryExpression binaryExpression = (BinaryExpression) expression;
+            if (binaryExpression.operator == BinaryExpression.Operator.DIV) return true;
+            return canFail(binaryExpression.leftOperand) || canFail(binaryExpression.rightOperand);
+        }
+
+        private static boolean canFail(Variable variable) {
+            if (variable instanceof NamedVariable) return false;
+            ArrayAccess arrayAccess = (ArrayAccess) variable;
+            Integer index = value(arrayAccess.index);
+            boolean inBounds = index != null && index >= 0 && index < ((ArrayType) arrayAccess.array.dataType).arraySize;
+            return !inBounds || canFail(arrayAccess.array);
+        }
+
+        /**
+         * @return The operand x if the expression is the negation 0 - x, null otherwise.
+         */
+        private static Expression negated(Expression expression) {
+            if (!(expression instanceof BinaryExpression)) return null;
+            BinaryExpression binaryExpression = (BinaryExpression) expression;
+            return binaryExpression.operator == BinaryExpression.Operator.SUB && isValue(binaryExpression.leftOperand, 0)
+                    ? binaryExpression.rightOperand
+                    : null;
+        }
+
+        private static Integer value(Expression expression) {
+            return expression instanceof IntLiteral ? ((IntLiteral) expression).value : null;
+        }
+
+        private static boolean isValue(Expression expression, int value) {
+            return expression instanceof IntLiteral && ((IntLiteral) expression).value == value;
+        }
+
+        private static IntLiteral literal(Position position, int value) {
+            IntLiteral literal = new IntLiteral(position, value);
+            literal.dataType = PrimitiveType.intType;
+            return literal;
+        }
+
+        private Expression arithmetic(Position position, BinaryExpression.Operator operator, Expression left, Expression right) {
+            Expression simplified = simplify(position, operator, left, right);
+            if (simplified != null) return simplified;
+            BinaryExpression expression = new BinaryExpression(position, operator, left, right);
+            expression.dataType = PrimitiveType.intType;
+            return expression;
+        }
+    }
+}
@@ -0,0 +1,581 @@
+package de.thm.mni.compilerbau.phases._04d_rangeanalysis;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.table.VariableEntry;
+import de.thm.mni.compilerbau.types.ArrayType;
+import de.thm.mni.compilerbau.types.PrimitiveType;
+import de.thm.mni.compilerbau.utils.Parallel;
+
+import java.util.*;
+
+/**
+ * This class is used to remove the index checks of array accesses that can never fail (--rangeAnalysis).
+ * <p>
+ * For every procedure, the range of values of its integer variables is computed as an interval at every statement.
+ * Only local variables and value parameters are tracked, since reference parameters may share their memory.
+ * The ranges are narrowed by the conditions of if and while statements and by passed index checks: after an array
+ * access, its index is known to be inside the array bounds, as the program would have stopped otherwise.
+ * Loops are analyzed until the ranges at their beginning no longer change. To get there quickly, growing bounds are
+ * widened to the next constant used in the procedure, e.g. to the limit of a loop counter.
+ * <p>
+ * An array access whose index lies inside the array bounds whenever it is executed is marked by clearing
+ * {@link ArrayAccess#indexChecked}, so no check is generated for it.
+ */
+public class RangeAnalysis {
+    private final boolean showReport;
+
+    /**
+     * @param showReport Whether to print how many index checks are removed in every procedure
+     */
+    public RangeAnalysis(boolean showReport) {
+        this.showReport = showReport;
+    }
+
+    /**
+     * Analyzes all procedures in parallel.
+     */
+    public void removeIndexChecks(Program program, SymbolTable table) {
+        List<ProcedureDeclaration> procedures = program.procedures();
+        List<String> reports = Parallel.map(procedures, procedure -> {
+            ProcedureEntry entry = (ProcedureEntry) table.lookup(procedure.name);
+            RangeVisitor visitor = new RangeVisitor(entry.localTable, procedure);
+            procedure.body.forEach(statement -> statement.accept(visitor));
+            return visitor.removeIndexChecks(procedure.name);
+        });
+        if (showReport) reports.forEach(System.out::println);
+    }
+
+    /**
+     * A range of 32 bit integers, stored as long values to compute with them without overflow.
+     */
+    private static class Interval {
+        static final Interval ANY = new Interval(Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+        final long lower;
+        final long upper;
+
+        Interval(long lower, long upper) {
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        /**
+         * @return The interval, or {@link #ANY} if it includes values the result of an operation would wrap around from.
+         */
+        static Interval of(long lower, long upper) {
+            return lower < Integer.MIN_VALUE || upper > Integer.MAX_VALUE ? ANY : new Interval(lower, upper);
+        }
+
+        boolean isInside(long lower, long upper) {
+            return lower <= this.lower && this.upper <= upper;
+        }
+
+        boolean fitsInteger() {
+            return isInside(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+
+        Interval join(Interval other) {
+            return new Interval(Math.min(lower, other.lower), Math.max(upper, other.upper));
+        }
+
+        /**
+         * @return The values inside both intervals, or null if there are none.
+         */
+        Interval meet(Interval other) {
+            long lower = Math.max(this.lower, other.lower);
+            long upper = Math.min(this.upper, other.upper);
+            return lower <= upper ? new Interval(lower, upper) : null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Interval && ((Interval) o).lower == lower && ((Interval) o).upper == upper;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(lower) * 31 + Long.hashCode(upper);
+        }
+    }
+
+    /**
+     * The ranges of all tracked variables at a point of the procedure. Ranges are kept for single variables, given by
+     * their {@link VariableEntry}, and for arithmetic expressions of them, given by the text of the expression.
+     * Variables and expressions without an entry may have any value. If the point cannot be reached, the ranges are
+     * empty.
+     */
+    private static class Ranges {
+        final Map<Object, Interval> intervals = new HashMap<>();
+        boolean reachable = true;
+
+        Interval get(Object variable) {
+            return intervals.getOrDefault(variable, Interval.ANY);
+        }
+
+        void set(Object variable, Interval interval) {
+            if (interval.equals(Interval.ANY)) intervals.remove(variable);
+            else intervals.put(variable, interval);
+        }
+
+        /**
+         * Restricts the variable to the given interval. If it cannot have a value inside, the point becomes unreachable.
+         */
+        void restrict(Object variable, Interval interval) {
+            Interval restricted = get(variable).meet(interval);
+            if (restricted == null) {
+                reachable = false;
+                intervals.clear();
+            } else {
+                set(variable, restricted);
+            }
+        }
+
+        void forget(Collection<?> variables) {
+            intervals.keySet().removeAll(variables);
+        }
+
+        Ranges copy() {
+            Ranges copy = new Ranges();
+            copy.intervals.putAll(intervals);
+            copy.reachable = reachable;
+            return copy;
+        }
+
+        Ranges join(Ranges other) {
+            if (!other.reachable) return copy();
+            if (!reachable) return other.copy();
+            Ranges joined = new Ranges();
+            intervals.forEach((variable, interval) -> {
+                if (other.intervals.containsKey(variable)) joined.set(variable, interval.join(other.intervals.get(variable)));
+            });
+            return joined;
+        }
+
+        /**
+         * Widens the bounds growing from these ranges to the given ones to the next threshold.
+         */
+        Ranges widen(Ranges next, NavigableSet<Long> thresholds) {
+            if (!reachable) return next.copy();
+            Ranges widened = new Ranges();
+            intervals.forEach((variable, interval) -> {
+                if (!next.intervals.containsKey(variable)) return;
+                Interval grown = next.intervals.get(variable);
+                long lower = grown.lower < interval.lower ? thresholds.floor(grown.lower) : grown.lower;
+                long upper = grown.upper > interval.upper ? thresholds.ceiling(grown.upper) : grown.upper;
+                widened.set(variable, new Interval(lower, upper));
+            });
+            return widened;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Ranges && ((Ranges) o).reachable == reachable && ((Ranges) o).intervals.equals(intervals);
+        }
+
+        @Override
+        public int hashCode() {
+            return intervals.hashCode();
+        }
+    }
+
+    /**
+     * Collects the constants of a procedure, which are used as bounds when widening ranges.
+     */
+    private static class ThresholdVisitor extends DoNothingVisitor {
+        final NavigableSet<Long> thresholds = new TreeSet<>(List.of((long) Integer.MIN_VALUE, -1L, 0L, 1L, (long) Integer.MAX_VALUE));
+
+        private void add(long value) {
+            for (long threshold = value - 1; threshold <= value + 1; threshold++) {
+                if (threshold >= Integer.MIN_VALUE && threshold <= Integer.MAX_VALUE) thresholds.add(threshold);
+            }
+        }
+
+        public void visit(CompoundStatement compoundStatement) {
+            compoundStatement.statements.forEach(statement -> statement.accept(this));
+        }
+
+        public void visit(IfStatement ifStatement) {
+            ifStatement.condition.accept(this);
+            ifStatement.thenPart.accept(this);
+            ifStatement.elsePart.accept(this);
+        }
+
+        public void visit(WhileStatement whileStatement) {
+            whileStatement.condition.accept(this);
+            whileStatement.body.accept(this);
+        }
+
+        public void visit(AssignStatement assignStatement) {
+            assignStatement.target.accept(this);
+            assignStatement.value.accept(this);
+        }
+
+        public void visit(CallStatement callStatement) {
+            callStatement.arguments.forEach(argument -> argument.accept(this));
+        }
+
+        public void visit(ArrayAccess arrayAccess) {
+            add(((ArrayType) arrayAccess.array.dataType).arraySize);
+            arrayAccess.array.accept(this);
+            arrayAccess.index.accept(this);
+        }
+
+        public void visit(VariableExpression variableExpression) {
+            variableExpression.variable.accept(this);
+        }
+
+        public void visit(BinaryExpression binaryExpression) {
+            binaryExpression.leftOperand.accept(this);
+            binaryExpression.rightOperand.accept(this);
+        }
+
+        public void visit(IntLiteral intLiteral) {
+            add(intLiteral.value);
+        }
+    }
+
+    private static class RangeVisitor extends DoNothingVisitor {
+        final SymbolTable localTable;
+        final NavigableSet<Long> thresholds;
+        /**
+         * The ranges before the statement currently analyzed.
+         */
+        Ranges ranges = new Ranges();
+        /**
+         * The indices checked while evaluating the current statement with the bounds they are known to be inside
+         * afterwards. They are applied to the ranges once all expressions of the statement have been evaluated,
+         * because the code generator may evaluate operands in any order.
+         */
+        final List<Map.Entry<Expression, Interval>> checkedIndices = new ArrayList<>();
+        /**
+         * All array accesses of the procedure and the ones whose index may be out of bounds at least once.
+         */
+        final Set<ArrayAccess> accesses = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<ArrayAccess> possiblyOutOfBounds = Collections.newSetFromMap(new IdentityHashMap<>());
+        /**
+         * The texts of the expressions whose ranges are kept, by the variables they contain. The ranges of the
+         * expressions are forgotten as soon as one of the variables changes.
+         */
+        final Map<VariableEntry, Set<String>> expressionsContaining = new HashMap<>();
+
+        RangeVisitor(SymbolTable localTable, ProcedureDeclaration procedure) {
+            this.localTable = localTable;
+            ThresholdVisitor thresholdVisitor = new ThresholdVisitor();
+            procedure.body.forEach(statement -> statement.accept(thresholdVisitor));
+            this.thresholds = thresholdVisitor.thresholds;
+        }
+
+        /**
+         * Removes the checks of all accesses that never have an index out of bounds.
+         *
+         * @return The report of the removed checks.
+         */
+        String removeIndexChecks(Identifier procedureName) {
+            int removed = 0;
+            for (ArrayAccess arrayAccess : accesses) {
+                arrayAccess.indexChecked = possiblyOutOfBounds.contains(arrayAccess);
+                if (!arrayAccess.indexChecked) removed++;
+            }
+            return String.format("Range analysis for procedure '%s': removed %d of %d index checks", procedureName, removed, accesses.size());
+        }
+
+        /**
+         * @return The entry of the variable if its range is tracked, null otherwise.
+         */
+        private VariableEntry trackedVariable(Expression expression) {
+            if (!(expression instanceof VariableExpression)) return null;
+            return trackedVariable(((VariableExpression) expression).variable);
+        }
+
+        private VariableEntry trackedVariable(Variable variable) {
+            if (!(variable instanceof NamedVariable)) return null;
+            VariableEntry entry = (VariableEntry) localTable.lookup(((NamedVariable) variable).name);
+            return entry.type == PrimitiveType.intType && !entry.isReference ? entry : null;
+        }
+
+        /**
+         * @return The text of the expression if it only consists of tracked variables and literals, null otherwise.
+         */
+        private String textOf(Expression expression) {
+            if (expression instanceof IntLiteral) return String.valueOf(((IntLiteral) expression).value);
+            if (trackedVariable(expression) != null) return ((NamedVariable) ((VariableExpression) expression).variable).name.toString();
+            if (!(expression instanceof BinaryExpression)) return null;
+
+            BinaryExpression binaryExpression = (BinaryExpression) expression;
+            String left = textOf(binaryExpression.leftOperand);
+            String right = textOf(binaryExpression.rightOperand);
+            return left == null || right == null ? null : String.format("(%s %s %s)", left, binaryExpression.operator, right);
+        }
+
+        private void addVariablesOf(Expression expression, String text) {
+            VariableEntry variable = trackedVariable(expression);
+            if (variable != null) {
+                expressionsContaining.computeIfAbsent(variable, v -> new HashSet<>()).add(text);
+            } else if (expression instanceof BinaryExpression) {
+                addVariablesOf(((BinaryExpression) expression).leftOperand, text);
+                addVariablesOf(((BinaryExpression) expression).rightOperand, text);
+            }
+        }
+
+        /**
+         * Sets the range of a variable after it has changed.
+         */
+        private void assign(VariableEntry variable, Interval interval) {
+            ranges.set(variable, interval);
+            ranges.forget(expressionsContaining.getOrDefault(variable, Set.of()));
+        }
+
+        /**
+         * @return The range of the values the expression may have, given the current ranges of the variables.
+         */
+        private Interval rangeOf(Expression expression) {
+            if (!(expression instanceof BinaryExpression) || ranges.intervals.isEmpty()) return computedRangeOf(expression);
+            Interval computed = computedRangeOf(expression);
+            String text = textOf(expression);
+            Interval known = text == null ? null : computed.meet(ranges.get(text));
+            return known == null ? computed : known;
+        }
+
+        private Interval computedRangeOf(Expression expression) {
+            if (expression instanceof IntLiteral) {
+                int value = ((IntLiteral) expression).value;
+                return new Interval(value, value);
+            }
+            if (!(expression instanceof BinaryExpression)) {
+                VariableEntry variable = trackedVariable(expression);
+                return variable == null ? Interval.ANY : ranges.get(variable);
+            }
+
+            BinaryExpression binaryExpression = (BinaryExpression) expression;
+            Interval left = rangeOf(binaryExpression.leftOperand);
+            Interval right = rangeOf(binaryExpression.rightOperand);
+            switch (binaryExpression.operator) {
+                case ADD:
+                    return Interval.of(left.lower + right.lower, left.upper + right.upper);
+                case SUB:
+                    return Interval.of(left.lower - right.upper, left.upper - right.lower);
+                case MUL:
+                    return corners(left, right, (a, b) -> a * b);
+                case DIV:
+                    // If the divisor may be 0, the program stops before the result is used
+                    if (right.lower <= 0 && right.upper >= 0) return Interval.ANY;
+                    return corners(left, right, (a, b) -> a / b);
+                default:
+                    return Interval.ANY;
+            }
+        }
+
+        /**
+         * @return The range of a monotonic operation, which is bounded by the results at the corners of its operands.
+         */
+        private static Interval corners(Interval left, Interval right, java.util.function.LongBinaryOperator operation) {
+            long[] results = {
+                    operation.applyAsLong(left.lower, right.lower), operation.applyAsLong(left.lower, right.upper),
+                    operation.applyAsLong(left.upper, right.lower), operation.applyAsLong(left.upper, right.upper)
+            };
+            return Interval.of(Arrays.stream(results).min().getAsLong(), Arrays.stream(results).max().getAsLong());
+        }
+
+        /**
+         * Restricts the variables of the expression, knowing that its value lies inside the given interval. This is
+         * done for variables and sums or differences of them, as long as the expression cannot wrap around.
+         */
+        private void restrict(Expression expression, Interval interval) {
+            if (!ranges.reachable) return;
+            VariableEntry variable = trackedVariable(expression);
+            if (variable != null) {
+                ranges.restrict(variable, interval);
+                return;
+            }
+            if (!(expression instanceof BinaryExpression)) return;
+            String text = textOf(expression);
+            if (text != null) {
+                addVariablesOf(expression, text);
+                ranges.restrict(text, interval);
+                if (!ranges.reachable) return;
+            }
+
+            BinaryExpression binaryExpression = (BinaryExpression) expression;
+            Expression left = binaryExpression.leftOperand;
+            Expression right = binaryExpression.rightOperand;
+            Interval leftRange = rangeOf(left);
+            Interval rightRange = rangeOf(right);
+            if (binaryExpression.operator == BinaryExpression.Operator.ADD) {
+                if (!new Interval(leftRange.lower + rightRange.lower, leftRange.upper + rightRange.upper).fitsInteger()) return;
+                restrict(left, new Interval(interval.lower - rightRange.upper, interval.upper - rightRange.lower));
+                leftRange = rangeOf(left);
+                restrict(right, new Interval(interval.lower - leftRange.upper, interval.upper - leftRange.lower));
+            } else if (binaryExpression.operator == BinaryExpression.Operator.SUB) {
+                if (!new Interval(leftRange.lower - rightRange.upper, leftRange.upper - rightRange.lower).fitsInteger()) return;
+                restrict(left, new Interval(interval.lower + rightRange.lower, interval.upper + rightRange.upper));
+                leftRange = rangeOf(left);
+                restrict(right, new Interval(leftRange.lower - interval.upper, leftRange.upper - interval.lower));
+            }
+        }
+
+        /**
+         * Restricts the variables compared by the condition, knowing whether the condition holds.
+         */
+        private void restrictByCondition(Expression condition, boolean holds) {
+            BinaryExpression comparison = (BinaryExpression) condition;
+            BinaryExpression.Operator operator = holds ? comparison.operator : negated(comparison.operator);
+            Expression left = comparison.leftOperand;
+            Expression right = comparison.rightOperand;
+            Interval leftRange = rangeOf(left);
+            Interval rightRange = rangeOf(right);
+            switch (operator) {
+                case EQU:
+                    restrict(left, rightRange);
+                    restrict(right, leftRange);
+                    break;
+                case NEQ:
+                    excludeBound(left, rightRange);
+                    excludeBound(right, leftRange);
+                    break;
+                case LST:
+                    restrict(left, new Interval(Integer.MIN_VALUE, rightRange.upper - 1));
+                    restrict(right, new Interval(leftRange.lower + 1, Integer.MAX_VALUE));
+                    break;
+                case LSE:
+                    restrict(left, new Interval(Integer.MIN_VALUE, rightRange.upper));
+                    restrict(right, new Interval(leftRange.lower, Integer.MAX_VALUE));
+                    break;
+                case GRT:
+                    restrict(left, new Interval(rightRange.lower + 1, Integer.MAX_VALUE));
+                    restrict(right, new Interval(Integer.MIN_VALUE, leftRange.upper - 1));
+                    break;
+                case GRE:
+                    restrict(left, new Interval(rightRange.lower, Integer.MAX_VALUE));
+                    restrict(right, new Interval(Integer.MIN_VALUE, leftRange.upper));
+                    break;
+            }
+        }
+
+        /**
+         * Removes a single value from the range of a variable, which is only possible at its bounds.
+         */
+        private void excludeBound(Expression expression, Interval excluded) {
+            VariableEntry variable = trackedVariable(expression);
+            if (variable == null || !ranges.reachable || excluded.lower != excluded.upper) return;
+            Interval interval = ranges.get(variable);
+            if (interval.lower == excluded.lower) ranges.restrict(variable, new Interval(interval.lower + 1, interval.upper));
+            else if (interval.upper == excluded.upper) ranges.restrict(variable, new Interval(interval.lower, interval.upper - 1));
+        }
+
+        private static BinaryExpression.Operator negated(BinaryExpression.Operator operator) {
+            switch (operator) {
+                case EQU:
+                    return BinaryExpression.Operator.NEQ;
+                case NEQ:
+                    return BinaryExpression.Operator.EQU;
+                case LST:
+                    return BinaryExpression.Operator.GRE;
+                case LSE:
+                    return BinaryExpression.Operator.GRT;
+                case GRT:
+                    return BinaryExpression.Operator.LSE;
+                case GRE:
+                    return BinaryExpression.Operator.LST;
+                default:
+                    throw new IllegalArgumentException("Not a comparison operator: " + operator);
+            }
+        }
+
+        /**
+         * Applies the index checks passed while evaluating the expressions of a statement.
+         */
+        private void applyCheckedIndices() {
+            checkedIndices.forEach(checkedIndex -> restrict(checkedIndex.getKey(), checkedIndex.getValue()));
+            checkedIndices.clear();
+        }
+
+        public void visit(CompoundStatement compoundStatement) {
+            compoundStatement.statements.forEach(statement -> statement.accept(this));
+        }
+
+        public void visit(AssignStatement assignStatement) {
+            assignStatement.target.accept(this);
+            assignStatement.value.accept(this);
+            Interval value = rangeOf(assignStatement.value);
+            applyCheckedIndices();
+
+            VariableEntry target = trackedVariable(assignStatement.target);
+            if (target != null && ranges.reachable) assign(target, value);
+        }
+
+        public void visit(CallStatement callStatement) {
+            callStatement.arguments.forEach(argument -> argument.accept(this));
+            applyCheckedIndices();
+
+            ProcedureEntry procedureEntry = (ProcedureEntry) localTable.lookup(callStatement.procedureName);
+            for (int i = 0; i < callStatement.arguments.size(); i++) {
+                VariableEntry argument = trackedVariable(callStatement.arguments.get(i));
+                if (argument != null && procedureEntry.parameterTypes.get(i).isReference) assign(argument, Interval.ANY);
+            }
+        }
+
+        public void visit(IfStatement ifStatement) {
+            ifStatement.condition.accept(this);
+            applyCheckedIndices();
+
+            Ranges beforeBranches = ranges;
+            ranges = beforeBranches.copy();
+            restrictByCondition(ifStatement.condition, true);
+            ifStatement.thenPart.accept(this);
+            Ranges afterThen = ranges;
+
+            ranges = beforeBranches;
+            restrictByCondition(ifStatement.condition, false);
+            ifStatement.elsePart.accept(this);
+            ranges = afterThen.join(ranges);
+        }
+
+        /**
+         * Analyzes the loop until the ranges at its beginning no longer change. As the ranges only grow from one
+         * iteration of the analysis to the next, an index is out of bounds in the last iteration if it is in any.
+         */
+        public void visit(WhileStatement whileStatement) {
+            Ranges loopStart = ranges;
+            Ranges afterCondition;
+            while (true) {
+                ranges = loopStart.copy();
+                whileStatement.condition.accept(this);
+                applyCheckedIndices();
+                afterCondition = ranges.copy();
+
+                restrictByCondition(whileStatement.condition, true);
+                whileStatement.body.accept(this);
+                Ranges next = loopStart.widen(loopStart.join(ranges), thresholds);
+                if (next.equals(loopStart)) break;
+                loopStart = next;
+            }
+            ranges = afterCondition;
+            restrictByCondition(whileStatement.condition, false);
+        }
+
+        public void visit(ArrayAccess arrayAccess) {
+            arrayAccess.array.accept(this);
+            arrayAccess.index.accept(this);
+            accesses.add(arrayAccess);
+
+            Interval bounds = new Interval(0, ((ArrayType) arrayAccess.array.dataType).arraySize - 1);
+            if (!ranges.reachable) return;
+            Interval index = rangeOf(arrayAccess.index);
+            if (!index.isInside(bounds.lower, bounds.upper)) possiblyOutOfBounds.add(arrayAccess);
+            checkedIndices.add(Map.entry(arrayAccess.index, bounds));
+        }
+
+        public void visit(VariableExpression variableExpression) {
+            variableExpression.variable.accept(this);
+        }
+
+        public void visit(BinaryExpression binaryExpression) {
+            binaryExpression.leftOperand.accept(this);
+            binaryExpression.rightOperand.accept(this);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package de.thm.mni.compilerbau.phases._04e_cfg;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.SymbolTable;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Finds the variables of a procedure passed as reference argument. Their address is taken, so they have to live in
+ * memory instead of a register, both in the control flow graph and in the code of the linear scan register allocation.
+ */
+public class AddressTaken {
+    private AddressTaken() {
+    }
+
+    /**
+     * @param localTable The local table of the procedure, which also sees the procedures it calls.
+     * @return The names of the variables passed as reference argument anywhere in the procedure.
+     */
+    public static Set<String> find(ProcedureDeclaration procedure, SymbolTable localTable) {
+        AddressTakenVisitor visitor = new AddressTakenVisitor(localTable);
+        procedure.body.forEach(statement -> statement.accept(visitor));
+        return visitor.addressTaken;
+    }
+
+    private static class AddressTakenVisitor extends DoNothingVisitor {
+        final SymbolTable localTable;
+        final Set<String> addressTaken = new HashSet<>();
+
+        AddressTakenVisitor(SymbolTable localTable) {
+            this.localTable = localTable;
+        }
+
+        public void visit(CompoundStatement compoundStatement) {
+            compoundStatement.statements.forEach(statement -> statement.accept(this));
+        }
+
+        public void visit(IfStatement ifStatement) {
+            ifStatement.thenPart.accept(this);
+            ifStatement.elsePart.accept(this);
+        }
+
+        public void visit(WhileStatement whileStatement) {
+            whileStatement.body.accept(this);
+        }
+
+        public void visit(CallStatement callStatement) {
+            ProcedureEntry procedureEntry = (ProcedureEntry) localTable.lookup(callStatement.procedureName);
+            for (int i = 0; i < callStatement.arguments.size(); i++) {
+                if (!procedureEntry.parameterTypes.get(i).isReference) continue;
+                Variable variable = ((VariableExpression) callStatement.arguments.get(i)).variable;
+                if (variable instanceof NamedVariable) addressTaken.add(((NamedVariable) variable).name.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package de.thm.mni.compilerbau.phases._04e_cfg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sequence of instructions that is always executed from the first to the last one. Only the {@link #terminator}
+ * at its end may continue execution somewhere else.
+ */
+public class BasicBlock {
+    public int number;
+    public final List<Instruction> instructions = new ArrayList<>();
+    public final List<BasicBlock> predecessors = new ArrayList<>();
+    public Instruction.Terminator terminator = null;
+
+    BasicBlock(int number) {
+        this.number = number;
+    }
+
+    public List<BasicBlock> successors() {
+        return terminator.successors();
+    }
+
+    @Override
+    public String toString() {
+        return "B" + number;
+    }
+}
@@ -0,0 +1,278 @@
+package de.thm.mni.compilerbau.phases._04e_cfg;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.table.VariableEntry;
+import de.thm.mni.compilerbau.types.ArrayType;
+import de.thm.mni.compilerbau.types.PrimitiveType;
+import de.thm.mni.compilerbau.utils.Parallel;
+
+import java.util.*;
+
+/**
+ * This class is used to lower the body of every procedure into a {@link ControlFlowGraph} of three-address
+ * {@link Instruction}s.
+ * <p>
+ * Local variables and value parameters of type int are represented as {@link Value.Local}s, unless they are passed
+ * as reference argument somewhere in the procedure. All other variables live in memory and are accessed through
+ * their address. If requested, the graphs are converted into SSA form afterwards (see {@link SsaConstruction}).
+ */
+public class CfgBuilder {
+    private final boolean showGraphs;
+    private final boolean ssaForm;
+
+    /**
+     * @param showGraphs Whether to print the graphs after they are built (--cfg)
+     * @param ssaForm    Whether the graphs should be converted into SSA form (--ssa)
+     */
+    public CfgBuilder(boolean showGraphs, boolean ssaForm) {
+        this.showGraphs = showGraphs;
+        this.ssaForm = ssaForm;
+    }
+
+    /**
+     * Builds the graphs of all procedures in parallel.
+     *
+     * @return The graphs in the order of the procedures in the program.
+     */
+    public List<ControlFlowGraph> buildGraphs(Program program, SymbolTable table) {
+        List<ControlFlowGraph> graphs = Parallel.map(program.procedures(), procedure -> {
+            ProcedureEntry entry = (ProcedureEntry) table.lookup(procedure.name);
+            ControlFlowGraph graph = new GraphBuilder(entry.localTable).build(procedure);
+            if (ssaForm) new SsaConstruction(graph).convert();
+            return graph;
+        });
+        if (showGraphs) graphs.forEach(graph -> System.out.println(graph.format()));
+        return graphs;
+    }
+
+    private static class GraphBuilder extends DoNothingVisitor {
+        final SymbolTable localTable;
+        final List<BasicBlock> blocks = new ArrayList<>();
+        /**
+         * The variables passed as reference argument, which have to live in memory.
+         */
+        Set<String> addressTaken;
+        BasicBlock current;
+        int temporaries = 0;
+        /**
+         * The value of the expression visited last.
+         */
+        Value value;
+        /**
+         * The value the expression visited next should be computed into, or null if a new temporary may be used.
+         */
+        Value destination;
+
+        GraphBuilder(SymbolTable localTable) {
+            this.localTable = localTable;
+        }
+
+        ControlFlowGraph build(ProcedureDeclaration procedure) {
+            addressTaken = AddressTaken.find(procedure, localTable);
+            current = newBlock();
+            procedure.body.forEach(statement -> statement.accept(this));
+            current.terminator = new Instruction.Return();
+            ControlFlowGraph graph = new ControlFlowGraph(procedure.name.toString(), blocks, locals(procedure));
+            graph.renumberBlocks();
+            return graph;
+        }
+
+        private List<String> locals(ProcedureDeclaration procedure) {
+            List<String> locals = new ArrayList<>();
+            procedure.parameters.forEach(parameter -> {
+                if (isLocal(parameter.name)) locals.add(parameter.name.toString());
+            });
+            procedure.variables.forEach(variable -> {
+                if (isLocal(variable.name)) locals.add(variable.name.toString());
+            });
+            return locals;
+        }
+
+        /**
+         * @return true if the variable is represented by a {@link Value.Local} instead of living in memory.
+         */
+        private boolean isLocal(Identifier name) {
+            VariableEntry entry = (VariableEntry) localTable.lookup(name);
+            return entry.type == PrimitiveType.intType && !entry.isReference && !addressTaken.contains(name.toString());
+        }
+
+        private BasicBlock newBlock() {
+            BasicBlock block = new BasicBlock(blocks.size());
+            blocks.add(block);
+            return block;
+        }
+
+        private Value newTemporary() {
+            return new Value.Temporary(temporaries++);
+        }
+
+        /**
+         * Ends the current block with the terminator and continues in the given block.
+         */
+        private void finishBlock(Instruction.Terminator terminator, BasicBlock next) {
+            current.terminator = terminator;
+            for (BasicBlock successor : terminator.successors()) successor.predecessors.add(current);
+            current = next;
+        }
+
+        private void emit(Instruction instruction) {
+            current.instructions.add(instruction);
+        }
+
+        /**
+         * Lowers the expression.
+         *
+         * @param destination The value the result should be computed into, or null if any value may hold it.
+         * @return The value holding the result of the expression.
+         */
+        private Value lower(Expression expression, Value destination) {
+            this.destination = destination;
+            expression.accept(this);
+            return value;
+        }
+
+        /**
+         * Moves the value of a leaf expression into the requested destination.
+         */
+        private void result(Value value) {
+            if (destination != null) {
+                emit(new Instruction.Copy(destination, value));
+                value = destination;
+            }
+            this.value = value;
+        }
+
+        /**
+         * @return A value holding the address of the variable, which has to live in memory.
+         */
+        private Value address(Variable variable) {
+            if (variable instanceof NamedVariable) {
+                Value address = newTemporary();
+                emit(new Instruction.Address(address, ((NamedVariable) variable).name.toString()));
+                return address;
+            }
+
+            ArrayAccess arrayAccess = (ArrayAccess) variable;
+            ArrayType arrayType = (ArrayType) arrayAccess.array.dataType;
+            Value array = address(arrayAccess.array);
+            Value index = lower(arrayAccess.index, null);
+            if (arrayAccess.indexChecked) emit(new Instruction.IndexCheck(index, arrayType.arraySize));
+
+            Value offset;
+            if (index instanceof Value.Constant) {
+                offset = new Value.Constant(((Value.Constant) index).value * arrayType.baseType.byteSize);
+            } else {
+                offset = newTemporary();
+                emit(new Instruction.Binary(offset, BinaryExpression.Operator.MUL, index, new Value.Constant(arrayType.baseType.byteSize)));
+            }
+            Value address = newTemporary();
+            emit(new Instruction.Binary(address, BinaryExpression.Operator.ADD, array, offset));
+            return address;
+        }
+
+        /**
+         * @return The local representing the variable, or null if the variable lives in memory.
+         */
+        private Value.Local local(Variable variable) {
+            if (!(variable instanceof NamedVariable)) return null;
+            NamedVariable namedVariable = (NamedVariable) variable;
+            return isLocal(namedVariable.name) ? new Value.Local(namedVariable.name.toString()) : null;
+        }
+
+        public void visit(AssignStatement assignStatement) {
+            Value.Local local = local(assignStatement.target);
+            if (local != null) {
+                lower(assignStatement.value, local);
+                return;
+            }
+
+            Value address = address(assignStatement.target);
+            emit(new Instruction.Store(address, lower(assignStatement.value, null)));
+        }
+
+        public void visit(CallStatement callStatement) {
+            ProcedureEntry procedureEntry = (ProcedureEntry) localTable.lookup(callStatement.procedureName);
+            List<Value> arguments = new ArrayList<>();
+            for (int i = 0; i < callStatement.arguments.size(); i++) {
+                Expression argument = callStatement.arguments.get(i);
+                if (procedureEntry.parameterTypes.get(i).isReference) {
+                    arguments.add(address(((VariableExpression) argument).variable));
+                } else {
+                    arguments.add(lower(argument, null));
+                }
+            }
+            emit(new Instruction.Call(callStatement.procedureName.toString(), arguments));
+        }
+
+        public void visit(CompoundStatement compoundStatement) {
+            compoundStatement.statements.forEach(statement -> statement.accept(this));
+        }
+
+        /**
+         * Ends the current block with a branch on the condition.
+         */
+        private void branch(Expression condition, BasicBlock thenBlock, BasicBlock elseBlock) {
+            BinaryExpression comparison = (BinaryExpression) condition;
+            Value left = lower(comparison.leftOperand, null);
+            Value right = lower(comparison.rightOperand, null);
+            finishBlock(new Instruction.Branch(comparison.operator, left, right, thenBlock, elseBlock), null);
+        }
+
+        public void visit(IfStatement ifStatement) {
+            BasicBlock thenBlock = newBlock();
+            BasicBlock elseBlock = ifStatement.elsePart instanceof EmptyStatement ? null : newBlock();
+            BasicBlock endBlock = newBlock();
+
+            branch(ifStatement.condition, thenBlock, elseBlock == null ? endBlock : elseBlock);
+            current = thenBlock;
+            ifStatement.thenPart.accept(this);
+            finishBlock(new Instruction.Jump(endBlock), elseBlock);
+            if (elseBlock != null) {
+                ifStatement.elsePart.accept(this);
+                finishBlock(new Instruction.Jump(endBlock), null);
+            }
+            current = endBlock;
+        }
+
+        public void visit(WhileStatement whileStatement) {
+            BasicBlock conditionBlock = newBlock();
+            BasicBlock bodyBlock = newBlock();
+            BasicBlock endBlock = newBlock();
+
+            finishBlock(new Instruction.Jump(conditionBlock), conditionBlock);
+            branch(whileStatement.condition, bodyBlock, endBlock);
+            current = bodyBlock;
+            whileStatement.body.accept(this);
+            finishBlock(new Instruction.Jump(conditionBlock), endBlock);
+        }
+
+        public void visit(IntLiteral intLiteral) {
+            result(new Value.Constant(intLiteral.value));
+        }
+
+        public void visit(VariableExpression variableExpression) {
+            Value.Local local = local(variableExpression.variable);
+            if (local != null) {
+                result(local);
+                return;
+            }
+
+            Value destination = this.destination;
+            Value address = address(variableExpression.variable);
+            value = destination != null ? destination : newTemporary();
+            emit(new Instruction.Load(value, address));
+        }
+
+        public void visit(BinaryExpression binaryExpression) {
+            Value destination = this.destination;
+            Value left = lower(binaryExpression.leftOperand, null);
+            Value right = lower(binaryExpression.rightOperand, null);
+            value = destination != null ? destination : newTemporary();
+            emit(new Instruction.Binary(value, binaryExpression.operator, left, right));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package de.thm.mni.compilerbau.phases._04e_cfg;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * The body of a procedure as a graph of {@link BasicBlock}s. Execution starts at the {@link #entry} block and ends at
+ * the block containing the {@link Instruction.Return}.
+ */
+public class ControlFlowGraph {
+    public final String procedureName;
+    public final BasicBlock entry;
+    /**
+     * All blocks of the graph, the entry block first.
+     */
+    public final List<BasicBlock> blocks = new ArrayList<>();
+    /**
+     * The names of the variables represented by {@link Value.Local}s.
+     */
+    public final List<String> locals;
+    public boolean ssaForm = false;
+
+    ControlFlowGraph(String procedureName, List<BasicBlock> blocks, List<String> locals) {
+        this.procedureName = procedureName;
+        this.entry = blocks.get(0);
+        this.blocks.addAll(blocks);
+        this.locals = List.copyOf(locals);
+    }
+
+    /**
+     * Orders and numbers the blocks in reverse postorder and removes unreachable blocks.
+     */
+    void renumberBlocks() {
+        List<BasicBlock> reachable = reversePostorder();
+        blocks.clear();
+        blocks.addAll(reachable);
+        for (int i = 0; i < blocks.size(); i++) blocks.get(i).number = i;
+        blocks.forEach(block -> block.predecessors.retainAll(reachable));
+    }
+
+    /**
+     * @return The blocks reachable from the entry block in reverse postorder, so every block comes before its
+     * successors except along back edges of loops. The successors of a block are visited in their order, so the
+     * blocks of a statement appear in the order of the source code.
+     */
+    public List<BasicBlock> reversePostorder() {
+        List<BasicBlock> postorder = new ArrayList<>();
+        Set<BasicBlock> visited = new HashSet<>();
+        Deque<Iterator<BasicBlock>> successors = new ArrayDeque<>();
+        Deque<BasicBlock> path = new ArrayDeque<>();
+        visited.add(entry);
+        path.push(entry);
+        successors.push(reversed(entry.successors()));
+        while (!path.isEmpty()) {
+            if (successors.peek().hasNext()) {
+                BasicBlock next = successors.peek().next();
+                if (visited.add(next)) {
+                    path.push(next);
+                    successors.push(reversed(next.successors()));
+                }
+            } else {
+                postorder.add(path.pop());
+                successors.pop();
+            }
+        }
+        Collections.reverse(postorder);
+        return postorder;
+    }
+
+    private static Iterator<BasicBlock> reversed(List<BasicBlock> blocks) {
+        List<BasicBlock> reversed = new ArrayList<>(blocks);
+        Collections.reverse(reversed);
+        return reversed.iterator();
+    }
+
+    /**
+     * @return A textual representation of the graph, listing the instructions of every block.
+     */
+    public String format() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Control flow graph for procedure '%s'%s:\n", procedureName, ssaForm ? " in SSA form" : ""));
+        for (BasicBlock block : blocks) {
+            text.append(block).append(':');
+            if (!block.predecessors.isEmpty()) {
+                text.append(" // predecessors: ")
+                        .append(block.predecessors.stream().map(BasicBlock::toString).collect(Collectors.joining(", ")));
+            }
+            text.append('\n');
+            block.instructions.forEach(instruction -> text.append("    ").append(instruction).append('\n'));
+            text.append("    ").append(block.terminator).append('\n');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,345 @@
+package de.thm.mni.compilerbau.phases._04e_cfg;
+
+import de.thm.mni.compilerbau.absyn.BinaryExpression;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A three-address instruction of a {@link BasicBlock}.
+ * <p>
+ * Every instruction defines at most one {@link #result} from its {@link #operands}. Memory is only accessed by
+ * {@link Load}, {@link Store} and {@link Call} instructions, all other instructions work on values only. Arrays,
+ * reference parameters and variables passed as reference argument live in memory, their addresses are computed
+ * explicitly starting from an {@link Address} instruction.
+ */
+public abstract class Instruction {
+    /**
+     * The value defined by this instruction, or null if it does not define one.
+     */
+    public final Value result;
+    public final List<Value> operands;
+
+    private Instruction(Value result, List<Value> operands) {
+        this.result = result;
+        this.operands = List.copyOf(operands);
+    }
+
+    public Value operand(int index) {
+        return operands.get(index);
+    }
+
+    /**
+     * @return An instruction of the same kind with the given result and operands, used to rename values.
+     */
+    public abstract Instruction with(Value result, List<Value> operands);
+
+    public boolean readsMemory() {
+        return false;
+    }
+
+    public boolean writesMemory() {
+        return false;
+    }
+
+    private static String symbol(BinaryExpression.Operator operator) {
+        switch (operator) {
+            case ADD:
+                return "+";
+            case SUB:
+                return "-";
+            case MUL:
+                return "*";
+            case DIV:
+                return "/";
+            case EQU:
+                return "=";
+            case NEQ:
+                return "#";
+            case LST:
+                return "<";
+            case LSE:
+                return "<=";
+            case GRT:
+                return ">";
+            case GRE:
+                return ">=";
+            default:
+                throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+    }
+
+    /**
+     * result = source
+     */
+    public static class Copy extends Instruction {
+        public Copy(Value result, Value source) {
+            super(result, List.of(source));
+        }
+
+        @Override
+        public Instruction with(Value result, List<Value> operands) {
+            return new Copy(result, operands.get(0));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s = %s", result, operand(0));
+        }
+    }
+
+    /**
+     * result = left operator right, for an arithmetic operator.
+     */
+    public static class Binary extends Instruction {
+        public final BinaryExpression.Operator operator;
+
+        public Binary(Value result, BinaryExpression.Operator operator, Value left, Value right) {
+            super(result, List.of(left, right));
+            this.operator = operator;
+        }
+
+        @Override
+        public Instruction with(Value result, List<Value> operands) {
+            return new Binary(result, operator, operands.get(0), operands.get(1));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s = %s %s %s", result, operand(0), symbol(operator), operand(1));
+        }
+    }
+
+    /**
+     * result = &amp;variable, the address of a variable living in memory. For a reference parameter, this is the
+     * address passed by the caller.
+     */
+    public static class Address extends Instruction {
+        public final String variable;
+
+        public Address(Value result, String variable) {
+            super(result, List.of());
+            this.variable = variable;
+        }
+
+        @Override
+        public Instruction with(Value result, List<Value> operands) {
+            return new Address(result, variable);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s = &%s", result, variable);
+        }
+    }
+
+    /**
+     * result = [address]
+     */
+    public static class Load extends Instruction {
+        public Load(Value result, Value address) {
+            super(result, List.of(address));
+        }
+
+        @Override
+        public Instruction with(Value result, List<Value> operands) {
+            return new Load(result, operands.get(0));
+        }
+
+        @Override
+        public boolean readsMemory() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s = [%s]", result, operand(0));
+        }
+    }
+
+    /**
+     * [address] = value
+     */
+    public static class Store extends Instruction {
+        public Store(Value address, Value value) {
+            super(null, List.of(address, value));
+        }
+
+        @Override
+        public Instruction with(Value result, List<Value> operands) {
+            return new Store(operands.get(0), operands.get(1));
+        }
+
+        @Override
+        public boolean writesMemory() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%s] = %s", operand(0), operand(1));
+        }
+    }
+
+    /**
+     * Stops the program with an index error unless 0 &lt;= index &lt; size.
+     */
+    public static class IndexCheck extends Instruction {
+        public final int size;
+
+        public IndexCheck(Value index, int size) {
+            super(null, List.of(index));
+            this.size = size;
+        }
+
+        @Override
+        public Instruction with(Value result, List<Value> operands) {
+            return new IndexCheck(operands.get(0), size);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("check 0 <= %s < %d", operand(0), size);
+        }
+    }
+
+    /**
+     * Calls a procedure with the given arguments. Reference arguments are passed as addresses. The called procedure
+     * may read and write all memory it can reach through them.
+     */
+    public static class Call extends Instruction {
+        public final String procedure;
+
+        public Call(String procedure, List<Value> arguments) {
+            super(null, arguments);
+            this.procedure = procedure;
+        }
+
+        @Override
+        public Instruction with(Value result, List<Value> operands) {
+            return new Call(procedure, operands);
+        }
+
+        @Override
+        public boolean readsMemory() {
+            return true;
+        }
+
+        @Override
+        public boolean writesMemory() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("call %s(%s)", procedure, operands.stream().map(Value::toString).collect(Collectors.joining(", ")));
+        }
+    }
+
+    /**
+     * The SSA join of the values a variable has at the ends of the predecessors of a block. The operands are in the
+     * order of {@link BasicBlock#predecessors}.
+     */
+    public static class Phi extends Instruction {
+        public Phi(Value result, List<Value> operands) {
+            super(result, operands);
+        }
+
+        @Override
+        public Instruction with(Value result, List<Value> operands) {
+            return new Phi(result, operands);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s = phi(%s)", result, operands.stream().map(Value::toString).collect(Collectors.joining(", ")));
+        }
+    }
+
+    /**
+     * The last instruction of every block, which decides where execution continues.
+     */
+    public abstract static class Terminator extends Instruction {
+        private Terminator(List<Value> operands) {
+            super(null, operands);
+        }
+
+        public abstract List<BasicBlock> successors();
+    }
+
+    public static class Jump extends Terminator {
+        public final BasicBlock target;
+
+        public Jump(BasicBlock target) {
+            super(List.of());
+            this.target = target;
+        }
+
+        @Override
+        public List<BasicBlock> successors() {
+            return List.of(target);
+        }
+
+        @Override
+        public Instruction with(Value result, List<Value> operands) {
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "jump " + target;
+        }
+    }
+
+    /**
+     * Continues at the then block if the comparison holds, at the else block otherwise.
+     */
+    public static class Branch extends Terminator {
+        public final BinaryExpression.Operator operator;
+        public final BasicBlock thenBlock;
+        public final BasicBlock elseBlock;
+
+        public Branch(BinaryExpression.Operator operator, Value left, Value right, BasicBlock thenBlock, BasicBlock elseBlock) {
+            super(List.of(left, right));
+            this.operator = operator;
+            this.thenBlock = thenBlock;
+            this.elseBlock = elseBlock;
+        }
+
+        @Override
+        public List<BasicBlock> successors() {
+            return List.of(thenBlock, elseBlock);
+        }
+
+        @Override
+        public Instruction with(Value result, List<Value> operands) {
+            return new Branch(operator, operands.get(0), operands.get(1), thenBlock, elseBlock);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("if %s %s %s then %s else %s", operand(0), symbol(operator), operand(1), thenBlock, elseBlock);
+        }
+    }
+
+    public static class Return extends Terminator {
+        public Return() {
+            super(List.of());
+        }
+
+        @Override
+        public List<BasicBlock> successors() {
+            return List.of();
+        }
+
+        @Override
+        public Instruction with(Value result, List<Value> operands) {
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "return";
+        }
+    }
+}
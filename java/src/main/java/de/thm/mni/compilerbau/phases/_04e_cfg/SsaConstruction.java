@@ -0,0 +1,204 @@
+package de.thm.mni.compilerbau.phases._04e_cfg;
+
+import java.util.*;
+
+/**
+ * Converts a {@link ControlFlowGraph} into static single assignment form, where every {@link Value.Local} is defined
+ * exactly once.
+ * <p>
+ * The dominators are computed with the iterative algorithm by Cooper, Harvey and Kennedy. Phi instructions are
+ * placed at the iterated dominance frontiers of the definitions of every variable, but only for variables used in a
+ * different block than they are defined in (semi-pruned SSA). Afterwards the definitions and uses are renamed to
+ * versions while walking the dominator tree.
+ */
+public class SsaConstruction {
+    private final ControlFlowGraph graph;
+    private final Map<BasicBlock, BasicBlock> immediateDominators = new HashMap<>();
+    private final Map<BasicBlock, List<BasicBlock>> dominatedBlocks = new HashMap<>();
+    private final Map<BasicBlock, Set<BasicBlock>> dominanceFrontiers = new HashMap<>();
+
+    /**
+     * @param graph The graph to convert, whose blocks have to be numbered in reverse postorder.
+     */
+    public SsaConstruction(ControlFlowGraph graph) {
+        this.graph = graph;
+    }
+
+    public void convert() {
+        computeDominators();
+        computeDominanceFrontiers();
+        insertPhis();
+        renameVariables();
+        graph.ssaForm = true;
+    }
+
+    /**
+     * @return The block immediately dominating the given one. The entry block dominates itself.
+     */
+    public BasicBlock immediateDominator(BasicBlock block) {
+        return immediateDominators.get(block);
+    }
+
+    private void computeDominators() {
+        immediateDominators.put(graph.entry, graph.entry);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : graph.blocks) {
+                if (block == graph.entry) continue;
+                BasicBlock dominator = null;
+                for (BasicBlock predecessor : block.predecessors) {
+                    if (!immediateDominators.containsKey(predecessor)) continue;
+                    dominator = dominator == null ? predecessor : intersect(predecessor, dominator);
+                }
+                if (immediateDominators.get(block) != dominator) {
+                    immediateDominators.put(block, dominator);
+                    changed = true;
+                }
+            }
+        }
+
+        graph.blocks.forEach(block -> dominatedBlocks.put(block, new ArrayList<>()));
+        for (BasicBlock block : graph.blocks) {
+            if (block != graph.entry) dominatedBlocks.get(immediateDominators.get(block)).add(block);
+        }
+    }
+
+    /**
+     * @return The nearest common dominator of both blocks.
+     */
+    private BasicBlock intersect(BasicBlock first, BasicBlock second) {
+        while (first != second) {
+            while (first.number > second.number) first = immediateDominators.get(first);
+            while (second.number > first.number) second = immediateDominators.get(second);
+        }
+        return first;
+    }
+
+    private void computeDominanceFrontiers() {
+        graph.blocks.forEach(block -> dominanceFrontiers.put(block, new HashSet<>()));
+        for (BasicBlock block : graph.blocks) {
+            if (block.predecessors.size() < 2) continue;
+            for (BasicBlock predecessor : block.predecessors) {
+                BasicBlock runner = predecessor;
+                while (runner != immediateDominators.get(block)) {
+                    dominanceFrontiers.get(runner).add(block);
+                    runner = immediateDominators.get(runner);
+                }
+            }
+        }
+    }
+
+    private void insertPhis() {
+        Map<String, Set<BasicBlock>> definingBlocks = new HashMap<>();
+        Set<String> usedAcrossBlocks = new HashSet<>();
+        for (BasicBlock block : graph.blocks) {
+            Set<String> defined = new HashSet<>();
+            for (Instruction instruction : instructionsOf(block)) {
+                for (Value operand : instruction.operands) {
+                    if (operand instanceof Value.Local && !defined.contains(((Value.Local) operand).name)) {
+                        usedAcrossBlocks.add(((Value.Local) operand).name);
+                    }
+                }
+                if (instruction.result instanceof Value.Local) {
+                    String name = ((Value.Local) instruction.result).name;
+                    defined.add(name);
+                    definingBlocks.computeIfAbsent(name, n -> new HashSet<>()).add(block);
+                }
+            }
+        }
+
+        for (String name : graph.locals) {
+            if (!usedAcrossBlocks.contains(name)) continue;
+            Set<BasicBlock> withPhi = new HashSet<>();
+            Deque<BasicBlock> worklist = new ArrayDeque<>(definingBlocks.getOrDefault(name, Set.of()));
+            while (!worklist.isEmpty()) {
+                for (BasicBlock frontier : dominanceFrontiers.get(worklist.pop())) {
+                    if (!withPhi.add(frontier)) continue;
+                    Value.Local variable = new Value.Local(name);
+                    int phis = 0;
+                    while (phis < frontier.instructions.size() && frontier.instructions.get(phis) instanceof Instruction.Phi) phis++;
+                    frontier.instructions.add(phis, new Instruction.Phi(variable, Collections.nCopies(frontier.predecessors.size(), variable)));
+                    worklist.push(frontier);
+                }
+            }
+        }
+    }
+
+    private static List<Instruction> instructionsOf(BasicBlock block) {
+        List<Instruction> instructions = new ArrayList<>(block.instructions);
+        instructions.add(block.terminator);
+        return instructions;
+    }
+
+    /**
+     * Renames all variables in preorder of the dominator tree, so the definition of a version is always visited
+     * before its uses. The current version of every variable is kept on a stack, the versions defined in a block are
+     * removed again after all blocks dominated by it are renamed.
+     */
+    private void renameVariables() {
+        Map<String, Integer> versionCounts = new HashMap<>();
+        Map<String, Deque<Integer>> versions = new HashMap<>();
+        graph.locals.forEach(name -> {
+            versionCounts.put(name, 1);
+            versions.put(name, new ArrayDeque<>(List.of(0)));
+        });
+
+        Map<BasicBlock, List<String>> definedNames = new HashMap<>();
+        Deque<BasicBlock> pending = new ArrayDeque<>(List.of(graph.entry));
+        Set<BasicBlock> entered = new HashSet<>();
+        while (!pending.isEmpty()) {
+            BasicBlock block = pending.peek();
+            if (!entered.add(block)) {
+                pending.pop();
+                definedNames.get(block).forEach(name -> versions.get(name).pop());
+                continue;
+            }
+
+            List<String> defined = new ArrayList<>();
+            for (int i = 0; i < block.instructions.size(); i++) {
+                Instruction instruction = block.instructions.get(i);
+                List<Value> operands = instruction instanceof Instruction.Phi
+                        ? instruction.operands
+                        : currentVersions(instruction.operands, versions);
+                Value result = instruction.result;
+                if (result instanceof Value.Local) {
+                    String name = ((Value.Local) result).name;
+                    int version = versionCounts.merge(name, 1, Integer::sum) - 1;
+                    versions.get(name).push(version);
+                    defined.add(name);
+                    result = new Value.Local(name, version);
+                }
+                block.instructions.set(i, instruction.with(result, operands));
+            }
+            block.terminator = (Instruction.Terminator) block.terminator.with(null, currentVersions(block.terminator.operands, versions));
+            definedNames.put(block, defined);
+
+            for (BasicBlock successor : block.successors()) {
+                int predecessorIndex = successor.predecessors.indexOf(block);
+                for (int i = 0; i < successor.instructions.size(); i++) {
+                    Instruction instruction = successor.instructions.get(i);
+                    if (!(instruction instanceof Instruction.Phi)) break;
+                    List<Value> operands = new ArrayList<>(instruction.operands);
+                    String name = ((Value.Local) instruction.result).name;
+                    operands.set(predecessorIndex, new Value.Local(name, versions.get(name).peek()));
+                    successor.instructions.set(i, instruction.with(instruction.result, operands));
+                }
+            }
+            dominatedBlocks.get(block).forEach(pending::push);
+        }
+    }
+
+    private static List<Value> currentVersions(List<Value> values, Map<String, Deque<Integer>> versions) {
+        List<Value> renamed = new ArrayList<>(values.size());
+        for (Value value : values) {
+            if (value instanceof Value.Local) {
+                String name = ((Value.Local) value).name;
+                renamed.add(new Value.Local(name, versions.get(name).peek()));
+            } else {
+                renamed.add(value);
+            }
+        }
+        return renamed;
+    }
+}
@@ -0,0 +1,96 @@
+package de.thm.mni.compilerbau.phases._04e_cfg;
+
+/**
+ * An operand or result of an {@link Instruction}: a constant, a temporary value introduced while lowering an
+ * expression, or a local variable that is kept outside of memory.
+ * The string representation of a value is the one used in the dump of a {@link ControlFlowGraph}.
+ */
+public abstract class Value {
+    private Value() {
+    }
+
+    public static class Constant extends Value {
+        public final int value;
+
+        public Constant(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Constant && ((Constant) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return Integer.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(value);
+        }
+    }
+
+    /**
+     * An intermediate result, which is defined exactly once.
+     */
+    public static class Temporary extends Value {
+        public final int number;
+
+        public Temporary(int number) {
+            this.number = number;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Temporary && ((Temporary) o).number == number;
+        }
+
+        @Override
+        public int hashCode() {
+            return Integer.hashCode(number);
+        }
+
+        @Override
+        public String toString() {
+            return "t" + number;
+        }
+    }
+
+    /**
+     * A local variable or value parameter of type int whose address is never taken, so it is never accessed through
+     * memory. In SSA form, every definition of the variable creates a new version of it. Version 0 is the value the
+     * variable has when the procedure is entered.
+     */
+    public static class Local extends Value {
+        public static final int UNVERSIONED = -1;
+
+        public final String name;
+        public final int version;
+
+        public Local(String name) {
+            this(name, UNVERSIONED);
+        }
+
+        public Local(String name, int version) {
+            this.name = name;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Local && ((Local) o).name.equals(name) && ((Local) o).version == version;
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() * 31 + version;
+        }
+
+        @Override
+        public String toString() {
+            return version == UNVERSIONED ? name : name + "." + version;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package de.thm.mni.compilerbau.phases._04f_inline;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.table.Entry;
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.table.VariableEntry;
+import de.thm.mni.compilerbau.types.ArrayType;
+import de.thm.mni.compilerbau.utils.Parallel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class is used to replace calls of small procedures by their bodies (--inline).
+ * <p>
+ * The call sequence, i.e. storing the arguments, the jump and building and releasing the stack frame, costs about as
+ * much as a procedure body of {@link #MAX_CALLEE_SIZE} nodes of the syntax tree. Smaller procedures are inlined, also
+ * into the bodies inlined themselves, as long as the caller does not grow by more than {@link #MAX_GROWTH} nodes.
+ * Procedures whose local variables take more than {@link #MAX_CALLEE_VARIABLE_SIZE} bytes are not inlined, since the
+ * stack frame of the caller would keep room for them during the whole call of the caller. Recursive procedures are
+ * never inlined into themselves.
+ * <ul>
+ * <li>The parameters and local variables of the callee become local variables of the caller, named like
+ * 'callee.1.name'. The dots cannot be part of an SPL identifier, so these names never clash with other variables.</li>
+ * <li>A value parameter is assigned its argument in front of the body. If the argument is a literal and the callee
+ * never changes the parameter, the literal is used in place of the parameter instead.</li>
+ * <li>A reference parameter is replaced by the variable passed as argument. This is only done if the argument is a
+ * variable, possibly accessed with constant indices inside the bounds, since the address of the argument has to be
+ * the same wherever the parameter is used. Calls with other reference arguments are not inlined.</li>
+ * </ul>
+ * The new local variables are entered into the symbol table of the caller and added to its declaration, so the
+ * variable allocation makes room for them. The rebuilt nodes carry the data types computed by the semantic analysis.
+ */
+public class Inliner {
+    /**
+     * The largest number of nodes in the body of a procedure that is inlined.
+     */
+    static final int MAX_CALLEE_SIZE = 40;
+    /**
+     * The largest number of nodes added to a procedure by inlining.
+     */
+    static final int MAX_GROWTH = 1000;
+    /**
+     * The largest number of bytes taken by the local variables of a procedure that is inlined.
+     */
+    static final int MAX_CALLEE_VARIABLE_SIZE = 256;
+
+    /**
+     * The parameters and local variables of a procedure declaration with their table entries.
+     */
+    private static class Callee {
+        final ProcedureDeclaration declaration;
+        final Map<Identifier, VariableEntry> variables = new HashMap<>();
+        final Set<Identifier> changedParameters = new HashSet<>();
+        final int size;
+        final int variableSize;
+
+        Callee(ProcedureDeclaration declaration, ProcedureEntry entry) {
+            this.declaration = declaration;
+            declaration.parameters.forEach(parameter -> variables.put(parameter.name, (VariableEntry) entry.localTable.lookup(parameter.name)));
+            declaration.variables.forEach(variable -> variables.put(variable.name, (VariableEntry) entry.localTable.lookup(variable.name)));
+            SizeVisitor sizeVisitor = new SizeVisitor(changedParameters);
+            declaration.body.forEach(statement -> statement.accept(sizeVisitor));
+            this.size = sizeVisitor.size;
+            this.variableSize = declaration.variables.stream().mapToInt(variable -> variables.get(variable.name).type.byteSize).sum();
+        }
+    }
+
+    /**
+     * Inlines the calls in all procedures in parallel. The entries of the callees are collected up front, since the
+     * visitors add entries to the tables of the procedures they rebuild.
+     *
+     * @return The program with all inlined calls replaced.
+     */
+    public Program inlineProcedures(Program program, SymbolTable table) {
+        Map<Identifier, Callee> callees = new HashMap<>();
+        program.procedures().forEach(procedure -> callees.put(procedure.name, new Callee(procedure, (ProcedureEntry) table.lookup(procedure.name))));
+
+        List<GlobalDeclaration> declarations = Parallel.map(program.declarations, declaration -> {
+            if (!(declaration instanceof ProcedureDeclaration)) return declaration;
+            ProcedureDeclaration procedure = (ProcedureDeclaration) declaration;
+            return new InliningVisitor(callees, ((ProcedureEntry) table.lookup(procedure.name)).localTable).inline(procedure);
+        });
+        return new Program(program.position, declarations);
+    }
+
+    /**
+     * Counts the nodes of statements and finds the parameters that are assigned or passed as reference argument.
+     */
+    private static class SizeVisitor extends DoNothingVisitor {
+        final Set<Identifier> changed;
+        int size = 0;
+
+        SizeVisitor(Set<Identifier> changed) {
+            this.changed = changed;
+        }
+
+        private void changes(Variable variable) {
+            while (variable instanceof ArrayAccess) variable = ((ArrayAccess) variable).array;
+            changed.add(((NamedVariable) variable).name);
+        }
+
+        public void visit(AssignStatement assignStatement) {
+            size++;
+            changes(assignStatement.target);
+            assignStatement.target.accept(this);
+            assignStatement.value.accept(this);
+        }
+
+        public void visit(CallStatement callStatement) {
+            size++;
+            for (Expression argument : callStatement.arguments) {
+                if (argument instanceof VariableExpression) changes(((VariableExpression) argument).variable);
+                argument.accept(this);
+            }
+        }
+
+        public void visit(CompoundStatement compoundStatement) {
+            compoundStatement.statements.forEach(statement -> statement.accept(this));
+        }
+
+        public void visit(IfStatement ifStatement) {
+            size++;
+            ifStatement.condition.accept(this);
+            ifStatement.thenPart.accept(this);
+            ifStatement.elsePart.accept(this);
+        }
+
+        public void visit(WhileStatement whileStatement) {
+            size++;
+            whileStatement.condition.accept(this);
+            whileStatement.body.accept(this);
+        }
+
+        public void visit(NamedVariable namedVariable) {
+            size++;
+        }
+
+        public void visit(ArrayAccess arrayAccess) {
+            size++;
+            arrayAccess.array.accept(this);
+            arrayAccess.index.accept(this);
+        }
+
+        public void visit(VariableExpression variableExpression) {
+            variableExpression.variable.accept(this);
+        }
+
+        public void visit(BinaryExpression binaryExpression) {
+            size++;
+            binaryExpression.leftOperand.accept(this);
+            binaryExpression.rightOperand.accept(this);
+        }
+
+        public void visit(IntLiteral intLiteral) {
+            size++;
+        }
+    }
+
+    /**
+     * Copies the statements of a procedure body, replacing the variables of an inlined callee by their bindings in the
+     * caller and calls by the bodies of the callees where possible.
+     */
+    private static class InliningVisitor extends DoNothingVisitor {
+        private final Map<Identifier, Callee> callees;
+        private final SymbolTable localTable;
+        private final List<VariableDeclaration> addedVariables = new ArrayList<>();
+        /**
+         * The procedures whose bodies are currently copied, starting with the caller.
+         */
+        private final Deque<Identifier> inlined = new ArrayDeque<>();
+        /**
+         * The variables or literals replacing the variables of the body currently copied. Names without a binding
+         * belong to the caller and are kept.
+         */
+        private Map<Identifier, Node> bindings = Map.of();
+        private int inlinedCalls = 0;
+        private int growth = 0;
+        /**
+         * The copied node, set by every visit method.
+         */
+        private Node result;
+
+        InliningVisitor(Map<Identifier, Callee> callees, SymbolTable localTable) {
+            this.callees = callees;
+            this.localTable = localTable;
+        }
+
+        ProcedureDeclaration inline(ProcedureDeclaration procedureDeclaration) {
+            inlined.push(procedureDeclaration.name);
+            List<Statement> body = copyStatements(procedureDeclaration.body);
+            if (inlinedCalls == 0) return procedureDeclaration;
+
+            List<VariableDeclaration> variables = new ArrayList<>(procedureDeclaration.variables);
+            variables.addAll(addedVariables);
+            return new ProcedureDeclaration(procedureDeclaration.position, procedureDeclaration.name,
+                    procedureDeclaration.parameters, variables, body);
+        }
+
+        private List<Statement> copyStatements(List<Statement> statements) {
+            List<Statement> copied = new ArrayList<>(statements.size());
+            for (Statement statement : statements) copied.add(copy(statement));
+            return copied;
+        }
+
+        private Statement copy(Statement statement) {
+            statement.accept(this);
+            return (Statement) result;
+        }
+
+        private Expression copy(Expression expression) {
+            expression.accept(this);
+            return (Expression) result;
+        }
+
+        private Variable copy(Variable variable) {
+            variable.accept(this);
+            return (Variable) result;
+        }
+
+        public void visit(AssignStatement assignStatement) {
+            result = new AssignStatement(assignStatement.position, copy(assignStatement.target), copy(assignStatement.value));
+        }
+
+        public void visit(CallStatement callStatement) {
+            List<Expression> arguments = new ArrayList<>(callStatement.arguments.size());
+            callStatement.arguments.forEach(argument -> arguments.add(copy(argument)));
+            Callee callee = callees.get(callStatement.procedureName);
+            if (callee == null || inlined.contains(callStatement.procedureName) || callee.size > MAX_CALLEE_SIZE
+                    || callee.variableSize > MAX_CALLEE_VARIABLE_SIZE || growth + callee.size > MAX_GROWTH || !areBindable(callee.declaration.parameters, arguments)) {
+                result = new CallStatement(callStatement.position, callStatement.procedureName, arguments);
+                return;
+            }
+            result = inlineCall(callStatement, callee, arguments);
+        }
+
+        /**
+         * @return The assignments of the value arguments followed by the copied body of the callee.
+         */
+        private Statement inlineCall(CallStatement callStatement, Callee callee, List<Expression> arguments) {
+            inlinedCalls++;
+            growth += callee.size;
+            String prefix = callee.declaration.name + "." + inlinedCalls + ".";
+            Map<Identifier, Node> calleeBindings = new HashMap<>();
+            List<Statement> statements = new ArrayList<>();
+            for (int i = 0; i < arguments.size(); i++) {
+                ParameterDeclaration parameter = callee.declaration.parameters.get(i);
+                Expression argument = arguments.get(i);
+                if (parameter.isReference) {
+                    calleeBindings.put(parameter.name, ((VariableExpression) argument).variable);
+                } else if (argument instanceof IntLiteral && !callee.changedParameters.contains(parameter.name)) {
+                    calleeBindings.put(parameter.name, argument);
+                } else {
+                    NamedVariable variable = addVariable(prefix, parameter.name, parameter.typeExpression, callee, callStatement.position);
+                    calleeBindings.put(parameter.name, variable);
+                    statements.add(new AssignStatement(callStatement.position, copyOf(variable), argument));
+                }
+            }
+            for (VariableDeclaration variable : callee.declaration.variables) {
+                calleeBindings.put(variable.name, addVariable(prefix, variable.name, variable.typeExpression, callee, callStatement.position));
+            }
+
+            Map<Identifier, Node> callerBindings = bindings;
+            bindings = calleeBindings;
+            inlined.push(callee.declaration.name);
+            statements.addAll(copyStatements(callee.declaration.body));
+            inlined.pop();
+            bindings = callerBindings;
+            return new CompoundStatement(callStatement.position, statements);
+        }
+
+        private NamedVariable addVariable(String prefix, Identifier name, TypeExpression typeExpression, Callee callee, Position position) {
+            Identifier renamed = new Identifier(prefix + name);
+            VariableEntry entry = callee.variables.get(name);
+            localTable.enter(renamed, new VariableEntry(entry.type, false));
+            addedVariables.add(new VariableDeclaration(position, renamed, typeExpression));
+            NamedVariable variable = new NamedVariable(position, renamed);
+            variable.dataType = entry.type;
+            return variable;
+        }
+
+        public void visit(CompoundStatement compoundStatement) {
+            result = new CompoundStatement(compoundStatement.position, copyStatements(compoundStatement.statements));
+        }
+
+        public void visit(EmptyStatement emptyStatement) {
+            result = emptyStatement;
+        }
+
+        public void visit(IfStatement ifStatement) {
+            result = new IfStatement(ifStatement.position, copy(ifStatement.condition), copy(ifStatement.thenPart), copy(ifStatement.elsePart));
+        }
+
+        public void visit(WhileStatement whileStatement) {
+            result = new WhileStatement(whileStatement.position, copy(whileStatement.condition), copy(whileStatement.body));
+        }
+
+        public void visit(NamedVariable namedVariable) {
+            Node binding = bindings.get(namedVariable.name);
+            result = binding instanceof Variable ? copyOf((Variable) binding) : copyOf(namedVariable);
+        }
+
+        public void visit(ArrayAccess arrayAccess) {
+            ArrayAccess copied = new ArrayAccess(arrayAccess.position, copy(arrayAccess.array), copy(arrayAccess.index));
+            copied.dataType = arrayAccess.dataType;
+            copied.indexChecked = arrayAccess.indexChecked;
+            result = copied;
+        }
+
+        public void visit(VariableExpression variableExpression) {
+            if (variableExpression.variable instanceof NamedVariable) {
+                Node binding = bindings.get(((NamedVariable) variableExpression.variable).name);
+                if (binding instanceof IntLiteral) {
+                    result = copyOf((IntLiteral) binding);
+                    return;
+                }
+            }
+            VariableExpression copied = new VariableExpression(variableExpression.position, copy(variableExpression.variable));
+            copied.dataType = variableExpression.dataType;
+            result = copied;
+        }
+
+        public void visit(IntLiteral intLiteral) {
+            result = copyOf(intLiteral);
+        }
+
+        public void visit(BinaryExpression binaryExpression) {
+            BinaryExpression copied = new BinaryExpression(binaryExpression.position, binaryExpression.operator,
+                    copy(binaryExpression.leftOperand), copy(binaryExpression.rightOperand));
+            copied.dataType = binaryExpression.dataType;
+            result = copied;
+        }
+
+        /**
+         * Copies a variable of the caller, so no node appears twice in the rebuilt tree.
+         */
+        private Variable copyOf(Variable variable) {
+            Map<Identifier, Node> currentBindings = bindings;
+            bindings = Map.of();
+            Variable copied = copy(variable);
+            bindings = currentBindings;
+            return copied;
+        }
+
+        private NamedVariable copyOf(NamedVariable namedVariable) {
+            NamedVariable copied = new NamedVariable(namedVariable.position, namedVariable.name);
+            copied.dataType = namedVariable.dataType;
+            return copied;
+        }
+
+        private static IntLiteral copyOf(IntLiteral intLiteral) {
+            IntLiteral copied = new IntLiteral(intLiteral.position, intLiteral.value);
+            copied.dataType = intLiteral.dataType;
+            return copied;
+        }
+    }
+
+    /**
+     * @return true if every parameter may be bound to its argument. Value parameters are assigned their argument, so
+     * this always holds for them. Reference parameters are replaced by their argument wherever they are used, which
+     * only keeps the index checks of the call if the argument is a variable with constant indices inside the bounds.
+     */
+    private static boolean areBindable(List<ParameterDeclaration> parameters, List<Expression> arguments) {
+        for (int i = 0; i < arguments.size(); i++) {
+            if (!parameters.get(i).isReference) continue;
+            Variable variable = ((VariableExpression) arguments.get(i)).variable;
+            while (variable instanceof ArrayAccess) {
+                ArrayAccess arrayAccess = (ArrayAccess) variable;
+                if (!(arrayAccess.index instanceof IntLiteral)) return false;
+                int index = ((IntLiteral) arrayAccess.index).value;
+                if (index < 0 || index >= ((ArrayType) arrayAccess.array.dataType).arraySize) return false;
+                variable = arrayAccess.array;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,130 @@
+package de.thm.mni.compilerbau.phases._04g_callgraph;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.utils.Parallel;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The procedures called by every procedure of a program (--deadProcedures).
+ * <p>
+ * Procedures that cannot be reached from main by any chain of calls are never executed, so they are removed from the
+ * program before the variable allocation. The code generator uses the calls of the remaining procedures to import
+ * only the routines of the runtime library that are actually called, and the index error handler only if an index
+ * check is left.
+ */
+public class CallGraph {
+    private final Map<Identifier, Set<Identifier>> callees = new HashMap<>();
+    private final boolean checksIndices;
+
+    /**
+     * Collects the calls of all procedures in parallel.
+     */
+    public CallGraph(Program program) {
+        List<ProcedureDeclaration> procedures = program.procedures();
+        List<CallVisitor> visitors = Parallel.map(procedures, procedure -> {
+            CallVisitor visitor = new CallVisitor();
+            procedure.body.forEach(statement -> statement.accept(visitor));
+            return visitor;
+        });
+        for (int i = 0; i < procedures.size(); i++) callees.put(procedures.get(i).name, visitors.get(i).callees);
+        checksIndices = visitors.stream().anyMatch(visitor -> visitor.checksIndices);
+    }
+
+    /**
+     * @return The procedures called by the given root, directly or indirectly, including the root itself.
+     */
+    public Set<Identifier> reachableFrom(Identifier root) {
+        Set<Identifier> reachable = new HashSet<>();
+        Deque<Identifier> worklist = new ArrayDeque<>();
+        reachable.add(root);
+        worklist.push(root);
+        while (!worklist.isEmpty()) {
+            for (Identifier callee : callees.getOrDefault(worklist.pop(), Set.of())) {
+                if (reachable.add(callee)) worklist.push(callee);
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * @return The program without the procedures that are not reachable from main.
+     */
+    public Program removeUnreachable(Program program) {
+        Set<Identifier> reachable = reachableFrom(new Identifier("main"));
+        List<GlobalDeclaration> declarations = program.declarations.stream()
+                .filter(declaration -> !(declaration instanceof ProcedureDeclaration) || reachable.contains(((ProcedureDeclaration) declaration).name))
+                .collect(Collectors.toList());
+        return declarations.size() == program.declarations.size() ? program : new Program(program.position, declarations);
+    }
+
+    /**
+     * @return The procedures called anywhere in the program.
+     */
+    public Set<Identifier> calledProcedures() {
+        Set<Identifier> called = new HashSet<>();
+        callees.values().forEach(called::addAll);
+        return called;
+    }
+
+    /**
+     * @return true if any array access of the program has its index checked at runtime.
+     */
+    public boolean checksIndices() {
+        return checksIndices;
+    }
+
+    private static class CallVisitor extends DoNothingVisitor {
+        final Set<Identifier> callees = new HashSet<>();
+        boolean checksIndices = false;
+
+        public void visit(AssignStatement assignStatement) {
+            assignStatement.target.accept(this);
+            assignStatement.value.accept(this);
+        }
+
+        public void visit(CallStatement callStatement) {
+            callees.add(callStatement.procedureName);
+            callStatement.arguments.forEach(argument -> argument.accept(this));
+        }
+
+        public void visit(CompoundStatement compoundStatement) {
+            compoundStatement.statements.forEach(statement -> statement.accept(this));
+        }
+
+        public void visit(IfStatement ifStatement) {
+            ifStatement.condition.accept(this);
+            ifStatement.thenPart.accept(this);
+            ifStatement.elsePart.accept(this);
+        }
+
+        public void visit(WhileStatement whileStatement) {
+            whileStatement.condition.accept(this);
+            whileStatement.body.accept(this);
+        }
+
+        public void visit(ArrayAccess arrayAccess) {
+            checksIndices |= arrayAccess.indexChecked;
+            arrayAccess.array.accept(this);
+            arrayAccess.index.accept(this);
+        }
+
+        public void visit(VariableExpression variableExpression) {
+            variableExpression.variable.accept(this);
+        }
+
+        public void visit(BinaryExpression binaryExpression) {
+            binaryExpression.leftOperand.accept(this);
+            binaryExpression.rightOperand.accept(this);
+        }
+    }
+}
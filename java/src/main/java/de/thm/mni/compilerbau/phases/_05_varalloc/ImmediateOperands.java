@@ -0,0 +1,71 @@
+package de.thm.mni.compilerbau.phases._05_varalloc;
+
+import de.thm.mni.compilerbau.absyn.ArrayAccess;
+import de.thm.mni.compilerbau.absyn.BinaryExpression;
+import de.thm.mni.compilerbau.absyn.Expression;
+import de.thm.mni.compilerbau.absyn.IntLiteral;
+import de.thm.mni.compilerbau.types.ArrayType;
+
+/**
+ * Decides which operands are encoded in the instructions using them instead of being evaluated into a register
+ * (--immediates). The variable allocation and the code generator have to agree on this, since the register usage
+ * computed by the former has to match the code generated by the latter.
+ * <p>
+ * With immediate operands, the ershov number of a {@link de.thm.mni.compilerbau.absyn.Variable} is the number of
+ * registers needed for its address. It is 0 if the variable lies at a constant offset from the frame pointer.
+ */
+public class ImmediateOperands {
+    private ImmediateOperands() {
+    }
+
+    /**
+     * @return true if the expression is the literal 0, which is taken from register $0.
+     */
+    public static boolean isZero(Expression expression) {
+        return expression instanceof IntLiteral && ((IntLiteral) expression).value == 0;
+    }
+
+    /**
+     * Arithmetic instructions take a constant as their last operand. As addition and multiplication are commutative,
+     * a constant left operand may be used as well. Comparisons only work on registers, but the literal 0 is available
+     * in register $0.
+     *
+     * @return The operand of the expression that does not have to be evaluated into a register, or null if there is
+     * none.
+     */
+    public static IntLiteral immediateOperand(BinaryExpression binaryExpression) {
+        Expression left = binaryExpression.leftOperand;
+        Expression right = binaryExpression.rightOperand;
+        if (binaryExpression.operator.isComparison()) {
+            if (isZero(right)) return (IntLiteral) right;
+            if (isZero(left)) return (IntLiteral) left;
+            return null;
+        }
+        if (right instanceof IntLiteral) return (IntLiteral) right;
+        boolean commutative = binaryExpression.operator == BinaryExpression.Operator.ADD
+                || binaryExpression.operator == BinaryExpression.Operator.MUL;
+        if (commutative && left instanceof IntLiteral) return (IntLiteral) left;
+        return null;
+    }
+
+    /**
+     * @return The operand evaluated into a register if the other one is an {@link #immediateOperand}.
+     */
+    public static Expression registerOperand(BinaryExpression binaryExpression) {
+        return immediateOperand(binaryExpression) == binaryExpression.rightOperand
+                ? binaryExpression.leftOperand
+                : binaryExpression.rightOperand;
+    }
+
+    /**
+     * An array access with a constant index inside the array bounds needs neither a check at runtime nor a register,
+     * the scaled index is added to the offset of the array instead.
+     *
+     * @return The constant index of the array access, or null if the index is not constant or out of bounds.
+     */
+    public static Integer constantIndex(ArrayAccess arrayAccess) {
+        if (!(arrayAccess.index instanceof IntLiteral)) return null;
+        int index = ((IntLiteral) arrayAccess.index).value;
+        return index >= 0 && index < ((ArrayType) arrayAccess.array.dataType).arraySize ? index : null;
+    }
+}
@@ -2,6 +2,8 @@ package de.thm.mni.compilerbau.phases._05_varalloc;
 
 import de.thm.mni.compilerbau.utils.NotImplemented;
 
+import java.util.List;
+
 /**
  * This class describes the stack frame layout of a procedure.
  * It contains the sizes of the various subareas and provides methods to retrieve information about the stack frame required to generate code for the procedure.
@@ -11,6 +13,12 @@ public class StackLayout {
     public Integer argumentAreaSize = null;
     public Integer localVarAreaSize = null;
     public Integer outgoingAreaSize = null;
+    public Integer spillAreaSize = 0;
+    /**
+     * The numbers of the callee-saved registers ($16 - $23) written by the procedure, which it has to restore before
+     * returning. This is only used when local variables are kept in registers (--registerVariables).
+     */
+    public List<Integer> savedRegisters = List.of();
 
     /**
      * A leaf procedure is a procedure that does not call any other procedure in its body.
@@ -33,9 +41,9 @@ public class StackLayout {
     public int frameSize() {
         //TODO (assignment 5): Calculate the size of the stack frame
         if(isLeafProcedure()){
-            return localVarAreaSize+4;
+            return localVarAreaSize+spillAreaSize+savedRegisterAreaSize()+4;
         }else {
-            return  localVarAreaSize+outgoingAreaSize+4+4;
+            return  localVarAreaSize+spillAreaSize+savedRegisterAreaSize()+outgoingAreaSize+4+4;
         }
     }
 
@@ -57,6 +65,31 @@ public class StackLayout {
      */
     public int oldReturnAddressOffset() {
         //TODO (assignment 5): Calculate the offset of the old return address
-        return -4-4-localVarAreaSize;
+        return -4-4-localVarAreaSize-spillAreaSize-savedRegisterAreaSize();
+    }
+
+    /**
+     * The spill area lies directly below the local variables and holds intermediate results of expressions
+     * that do not fit into the free registers.
+     *
+     * @param slot The index of the spill slot.
+     * @return The offset (starting from the new frame pointer) of the given spill slot.
+     */
+    public int spillSlotOffset(int slot) {
+        return -localVarAreaSize-(slot+1)*VarAllocator.REGISTER_BYTESIZE;
+    }
+
+    /**
+     * The saved registers lie directly below the spill area.
+     *
+     * @param index The index of the register in {@link #savedRegisters}.
+     * @return The offset (starting from the new frame pointer) where the given saved register is stored.
+     */
+    public int savedRegisterOffset(int index) {
+        return -localVarAreaSize-spillAreaSize-(index+1)*VarAllocator.REGISTER_BYTESIZE;
+    }
+
+    private int savedRegisterAreaSize() {
+        return savedRegisters.size()*VarAllocator.REGISTER_BYTESIZE;
     }
 }
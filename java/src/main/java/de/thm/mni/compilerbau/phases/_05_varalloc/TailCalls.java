@@ -0,0 +1,121 @@
+package de.thm.mni.compilerbau.phases._05_varalloc;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.table.VariableEntry;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which calls reuse the stack frame of the calling procedure instead of allocating one of their own
+ * (--tailCalls). The variable allocation and the code generator have to agree on this, since a procedure whose calls
+ * all reuse its frame needs no outgoing area.
+ * <p>
+ * A call is in tail position if it is the last statement of the procedure body, or the last statement of a compound
+ * statement or a branch of an if statement in tail position. Such a call may reuse the frame if its arguments fit into
+ * the argument area of the calling procedure, where they are stored instead of the outgoing area, and no reference
+ * argument points into the frame of the calling procedure. A call of the procedure itself becomes a jump to the start
+ * of its body, any other call a jump to the callee after releasing the frame, so the callee returns to the caller of
+ * the calling procedure directly.
+ */
+public class TailCalls {
+    private TailCalls() {
+    }
+
+    /**
+     * @return The calls of the procedure that reuse its stack frame.
+     */
+    public static Set<CallStatement> find(ProcedureDeclaration procedure, SymbolTable globalTable) {
+        ProcedureEntry entry = (ProcedureEntry) globalTable.lookup(procedure.name);
+        Set<CallStatement> calls = new HashSet<>();
+        if (!procedure.body.isEmpty()) collect(procedure.body.get(procedure.body.size() - 1), calls);
+        calls.removeIf(call -> !reusesFrame(call, entry, globalTable));
+        return calls;
+    }
+
+    private static void collect(Statement statement, Set<CallStatement> calls) {
+        if (statement instanceof CallStatement) {
+            calls.add((CallStatement) statement);
+        } else if (statement instanceof CompoundStatement) {
+            List<Statement> statements = ((CompoundStatement) statement).statements;
+            if (!statements.isEmpty()) collect(statements.get(statements.size() - 1), calls);
+        } else if (statement instanceof IfStatement) {
+            collect(((IfStatement) statement).thenPart, calls);
+            collect(((IfStatement) statement).elsePart, calls);
+        }
+    }
+
+    private static boolean reusesFrame(CallStatement call, ProcedureEntry caller, SymbolTable globalTable) {
+        ProcedureEntry callee = (ProcedureEntry) globalTable.lookup(call.procedureName);
+        if (callee.stackLayout.argumentAreaSize > caller.stackLayout.argumentAreaSize) return false;
+        for (int i = 0; i < call.arguments.size(); i++) {
+            if (!callee.parameterTypes.get(i).isReference) continue;
+            Variable variable = ((VariableExpression) call.arguments.get(i)).variable;
+            while (variable instanceof ArrayAccess) variable = ((ArrayAccess) variable).array;
+            if (!((VariableEntry) caller.localTable.lookup(((NamedVariable) variable).name)).isReference) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the call passes the parameter of the calling procedure at the same position unchanged to the
+     * procedure itself, so its slot in the argument area already holds the argument.
+     */
+    public static boolean passesThrough(CallStatement call, ProcedureDeclaration procedure, int index) {
+        if (!call.procedureName.equals(procedure.name)) return false;
+        Expression argument = call.arguments.get(index);
+        return argument instanceof VariableExpression && ((VariableExpression) argument).variable instanceof NamedVariable
+                && ((NamedVariable) ((VariableExpression) argument).variable).name.equals(procedure.parameters.get(index).name);
+    }
+
+    /**
+     * Checks whether every argument can be stored into the argument area of the calling procedure right after it is
+     * evaluated. This is the case if no argument reads a parameter whose slot has been overwritten by an earlier one.
+     * Otherwise the arguments have to be evaluated into the outgoing area first. Parameters passed in registers are
+     * kept outside of the argument area and never overwritten.
+     */
+    public static boolean storesDirectly(CallStatement call, ProcedureDeclaration procedure, SymbolTable globalTable) {
+        ProcedureEntry caller = (ProcedureEntry) globalTable.lookup(procedure.name);
+        ProcedureEntry callee = (ProcedureEntry) globalTable.lookup(call.procedureName);
+        Set<String> overwritten = new HashSet<>();
+        for (int i = 0; i < call.arguments.size(); i++) {
+            ReadVariablesVisitor reads = new ReadVariablesVisitor();
+            call.arguments.get(i).accept(reads);
+            if (reads.names.stream().anyMatch(overwritten::contains)) return false;
+            if (passesThrough(call, procedure, i)) continue;
+            for (int j = 0; j < procedure.parameters.size(); j++) {
+                if (caller.parameterTypes.get(j).register != null) continue;
+                ParameterDeclaration parameter = procedure.parameters.get(j);
+                VariableEntry entry = (VariableEntry) caller.localTable.lookup(parameter.name);
+                if (entry.offset.equals(callee.parameterTypes.get(i).offset)) overwritten.add(parameter.name.toString());
+            }
+        }
+        return true;
+    }
+
+    private static class ReadVariablesVisitor extends DoNothingVisitor {
+        final Set<String> names = new HashSet<>();
+
+        public void visit(NamedVariable namedVariable) {
+            names.add(namedVariable.name.toString());
+        }
+
+        public void visit(ArrayAccess arrayAccess) {
+            arrayAccess.array.accept(this);
+            arrayAccess.index.accept(this);
+        }
+
+        public void visit(VariableExpression variableExpression) {
+            variableExpression.variable.accept(this);
+        }
+
+        public void visit(BinaryExpression binaryExpression) {
+            binaryExpression.leftOperand.accept(this);
+            binaryExpression.rightOperand.accept(this);
+        }
+    }
+}
@@ -2,18 +2,29 @@ package de.thm.mni.compilerbau.phases._05_varalloc;
 
 import de.thm.mni.compilerbau.absyn.*;
 import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.absyn.visitor.Visitable;
 import de.thm.mni.compilerbau.absyn.visitor.Visitor;
+import de.thm.mni.compilerbau.table.Identifier;
 import de.thm.mni.compilerbau.table.ParameterType;
 import de.thm.mni.compilerbau.table.ProcedureEntry;
 import de.thm.mni.compilerbau.table.SymbolTable;
 import de.thm.mni.compilerbau.table.VariableEntry;
+import de.thm.mni.compilerbau.types.PrimitiveType;
 import de.thm.mni.compilerbau.utils.*;
 
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * This class is used to calculate the memory needed for variables and stack frames of the currently compiled SPL program.
@@ -22,19 +33,71 @@ import java.util.stream.IntStream;
  */
 public class VarAllocator {
     public static final int REFERENCE_BYTESIZE = 4;
-    private final boolean showVarAlloc;
-    private final boolean ershovOptimization;
+    public static final int REGISTER_BYTESIZE = 4;
+    /**
+     * The number of registers available for the evaluation of expressions ($8 - $23).
+     */
+    public static final int FREE_REGISTER_COUNT = 16;
+    /**
+     * The number of registers preserved across calls ($16 - $23), which may hold local variables.
+     */
+    public static final int CALLEE_SAVED_REGISTER_COUNT = 8;
+    private static final int FIRST_CALLEE_SAVED_REGISTER = 16;
+    private static final int LAST_FREE_REGISTER = 23;
+    /**
+     * The number of arguments of a user-defined procedure passed in the registers $4 - $7 (--registerArguments).
+     */
+    public static final int ARGUMENT_REGISTER_COUNT = 4;
+    private static final int FIRST_ARGUMENT_REGISTER = 4;
+    private final Options options;
 
     /**
-     * @param showVarAlloc       Whether to show the results of the variable allocation after it is finished
-     * @param ershovOptimization Whether the ershov register optimization should be used (--ershov)
+     * The options of the variable allocation. All of them are disabled by default.
      */
-    public VarAllocator(boolean showVarAlloc, boolean ershovOptimization) {
-        this.showVarAlloc = showVarAlloc;
-        this.ershovOptimization = ershovOptimization;
+    public static class Options {
+        /**
+         * Whether to show the results of the variable allocation after it is finished
+         */
+        public boolean showVarAlloc = false;
+        /**
+         * Whether the ershov register optimization should be used (--ershov)
+         */
+        public boolean ershovOptimization = false;
+        /**
+         * Whether constants and frame offsets are encoded in the instructions using them (--immediates)
+         */
+        public boolean immediateOperands = false;
+        /**
+         * Whether local variables and value parameters may be kept in registers (--registerVariables)
+         */
+        public boolean registerVariables = false;
+        /**
+         * Whether calls in tail position reuse the stack frame of the caller (--tailCalls)
+         */
+        public boolean tailCalls = false;
+        /**
+         * Whether the first arguments of user-defined procedures are passed in registers (--registerArguments)
+         */
+        public boolean registerArguments = false;
+        /**
+         * Whether local variables not needed at the same time share their slots (--slotColoring)
+         */
+        public boolean slotColoring = false;
     }
 
+    /**
+     * @param options The options of the variable allocation
+     */
+    public VarAllocator(Options options) {
+        this.options = options;
+    }
 
+    /**
+     * Computes the offsets of the parameters and local variables. With --registerArguments, the first parameters are
+     * passed in the registers $4 - $7 and take no space in the argument area. The procedure moves them into a slot at
+     * the top of its local variable area, or into the register holding the parameter for the whole procedure.
+     * With --slotColoring, the local variables below share their slots, see {@link #shareSlots}.
+     */
     class VariableAllocVisitor extends DoNothingVisitor {
         SymbolTable table;
 
@@ -51,6 +114,14 @@ public class VarAllocator {
                 ParameterDeclaration parameterDeclaration = procedureDeclaration.parameters.get(i);
                 ParameterType parameterType = procEntry.parameterTypes.get(i);
                 VariableEntry variableEntry = (VariableEntry) procEntry.localTable.lookup(parameterDeclaration.name);
+                if (options.registerArguments && i < ARGUMENT_REGISTER_COUNT) {
+                    parameterType.register = FIRST_ARGUMENT_REGISTER + i;
+                    if (variableEntry.register == null) {
+                        localVariableAreaSize -= REFERENCE_BYTESIZE;
+                        variableEntry.offset = localVariableAreaSize;
+                    }
+                    continue;
+                }
                 parameterType.offset = argumentAreaSize;
                 variableEntry.offset = argumentAreaSize;
                 if (parameterDeclaration.isReference) {
@@ -60,8 +131,13 @@ public class VarAllocator {
                 }
             }
             procEntry.stackLayout.argumentAreaSize = argumentAreaSize;
+            if (options.slotColoring) {
+                procEntry.stackLayout.localVarAreaSize = shareSlots(procedureDeclaration, procEntry.localTable, -localVariableAreaSize);
+                return;
+            }
             for (int i = 0; i < procedureDeclaration.variables.size(); i++) {
                 VariableEntry variableEntry = (VariableEntry) procEntry.localTable.lookup(procedureDeclaration.variables.get(i).name);
+                if (variableEntry.register != null) continue;
                 localVariableAreaSize -= variableEntry.type.byteSize;
                 variableEntry.offset = localVariableAreaSize;
             }
@@ -75,9 +151,132 @@ public class VarAllocator {
 
     }
 
+    /**
+     * Lets local variables whose values are never needed at the same time share a slot (--slotColoring). The value of
+     * a variable is needed from its first to its last use in the body, and inside a while loop during the whole loop,
+     * since it may be used again in the next iteration. Before its first use the value of a variable is undefined, so
+     * another variable may have left anything in its slot.
+     * <p>
+     * The variables are taken in the order of their first use and put into the first slot whose variables are no longer
+     * needed, preferring a slot that is already large enough. A slot is as large as its largest variable.
+     *
+     * @param areaSize The size of the local variable area taken by parameters passed in registers.
+     * @return The size of the local variable area.
+     */
+    private static int shareSlots(ProcedureDeclaration procedureDeclaration, SymbolTable localTable, int areaSize) {
+        LiveRangeVisitor liveRanges = new LiveRangeVisitor(localTable);
+        procedureDeclaration.body.forEach(statement -> statement.accept(liveRanges));
+
+        List<VariableEntry> variables = procedureDeclaration.variables.stream()
+                .map(variable -> (VariableEntry) localTable.lookup(variable.name))
+                .filter(variable -> variable.register == null)
+                .sorted(Comparator.comparing(variable -> liveRanges.first.getOrDefault(variable, 0)))
+                .collect(Collectors.toList());
+        List<Slot> slots = new ArrayList<>();
+        for (VariableEntry variable : variables) {
+            int first = liveRanges.first.getOrDefault(variable, 0);
+            int size = variable.type.byteSize;
+            Slot slot = slots.stream()
+                    .filter(free -> free.end < first)
+                    .min(Comparator.comparing((Slot free) -> free.size < size).thenComparing(free -> Math.abs(free.size - size)))
+                    .orElse(null);
+            if (slot == null) {
+                slot = new Slot();
+                slots.add(slot);
+            }
+            slot.variables.add(variable);
+            slot.size = Math.max(slot.size, size);
+            slot.end = Math.max(slot.end, liveRanges.last.getOrDefault(variable, 0));
+        }
+
+        for (Slot slot : slots) {
+            areaSize += slot.size;
+            for (VariableEntry variable : slot.variables) variable.offset = -areaSize;
+        }
+        return areaSize;
+    }
+
+    private static class Slot {
+        final List<VariableEntry> variables = new ArrayList<>();
+        int size = 0;
+        int end = -1;
+    }
+
+    /**
+     * Numbers the uses of variables in the order of the body and records the first and last use of every variable.
+     * A variable used inside a while loop is needed from the start to the end of the loop.
+     */
+    private static class LiveRangeVisitor extends DoNothingVisitor {
+        final SymbolTable localTable;
+        final Map<VariableEntry, Integer> first = new HashMap<>();
+        final Map<VariableEntry, Integer> last = new HashMap<>();
+        int position = 0;
+
+        LiveRangeVisitor(SymbolTable localTable) {
+            this.localTable = localTable;
+        }
+
+        public void visit(NamedVariable namedVariable) {
+            VariableEntry variable = (VariableEntry) localTable.lookup(namedVariable.name);
+            position++;
+            first.putIfAbsent(variable, position);
+            last.put(variable, position);
+        }
+
+        public void visit(ArrayAccess arrayAccess) {
+            arrayAccess.array.accept(this);
+            arrayAccess.index.accept(this);
+        }
+
+        public void visit(VariableExpression variableExpression) {
+            variableExpression.variable.accept(this);
+        }
+
+        public void visit(BinaryExpression binaryExpression) {
+            binaryExpression.leftOperand.accept(this);
+            binaryExpression.rightOperand.accept(this);
+        }
+
+        public void visit(AssignStatement assignStatement) {
+            assignStatement.target.accept(this);
+            assignStatement.value.accept(this);
+        }
+
+        public void visit(CallStatement callStatement) {
+            callStatement.arguments.forEach(argument -> argument.accept(this));
+        }
+
+        public void visit(CompoundStatement compoundStatement) {
+            compoundStatement.statements.forEach(statement -> statement.accept(this));
+        }
+
+        public void visit(IfStatement ifStatement) {
+            ifStatement.condition.accept(this);
+            ifStatement.thenPart.accept(this);
+            ifStatement.elsePart.accept(this);
+        }
+
+        public void visit(WhileStatement whileStatement) {
+            int start = ++position;
+            whileStatement.condition.accept(this);
+            whileStatement.body.accept(this);
+            int end = ++position;
+            for (Map.Entry<VariableEntry, Integer> use : last.entrySet()) {
+                if (use.getValue() < start) continue;
+                use.setValue(end);
+                first.merge(use.getKey(), start, Math::min);
+            }
+        }
+    }
+
+    /**
+     * Computes the outgoing area of a procedure. Calls reusing the stack frame of the procedure store their arguments
+     * into its argument area if possible and need no outgoing area then, see {@link TailCalls}.
+     */
     class VariableAllocVisitor2 extends DoNothingVisitor {
         SymbolTable symbolTable;
         int outgoingAreaSize = 0;
+        Set<CallStatement> directTailCalls = Set.of();
 
         public VariableAllocVisitor2(SymbolTable symbolTable) {
             this.symbolTable = symbolTable;
@@ -91,11 +290,16 @@ public class VarAllocator {
         public void visit(ProcedureDeclaration procedureDeclaration) {
             ProcedureEntry procedureEntry = (ProcedureEntry) symbolTable.lookup(procedureDeclaration.name);
             outgoingAreaSize = -1;
+            if (options.tailCalls) {
+                directTailCalls = TailCalls.find(procedureDeclaration, symbolTable);
+                directTailCalls.removeIf(call -> !TailCalls.storesDirectly(call, procedureDeclaration, symbolTable));
+            }
             procedureDeclaration.body.forEach(pd -> pd.accept(this));
             procedureEntry.stackLayout.outgoingAreaSize = outgoingAreaSize;
         }
 
         public void visit(CallStatement callStatement) {
+            if (directTailCalls.contains(callStatement)) return;
             ProcedureEntry procedureEntry = (ProcedureEntry) symbolTable.lookup(callStatement.procedureName);
             if (procedureEntry.stackLayout.argumentAreaSize > outgoingAreaSize) {
                 outgoingAreaSize = procedureEntry.stackLayout.argumentAreaSize;
@@ -116,17 +320,384 @@ public class VarAllocator {
 
     }
 
+    /**
+     * Computes the ershov number of every expression and variable, i.e. the number of registers needed to evaluate
+     * it without spilling.
+     * When the ershov optimization is enabled, the operand needing more registers is evaluated first, otherwise the
+     * operands are always evaluated from left to right.
+     * When immediate operands are enabled, operands encoded in instructions need no register, see {@link ImmediateOperands}.
+     */
+    class ErshovVisitor extends DoNothingVisitor {
+        SymbolTable table;
+        SymbolTable localTable;
+
+        public ErshovVisitor(SymbolTable table) {
+            this.table = table;
+        }
+
+        public void visit(Program program) {
+            program.declarations.forEach(pd -> pd.accept(this));
+        }
+
+        public void visit(ProcedureDeclaration procedureDeclaration) {
+            localTable = ((ProcedureEntry) table.lookup(procedureDeclaration.name)).localTable;
+            procedureDeclaration.body.forEach(st -> st.accept(this));
+        }
+
+        public void visit(CompoundStatement compoundStatement) {
+            compoundStatement.statements.forEach(cs -> cs.accept(this));
+        }
+
+        public void visit(IfStatement ifStatement) {
+            ifStatement.condition.accept(this);
+            ifStatement.thenPart.accept(this);
+            ifStatement.elsePart.accept(this);
+        }
+
+        public void visit(WhileStatement whileStatement) {
+            whileStatement.condition.accept(this);
+            whileStatement.body.accept(this);
+        }
+
+        public void visit(AssignStatement assignStatement) {
+            assignStatement.target.accept(this);
+            assignStatement.value.accept(this);
+        }
+
+        public void visit(CallStatement callStatement) {
+            callStatement.arguments.forEach(arg -> arg.accept(this));
+        }
+
+        public void visit(IntLiteral intLiteral) {
+            intLiteral.ershovNumber = 1;
+        }
+
+        public void visit(NamedVariable namedVariable) {
+            VariableEntry variableEntry = (VariableEntry) localTable.lookup(namedVariable.name);
+            if (variableEntry.register != null || options.immediateOperands && !variableEntry.isReference) {
+                namedVariable.ershovNumber = 0;
+            } else {
+                namedVariable.ershovNumber = 1;
+            }
+        }
+
+        public void visit(VariableExpression variableExpression) {
+            variableExpression.variable.accept(this);
+            variableExpression.ershovNumber = Math.max(1, variableExpression.variable.ershovNumber);
+        }
+
+        public void visit(BinaryExpression binaryExpression) {
+            binaryExpression.leftOperand.accept(this);
+            binaryExpression.rightOperand.accept(this);
+            if (options.immediateOperands && ImmediateOperands.immediateOperand(binaryExpression) != null) {
+                binaryExpression.ershovNumber = ImmediateOperands.registerOperand(binaryExpression).ershovNumber;
+            } else {
+                binaryExpression.ershovNumber = ershovNumber(binaryExpression.leftOperand.ershovNumber, binaryExpression.rightOperand.ershovNumber);
+            }
+        }
+
+        public void visit(ArrayAccess arrayAccess) {
+            arrayAccess.array.accept(this);
+            arrayAccess.index.accept(this);
+            if (options.immediateOperands && ImmediateOperands.constantIndex(arrayAccess) != null) {
+                arrayAccess.ershovNumber = arrayAccess.array.ershovNumber;
+            } else if (options.immediateOperands && arrayAccess.array.ershovNumber == 0) {
+                arrayAccess.ershovNumber = checkedIndexErshovNumber(arrayAccess);
+            } else {
+                arrayAccess.ershovNumber = ershovNumber(arrayAccess.array.ershovNumber, checkedIndexErshovNumber(arrayAccess));
+            }
+        }
+
+        private int ershovNumber(int first, int second) {
+            if (!options.ershovOptimization) return Math.max(first, second + 1);
+            return first == second ? first + 1 : Math.max(first, second);
+        }
+    }
+
+    /**
+     * The index of an array access is checked against the array size right after its evaluation,
+     * which needs a second register. The range analysis may have found the check to be unnecessary.
+     *
+     * @return The number of registers needed to evaluate and check the index of an array access.
+     */
+    public static int checkedIndexErshovNumber(ArrayAccess arrayAccess) {
+        if (!arrayAccess.indexChecked) return arrayAccess.index.ershovNumber;
+        return Math.max(2, arrayAccess.index.ershovNumber);
+    }
+
+    /**
+     * Selects the value parameters and local variables kept in registers for the whole procedure instead of in the
+     * stack frame (--registerVariables). Only variables of type int that are never passed as reference argument are
+     * candidates. Their uses are weighted by an estimate of how often they are executed: a use inside of a loop counts
+     * ten times, a use in one branch of an if statement half as much as a use outside of it. A variable is only kept
+     * in a register if this saves more loads and stores than saving and restoring the register costs, the candidates
+     * used most often get the registers $23, $22, ... downwards. As every register holding a variable is no longer
+     * available for the evaluation of expressions, only as many registers are taken as the expressions of the
+     * procedure leave unused, so keeping variables in registers never causes additional spills.
+     * <p>
+     * The registers $16 - $23 are preserved across calls, so the procedure saves all of them it writes in its stack
+     * frame, including the ones used for the evaluation of expressions. The ershov numbers have to be computed before.
+     */
+    class RegisterVariableVisitor extends DoNothingVisitor {
+        SymbolTable table;
+        SymbolTable localTable;
+        Map<VariableEntry, Double> weights;
+        double frequency = 1;
+        int neededRegisters = 0;
+
+        public RegisterVariableVisitor(SymbolTable table) {
+            this.table = table;
+        }
+
+        public void visit(ProcedureDeclaration procedureDeclaration) {
+            ProcedureEntry procEntry = (ProcedureEntry) table.lookup(procedureDeclaration.name);
+            localTable = procEntry.localTable;
+            weights = new LinkedHashMap<>();
+            // A parameter kept in a register has to be saved, loaded and restored, a local variable only saved and restored.
+            // A parameter passed in a register is moved instead of loaded, but would have to be stored otherwise.
+            for (int i = 0; i < procedureDeclaration.parameters.size(); i++) {
+                addCandidate(procedureDeclaration.parameters.get(i).name, options.registerArguments && i < ARGUMENT_REGISTER_COUNT ? -2 : -3);
+            }
+            procedureDeclaration.variables.forEach(variable -> addCandidate(variable.name, -2));
+            procedureDeclaration.body.forEach(st -> st.accept(this));
+
+            List<VariableEntry> candidates = weights.entrySet().stream()
+                    .filter(candidate -> candidate.getValue() > 0)
+                    .sorted(Map.Entry.<VariableEntry, Double>comparingByValue().reversed())
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+            int count = Math.max(0, Math.min(candidates.size(),
+                    Math.min(CALLEE_SAVED_REGISTER_COUNT, FREE_REGISTER_COUNT - neededRegisters)));
+            int lastTemporary = LAST_FREE_REGISTER - count;
+
+            List<Integer> savedRegisters = new ArrayList<>();
+            int lastUsedTemporary = Math.min(lastTemporary, LAST_FREE_REGISTER - FREE_REGISTER_COUNT + neededRegisters);
+            for (int number = FIRST_CALLEE_SAVED_REGISTER; number <= lastUsedTemporary; number++) {
+                savedRegisters.add(number);
+            }
+            for (int i = 0; i < count; i++) {
+                candidates.get(i).register = LAST_FREE_REGISTER - i;
+                savedRegisters.add(LAST_FREE_REGISTER - i);
+            }
+            procEntry.stackLayout.savedRegisters = savedRegisters;
+        }
+
+        private void addCandidate(Identifier name, double cost) {
+            VariableEntry variableEntry = (VariableEntry) localTable.lookup(name);
+            if (variableEntry.type == PrimitiveType.intType && !variableEntry.isReference) weights.put(variableEntry, cost);
+        }
+
+        /**
+         * Notes the number of registers needed by a statement evaluating the given expression or variable, which
+         * is at most one more than needed by the expression alone.
+         */
+        private void needs(int ershovNumber) {
+            neededRegisters = Math.max(neededRegisters, ershovNumber + 1);
+        }
+
+        public void visit(CompoundStatement compoundStatement) {
+            compoundStatement.statements.forEach(cs -> cs.accept(this));
+        }
+
+        public void visit(IfStatement ifStatement) {
+            needs(ifStatement.condition.ershovNumber);
+            ifStatement.condition.accept(this);
+            double outerFrequency = frequency;
+            frequency /= 2;
+            ifStatement.thenPart.accept(this);
+            ifStatement.elsePart.accept(this);
+            frequency = outerFrequency;
+        }
+
+        public void visit(WhileStatement whileStatement) {
+            double outerFrequency = frequency;
+            frequency = Math.min(frequency * 10, 1e9);
+            needs(whileStatement.condition.ershovNumber);
+            whileStatement.condition.accept(this);
+            whileStatement.body.accept(this);
+            frequency = outerFrequency;
+        }
+
+        public void visit(AssignStatement assignStatement) {
+            needs(assignStatement.target.ershovNumber);
+            needs(assignStatement.value.ershovNumber);
+            assignStatement.target.accept(this);
+            assignStatement.value.accept(this);
+        }
+
+        public void visit(CallStatement callStatement) {
+            ProcedureEntry procedureEntry = (ProcedureEntry) localTable.lookup(callStatement.procedureName);
+            for (int i = 0; i < callStatement.arguments.size(); i++) {
+                Expression argument = callStatement.arguments.get(i);
+                needs(argument.ershovNumber);
+                argument.accept(this);
+                if (procedureEntry.parameterTypes.get(i).isReference) {
+                    Variable variable = ((VariableExpression) argument).variable;
+                    if (variable instanceof NamedVariable) {
+                        weights.remove((VariableEntry) localTable.lookup(((NamedVariable) variable).name));
+                    }
+                }
+            }
+        }
+
+        public void visit(VariableExpression variableExpression) {
+            variableExpression.variable.accept(this);
+        }
+
+        public void visit(BinaryExpression binaryExpression) {
+            binaryExpression.leftOperand.accept(this);
+            binaryExpression.rightOperand.accept(this);
+        }
+
+        public void visit(NamedVariable namedVariable) {
+            weights.computeIfPresent((VariableEntry) localTable.lookup(namedVariable.name), (entry, weight) -> weight + frequency);
+        }
+
+        public void visit(ArrayAccess arrayAccess) {
+            arrayAccess.array.accept(this);
+            arrayAccess.index.accept(this);
+        }
+    }
+
+    /**
+     * @return The number of variables of the procedure kept in registers, which are not available for the
+     * evaluation of expressions.
+     */
+    public static int registerVariableCount(ProcedureDeclaration procedureDeclaration, SymbolTable localTable) {
+        int count = 0;
+        for (ParameterDeclaration parameter : procedureDeclaration.parameters) {
+            if (((VariableEntry) localTable.lookup(parameter.name)).register != null) count++;
+        }
+        for (VariableDeclaration variable : procedureDeclaration.variables) {
+            if (((VariableEntry) localTable.lookup(variable.name)).register != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Determines how many values have to be spilled to the stack frame at the same time, because an expression
+     * needs more than the free registers. This mirrors the register usage of the code generator.
+     */
+    class SpillAreaVisitor extends DoNothingVisitor {
+        SymbolTable table;
+        int freeRegisters = FREE_REGISTER_COUNT;
+        int usedRegisters = 0;
+        int spilledValues = 0;
+        int spillSlots = 0;
+
+        public SpillAreaVisitor(SymbolTable table) {
+            this.table = table;
+        }
+
+        public void visit(Program program) {
+            program.declarations.forEach(pd -> pd.accept(this));
+        }
+
+        public void visit(ProcedureDeclaration procedureDeclaration) {
+            ProcedureEntry procEntry = (ProcedureEntry) table.lookup(procedureDeclaration.name);
+            spillSlots = 0;
+            freeRegisters = FREE_REGISTER_COUNT - registerVariableCount(procedureDeclaration, procEntry.localTable);
+            procedureDeclaration.body.forEach(st -> st.accept(this));
+            procEntry.stackLayout.spillAreaSize = spillSlots * REGISTER_BYTESIZE;
+        }
+
+        public void visit(CompoundStatement compoundStatement) {
+            compoundStatement.statements.forEach(cs -> cs.accept(this));
+        }
+
+        public void visit(IfStatement ifStatement) {
+            ifStatement.condition.accept(this);
+            ifStatement.thenPart.accept(this);
+            ifStatement.elsePart.accept(this);
+        }
+
+        public void visit(WhileStatement whileStatement) {
+            whileStatement.condition.accept(this);
+            whileStatement.body.accept(this);
+        }
+
+        public void visit(AssignStatement assignStatement) {
+            if (options.immediateOperands && ImmediateOperands.isZero(assignStatement.value)) {
+                assignStatement.target.accept(this);
+            } else if (assignStatement.target.ershovNumber == 0) {
+                assignStatement.value.accept(this);
+            } else {
+                evaluatePair(assignStatement.target, assignStatement.target.ershovNumber, assignStatement.value, assignStatement.value.ershovNumber);
+            }
+        }
+
+        public void visit(CallStatement callStatement) {
+            callStatement.arguments.forEach(arg -> arg.accept(this));
+        }
+
+        public void visit(VariableExpression variableExpression) {
+            variableExpression.variable.accept(this);
+        }
+
+        public void visit(BinaryExpression binaryExpression) {
+            if (options.immediateOperands && ImmediateOperands.immediateOperand(binaryExpression) != null) {
+                ImmediateOperands.registerOperand(binaryExpression).accept(this);
+            } else {
+                evaluatePair(binaryExpression.leftOperand, binaryExpression.leftOperand.ershovNumber, binaryExpression.rightOperand, binaryExpression.rightOperand.ershovNumber);
+            }
+        }
+
+        public void visit(ArrayAccess arrayAccess) {
+            if (options.immediateOperands && ImmediateOperands.constantIndex(arrayAccess) != null) {
+                arrayAccess.array.accept(this);
+            } else if (options.immediateOperands && arrayAccess.array.ershovNumber == 0) {
+                arrayAccess.index.accept(this);
+            } else {
+                evaluatePair(arrayAccess.array, arrayAccess.array.ershovNumber, arrayAccess.index, checkedIndexErshovNumber(arrayAccess));
+            }
+        }
+
+        private void evaluatePair(Visitable first, int firstNeed, Visitable second, int secondNeed) {
+            if (options.ershovOptimization && secondNeed > firstNeed) {
+                Visitable swapped = first;
+                first = second;
+                second = swapped;
+                secondNeed = firstNeed;
+            }
+            first.accept(this);
+            if (usedRegisters + 1 + secondNeed <= freeRegisters) {
+                usedRegisters++;
+                second.accept(this);
+                usedRegisters--;
+            } else {
+                spilledValues++;
+                spillSlots = Math.max(spillSlots, spilledValues);
+                second.accept(this);
+                spilledValues--;
+            }
+        }
+    }
+
 
+    /**
+     * Allocates the stack frames of all procedures in parallel.
+     * The outgoing area of a procedure depends on the argument areas of its callees, so it is only computed after
+     * the argument areas of all procedures are known.
+     */
     public void allocVars(Program program, SymbolTable table) {
         //TODO (assignment 5): Allocate stack slots for all parameters and local variables
-        VariableAllocVisitor variableAllocVisitor = new VariableAllocVisitor(table);
-        VariableAllocVisitor2 variableAllocVisitor2 = new VariableAllocVisitor2(table);
-        program.accept(variableAllocVisitor);
-        program.accept(variableAllocVisitor2);
+        List<ProcedureDeclaration> procedures = program.procedures();
+        Parallel.forEach(procedures, procedure -> {
+            if (options.registerVariables) {
+                procedure.accept(new ErshovVisitor(table));
+                procedure.accept(new RegisterVariableVisitor(table));
+            }
+            procedure.accept(new VariableAllocVisitor(table));
+        });
+        Parallel.forEach(procedures, procedure -> {
+            procedure.accept(new VariableAllocVisitor2(table));
+            procedure.accept(new ErshovVisitor(table));
+            procedure.accept(new SpillAreaVisitor(table));
+        });
 
 
         //TODO: Uncomment this when the above exception is removed!
-        if (showVarAlloc) formatVars(program, table);
+        if (options.showVarAlloc) formatVars(program, table);
     }
 
     /**
@@ -146,6 +717,7 @@ public class VarAllocator {
             {
                 final var zipped = IntStream.range(0, procDec.parameters.size()).boxed()
                         .map(i -> new Pair<>(procDec.parameters.get(i), new Pair<>(((VariableEntry) entry.localTable.lookup(procDec.parameters.get(i).name)), entry.parameterTypes.get(i))))
+                        .filter(p -> p.second.second.register == null)
                         .sorted(Comparator.comparing(p -> Optional.ofNullable(p.second.first.offset).map(o -> -o).orElse(Integer.MIN_VALUE)));
 
                 zipped.forEach(v -> {
@@ -156,23 +728,53 @@ public class VarAllocator {
                                             StringOps.toString(v.second.first.offset) :
                                             String.format("INCONSISTENT(%s/%s)",
                                                     StringOps.toString(v.second.first.offset),
-                                                    StringOps.toString(v.second.second.offset))),
+                                                    StringOps.toString(v.second.second.offset))) +
+                                    (v.second.first.register != null ? " (in $" + v.second.first.register + ")" : ""),
                             AsciiGraphicalTableBuilder.Alignment.LEFT);
                 });
             }
 
             ascii.sep("BEGIN", "<- FP");
-            if (!procDec.variables.isEmpty()) {
-                procDec.variables.stream()
-                        .map(v -> new AbstractMap.SimpleImmutableEntry<>(v, ((VariableEntry) entry.localTable.lookup(v.name))))
+            if (entry.stackLayout.localVarAreaSize > 0) {
+                // Parameters passed in registers are stored in the local variable area
+                Stream.concat(
+                        IntStream.range(0, procDec.parameters.size()).boxed()
+                                .filter(i -> entry.parameterTypes.get(i).register != null)
+                                .map(i -> new AbstractMap.SimpleImmutableEntry<>("par " + procDec.parameters.get(i).name,
+                                        ((VariableEntry) entry.localTable.lookup(procDec.parameters.get(i).name)))),
+                        procDec.variables.stream()
+                                .map(v -> new AbstractMap.SimpleImmutableEntry<>("var " + v.name, ((VariableEntry) entry.localTable.lookup(v.name)))))
+                        .filter(v -> v.getValue().register == null)
                         .sorted(Comparator.comparing(e -> Try.execute(() -> -e.getValue().offset).getOrElse(0)))
-                        .forEach(v -> ascii.line("var " + v.getKey().name.toString(),
+                        .forEach(v -> ascii.line(v.getKey(),
                                 "<- FP - " + Optional.ofNullable(v.getValue().offset).map(o -> -o).map(StringOps::toString).orElse("NULL"),
                                 AsciiGraphicalTableBuilder.Alignment.LEFT));
 
                 ascii.sep("");
             }
 
+            if (entry.stackLayout.spillAreaSize > 0) {
+                var spillSlots = entry.stackLayout.spillAreaSize / REGISTER_BYTESIZE;
+
+                for (int i = 0; i < spillSlots; ++i) {
+                    ascii.line(String.format("spill %d", i + 1),
+                            "<- FP - " + -entry.stackLayout.spillSlotOffset(i),
+                            AsciiGraphicalTableBuilder.Alignment.LEFT);
+                }
+
+                ascii.sep("");
+            }
+
+            if (!entry.stackLayout.savedRegisters.isEmpty()) {
+                for (int i = 0; i < entry.stackLayout.savedRegisters.size(); ++i) {
+                    ascii.line(String.format("saved $%d", entry.stackLayout.savedRegisters.get(i)),
+                            "<- FP - " + -entry.stackLayout.savedRegisterOffset(i),
+                            AsciiGraphicalTableBuilder.Alignment.LEFT);
+                }
+
+                ascii.sep("");
+            }
+
             ascii.line("Old FP",
                     "<- SP + " + Try.execute(entry.stackLayout::oldFramePointerOffset).map(Objects::toString).getOrElse("UNKNOWN"),
                     AsciiGraphicalTableBuilder.Alignment.LEFT);
@@ -208,6 +810,25 @@ public class VarAllocator {
             System.out.printf("  - size of argument area = %s\n", StringOps.toString(entry.stackLayout.argumentAreaSize));
             System.out.printf("  - size of localvar area = %s\n", StringOps.toString(entry.stackLayout.localVarAreaSize));
             System.out.printf("  - size of outgoing area = %s\n", StringOps.toString(entry.stackLayout.outgoingAreaSize));
+            if (entry.stackLayout.spillAreaSize > 0) {
+                System.out.printf("  - size of spill area = %s\n", StringOps.toString(entry.stackLayout.spillAreaSize));
+            }
+            String registerVariables = procDec.variables.stream()
+                    .filter(v -> ((VariableEntry) entry.localTable.lookup(v.name)).register != null)
+                    .map(v -> String.format("%s in $%d", v.name, ((VariableEntry) entry.localTable.lookup(v.name)).register))
+                    .collect(Collectors.joining(", "));
+            if (!registerVariables.isEmpty()) {
+                System.out.printf("  - register variables = %s\n", registerVariables);
+            }
+            String registerArguments = IntStream.range(0, procDec.parameters.size()).boxed()
+                    .filter(i -> entry.parameterTypes.get(i).register != null)
+                    .map(i -> String.format("%s in $%d", procDec.parameters.get(i).name, entry.parameterTypes.get(i).register)
+                            + Optional.ofNullable(((VariableEntry) entry.localTable.lookup(procDec.parameters.get(i).name)).register)
+                            .map(register -> " (kept in $" + register + ")").orElse(""))
+                    .collect(Collectors.joining(", "));
+            if (!registerArguments.isEmpty()) {
+                System.out.printf("  - register arguments = %s\n", registerArguments);
+            }
             System.out.printf("  - frame size = %s\n", Try.execute(entry.stackLayout::frameSize).map(Objects::toString).getOrElse("UNKNOWN"));
             System.out.println();
             System.out.println("  Stack layout:");
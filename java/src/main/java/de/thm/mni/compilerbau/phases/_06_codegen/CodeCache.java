@@ -0,0 +1,294 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.table.*;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An on-disk cache for the code of single procedures (--cache=DIR).
+ * <p>
+ * The code of a procedure is stored under the SHA-256 hash of everything it depends on: the procedure itself, the
+ * types and offsets of its parameters and local variables, its stack layout, the parameter types and argument areas
+ * of the procedures it calls, the code generation options and the build of the compiler. If any of those changes,
+ * the hash changes as well and the code is generated again.
+ * <p>
+ * The least recently used entries are removed as soon as the cache grows beyond its size limit. Several compilations
+ * may share a cache directory: entries are written atomically and missing entries are treated like cache misses.
+ * Errors while accessing the cache never fail a compilation, the code is generated instead.
+ */
+public class CodeCache {
+    public static final int DEFAULT_SIZE_MEGABYTES = 64;
+
+    private static final String FORMAT_VERSION = "1";
+    private static final String ENTRY_SUFFIX = ".s";
+    private static String compilerFingerprint = null;
+
+    private final Path directory;
+    private final long sizeLimit;
+
+    /**
+     * @param directory The directory the cache entries are stored in. It is created when needed.
+     * @param sizeLimit The maximal size of all entries in bytes.
+     */
+    public CodeCache(Path directory, long sizeLimit) {
+        this.directory = directory;
+        this.sizeLimit = sizeLimit;
+    }
+
+    /**
+     * Computes the key the code of a procedure is stored under.
+     *
+     * @param procedure   The procedure whose code is looked up.
+     * @param globalTable The global symbol table after the variable allocation.
+     * @param options     All options that influence the code generation.
+     * @return The hexadecimal SHA-256 hash of everything the code of the procedure depends on.
+     */
+    String key(ProcedureDeclaration procedure, SymbolTable globalTable, String options) {
+        ProcedureEntry entry = (ProcedureEntry) globalTable.lookup(procedure.name);
+        StringBuilder content = new StringBuilder();
+        content.append("version ").append(FORMAT_VERSION).append(' ').append(compilerFingerprint()).append('\n');
+        content.append("options ").append(options).append('\n');
+        content.append("procedure ").append(procedure.name).append('\n');
+
+        List<Identifier> locals = new ArrayList<>();
+        procedure.parameters.forEach(parameter -> locals.add(parameter.name));
+        procedure.variables.forEach(variable -> locals.add(variable.name));
+        for (Identifier name : locals) {
+            VariableEntry variable = (VariableEntry) entry.localTable.lookup(name);
+            content.append("local ").append(name).append(": ").append(variable).append(" @ ").append(variable.offset)
+                    .append(" in ").append(variable.register).append('\n');
+        }
+
+        content.append(String.format("frame %d %d %d %d %s\n", entry.stackLayout.argumentAreaSize,
+                entry.stackLayout.localVarAreaSize, entry.stackLayout.outgoingAreaSize, entry.stackLayout.spillAreaSize,
+                entry.stackLayout.savedRegisters));
+
+        BodyFingerprint body = new BodyFingerprint(content);
+        procedure.body.forEach(statement -> statement.accept(body));
+        content.append('\n');
+
+        for (Identifier name : body.callees) {
+            ProcedureEntry callee = (ProcedureEntry) globalTable.lookup(name);
+            content.append("callee ").append(name).append(" ").append(callee.stackLayout.argumentAreaSize);
+            callee.parameterTypes.forEach(parameter -> content.append(", ").append(parameter).append(" @ ").append(parameter.offset)
+                    .append(" in ").append(parameter.register));
+            content.append('\n');
+        }
+
+        return sha256(content.toString());
+    }
+
+    /**
+     * @return The cached code for the key, or an empty Optional if there is none.
+     */
+    Optional<String> load(String key) {
+        Path entry = directory.resolve(key + ENTRY_SUFFIX);
+        try {
+            String code = Files.readString(entry);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return Optional.of(code);
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    void store(String key, String code) {
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, key, ".tmp");
+            Files.writeString(temporary, code);
+            Files.move(temporary, directory.resolve(key + ENTRY_SUFFIX), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ignored) {
+            // The code is just not cached this time.
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until all entries fit into the size limit.
+     */
+    void evict() {
+        List<Path> entries;
+        try (Stream<Path> list = Files.list(directory)) {
+            entries = list.filter(path -> path.toString().endsWith(ENTRY_SUFFIX)).collect(Collectors.toList());
+        } catch (IOException e) {
+            return;
+        }
+
+        Map<Path, FileTime> lastUse = new HashMap<>();
+        Map<Path, Long> sizes = new HashMap<>();
+        long totalSize = 0;
+        for (Path entry : entries) {
+            try {
+                lastUse.put(entry, Files.getLastModifiedTime(entry));
+                sizes.put(entry, Files.size(entry));
+                totalSize += sizes.get(entry);
+            } catch (IOException ignored) {
+                // Removed by a concurrent compilation
+            }
+        }
+        if (totalSize <= sizeLimit) return;
+
+        List<Path> leastRecentlyUsedFirst = new ArrayList<>(lastUse.keySet());
+        leastRecentlyUsedFirst.sort(Comparator.comparing(lastUse::get));
+        for (Path entry : leastRecentlyUsedFirst) {
+            if (totalSize <= sizeLimit) break;
+            try {
+                Files.deleteIfExists(entry);
+                totalSize -= sizes.get(entry);
+            } catch (IOException ignored) {
+                // Try the next entry
+            }
+        }
+    }
+
+    /**
+     * Writes the statements of a procedure body in prefix notation and collects the procedures called by them.
+     * <p>
+     * Unlike {@link Node#toString()}, this takes linear time even for deeply nested statements and expressions.
+     * Positions are left out, since they do not influence the generated code.
+     */
+    private static class BodyFingerprint extends DoNothingVisitor {
+        private final StringBuilder content;
+        private final Set<Identifier> callees = new LinkedHashSet<>();
+
+        BodyFingerprint(StringBuilder content) {
+            this.content = content;
+        }
+
+        @Override
+        public void visit(ArrayAccess arrayAccess) {
+            content.append(arrayAccess.indexChecked ? "[ " : "[! ");
+            arrayAccess.array.accept(this);
+            arrayAccess.index.accept(this);
+        }
+
+        @Override
+        public void visit(AssignStatement assignStatement) {
+            content.append(":= ");
+            assignStatement.target.accept(this);
+            assignStatement.value.accept(this);
+        }
+
+        @Override
+        public void visit(BinaryExpression binaryExpression) {
+            content.append(binaryExpression.operator).append(' ');
+            binaryExpression.leftOperand.accept(this);
+            binaryExpression.rightOperand.accept(this);
+        }
+
+        @Override
+        public void visit(CallStatement callStatement) {
+            callees.add(callStatement.procedureName);
+            content.append("call ").append(callStatement.procedureName).append(' ').append(callStatement.arguments.size()).append(' ');
+            callStatement.arguments.forEach(argument -> argument.accept(this));
+        }
+
+        @Override
+        public void visit(CompoundStatement compoundStatement) {
+            content.append("{ ").append(compoundStatement.statements.size()).append(' ');
+            compoundStatement.statements.forEach(statement -> statement.accept(this));
+        }
+
+        @Override
+        public void visit(EmptyStatement emptyStatement) {
+            content.append("; ");
+        }
+
+        @Override
+        public void visit(IfStatement ifStatement) {
+            content.append("if ");
+            ifStatement.condition.accept(this);
+            ifStatement.thenPart.accept(this);
+            ifStatement.elsePart.accept(this);
+        }
+
+        @Override
+        public void visit(IntLiteral intLiteral) {
+            content.append(intLiteral.value).append(' ');
+        }
+
+        @Override
+        public void visit(NamedVariable namedVariable) {
+            content.append("var ").append(namedVariable.name).append(' ');
+        }
+
+        @Override
+        public void visit(VariableExpression variableExpression) {
+            variableExpression.variable.accept(this);
+        }
+
+        @Override
+        public void visit(WhileStatement whileStatement) {
+            content.append("while ");
+            whileStatement.condition.accept(this);
+            whileStatement.body.accept(this);
+        }
+    }
+
+    /**
+     * Identifies the build of the compiler by the size and modification time of its jar file, or by the contents of all
+     * its class files when running from a class directory, so code generated by another build is never reused. An
+     * incremental build may recompile single classes only, which leaves the modification time of the others unchanged.
+     */
+    private static synchronized String compilerFingerprint() {
+        if (compilerFingerprint != null) return compilerFingerprint;
+
+        try {
+            Path build = Paths.get(CodeCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (Files.isDirectory(build)) {
+                compilerFingerprint = classesFingerprint(build);
+            } else {
+                compilerFingerprint = Files.size(build) + "-" + Files.getLastModifiedTime(build).toMillis();
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            // Without a fingerprint, entries can only be reused within this run of the compiler
+            compilerFingerprint = "run-" + UUID.randomUUID();
+        }
+        return compilerFingerprint;
+    }
+
+    /**
+     * @return The SHA-256 hash of the names and contents of all class files in the directory.
+     */
+    private static String classesFingerprint(Path directory) throws IOException {
+        List<Path> classFiles;
+        try (Stream<Path> files = Files.walk(directory)) {
+            classFiles = files.filter(file -> file.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Path classFile : classFiles) {
+                digest.update(directory.relativize(classFile).toString().getBytes(StandardCharsets.UTF_8));
+                digest.update(Files.readAllBytes(classFile));
+            }
+            return hex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String sha256(String content) {
+        try {
+            return hex(MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] hash) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hash) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+}
@@ -2,149 +2,504 @@ package de.thm.mni.compilerbau.phases._06_codegen;
 
 import de.thm.mni.compilerbau.absyn.*;
 import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.phases._04g_callgraph.CallGraph;
+import de.thm.mni.compilerbau.phases._05_varalloc.ImmediateOperands;
+import de.thm.mni.compilerbau.phases._05_varalloc.StackLayout;
+import de.thm.mni.compilerbau.phases._05_varalloc.TailCalls;
+import de.thm.mni.compilerbau.phases._05_varalloc.VarAllocator;
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.ParameterType;
 import de.thm.mni.compilerbau.table.ProcedureEntry;
 import de.thm.mni.compilerbau.table.SymbolTable;
 import de.thm.mni.compilerbau.table.VariableEntry;
 import de.thm.mni.compilerbau.types.ArrayType;
 import de.thm.mni.compilerbau.utils.NotImplemented;
+import de.thm.mni.compilerbau.utils.Pair;
+import de.thm.mni.compilerbau.utils.Parallel;
 import de.thm.mni.compilerbau.utils.SplError;
 
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 /**
  * This class is used to generate the assembly code for the compiled program.
- * This code is emitted via the {@link CodePrinter} in the output field of this class.
+ * The code of every procedure is collected in an {@link InstructionList} and emitted via the {@link CodePrinter}
+ * in the output field of this class.
  */
 public class CodeGenerator {
     private final CodePrinter output;
-    private final boolean ershovOptimization;
+    private final Options options;
+    private final PeepholeOptimizer rewriter;
+    private final CodeCache cache;
+
+    /**
+     * The options changing the generated code. All of them are disabled by default.
+     */
+    public static class Options {
+        /**
+         * Whether the ershov register optimization should be used (--ershov)
+         */
+        public boolean ershovOptimization = false;
+        /**
+         * Whether constants and frame offsets are encoded in the instructions using them (--immediates)
+         */
+        public boolean immediateOperands = false;
+        /**
+         * Whether multiplications and divisions by constants are replaced by shifts and additions (--strengthReduction)
+         */
+        public boolean strengthReduction = false;
+        /**
+         * Whether the code of every procedure should be improved by the peephole optimizer (--peephole)
+         */
+        public boolean peephole = false;
+        /**
+         * Whether local variables and value parameters may be kept in registers (--registerVariables)
+         */
+        public boolean registerVariables = false;
+        /**
+         * Whether registers are assigned by the linear scan register allocation (--linearScan)
+         */
+        public boolean linearScan = false;
+        /**
+         * Whether while loops test their condition at the end and loop invariant computations are moved in front of
+         * them (--loopOptimization)
+         */
+        public boolean loopOptimization = false;
+        /**
+         * Whether array accesses in loops use pointers advanced together with the induction variables
+         * (--inductionVariables). Only used by the linear scan register allocation.
+         */
+        public boolean inductionVariables = false;
+        /**
+         * Whether calls in tail position reuse the stack frame of the caller (--tailCalls)
+         */
+        public boolean tailCalls = false;
+        /**
+         * Whether only the runtime routines called by the program are imported (--deadProcedures)
+         */
+        public boolean usedImports = false;
+
+        /**
+         * @return All options. They are part of the key of cached code.
+         */
+        @Override
+        public String toString() {
+            return String.format("ershov=%b immediates=%b strengthReduction=%b peephole=%b registerVariables=%b linearScan=%b loopOptimization=%b inductionVariables=%b tailCalls=%b usedImports=%b",
+                    ershovOptimization, immediateOperands, strengthReduction, peephole, registerVariables, linearScan, loopOptimization,
+                    inductionVariables, tailCalls, usedImports);
+        }
+    }
+
+    /**
+     * The address of a variable, given by a base register and a constant offset. If the base register is the frame
+     * pointer, the address does not occupy a register.
+     */
+    private static class Address {
+        final Register base;
+        final int offset;
+
+        Address(Register base, int offset) {
+            this.base = base;
+            this.offset = offset;
+        }
+    }
 
     private class CodeGeneratorVisitor extends DoNothingVisitor {
         SymbolTable localTable;
         SymbolTable globalTable;
+        String procedureName;
+        ProcedureDeclaration procedure;
         int lblCounter = 0;
-        CodePrinter output;
-
-        public CodeGeneratorVisitor(SymbolTable symbolTable,CodePrinter output) {
+        InstructionList output;
+        StackLayout stackLayout;
+        int spilledValues = 0;
+        /**
+         * The last register available for the evaluation of expressions. The registers above it hold variables.
+         */
+        int lastTemporary = 23;
+        /**
+         * The calls reusing the stack frame of the procedure and the label at the start of its body, which recursive
+         * ones jump to (--tailCalls).
+         */
+        Set<CallStatement> tailCalls = Set.of();
+        String bodyLabel;
+
+        public CodeGeneratorVisitor(SymbolTable symbolTable,InstructionList output) {
             this.globalTable = symbolTable;
             this.output=output;
         }
 
         Register register = new Register(8);
 
+        /**
+         * Creates a label that is unique within the program. Labels are numbered per procedure and prefixed with the
+         * procedure name. The dot in between cannot be part of an SPL identifier, so labels never clash with
+         * procedure names or with the labels of other procedures.
+         */
+        private String newLabel() {
+            return procedureName + ".L" + lblCounter++;
+        }
+
+        /**
+         * Makes sure the register the next value is computed into may be used freely.
+         *
+         * @throws SplError If the expression needs more registers than available.
+         */
+        private void checkRegister() {
+            if (!isTemporary(register)) {
+                throw SplError.RegisterOverflow();
+            }
+        }
+
+        /**
+         * @return true if the register is available for the evaluation of expressions in the current procedure.
+         */
+        private boolean isTemporary(Register register) {
+            return register.isFreeUse() && register.number <= lastTemporary;
+        }
+
+        /**
+         * @return The register holding the variable for the whole procedure, or null if it lives in memory.
+         */
+        private Register variableRegister(Variable variable) {
+            if (!(variable instanceof NamedVariable)) return null;
+            Integer number = ((VariableEntry) localTable.lookup(((NamedVariable) variable).name)).register;
+            return number == null ? null : new Register(number);
+        }
+
+        /**
+         * Evaluates two operands into consecutive registers. When the ershov optimization is enabled, the operand
+         * needing more registers is evaluated first. If the second operand does not fit into the remaining free
+         * registers, the result of the first operand is spilled to the stack frame while the second one is evaluated.
+         *
+         * @return The pair of registers holding the results of the first and the second operand.
+         */
+        private Pair<Register, Register> evaluatePair(Runnable first, int firstNeed, Runnable second, int secondNeed) {
+            if (options.ershovOptimization && secondNeed > firstNeed) {
+                Pair<Register, Register> swapped = evaluateInOrder(second, first, firstNeed);
+                return new Pair<>(swapped.second, swapped.first);
+            }
+            return evaluateInOrder(first, second, secondNeed);
+        }
+
+        private Pair<Register, Register> evaluateInOrder(Runnable first, Runnable second, int secondNeed) {
+            first.run();
+            if (isTemporary(new Register(register.number + secondNeed - 1))) {
+                second.run();
+                return new Pair<>(register.minus(2), register.minus(1));
+            }
+            int spillSlotOffset = stackLayout.spillSlotOffset(spilledValues++);
+            register = register.previous();
+            output.emitInstruction(Opcode.STW, register, new Register(25), spillSlotOffset, "spill");
+            second.run();
+            output.emitInstruction(Opcode.LDW, register, new Register(25), spillSlotOffset, "reload");
+            register = register.next();
+            spilledValues--;
+            return new Pair<>(register.minus(1), register.minus(2));
+        }
+
+        /**
+         * Evaluates both operands of a binary expression.
+         *
+         * @return The pair of registers holding the left and the right operand.
+         */
+        private Pair<Register, Register> evaluateOperands(BinaryExpression binaryExpression) {
+            return evaluatePair(() -> binaryExpression.leftOperand.accept(this), binaryExpression.leftOperand.ershovNumber,
+                    () -> binaryExpression.rightOperand.accept(this), binaryExpression.rightOperand.ershovNumber);
+        }
+
         public void visit(IntLiteral intLiteral) {
-            output.emitInstruction("add", register, new Register(0), intLiteral.value);
+            checkRegister();
+            output.emitInstruction(Opcode.ADD, register, new Register(0), intLiteral.value);
             register=register.next();
         }
 
         public void visit(BinaryExpression binaryExpression) {
-            binaryExpression.leftOperand.accept(this);
-            binaryExpression.rightOperand.accept(this);
-            switch (binaryExpression.operator) {
+            IntLiteral immediate = options.immediateOperands ? ImmediateOperands.immediateOperand(binaryExpression) : null;
+            if (immediate != null) {
+                ImmediateOperands.registerOperand(binaryExpression).accept(this);
+                output.emitInstruction(arithmeticOpcode(binaryExpression.operator), register.minus(1), register.minus(1), immediate.value);
+                return;
+            }
+
+            Pair<Register, Register> operands = evaluateOperands(binaryExpression);
+            output.emitInstruction(arithmeticOpcode(binaryExpression.operator), register.minus(2), operands.first, operands.second);
+            register = register.minus(1);
+        }
+
+        private Opcode arithmeticOpcode(BinaryExpression.Operator operator) {
+            switch (operator) {
                 case ADD:
-                    output.emitInstruction("add", register.minus(2), register.minus(2), register.minus(1));
-                    break;
+                    return Opcode.ADD;
                 case SUB:
-                    output.emitInstruction("sub", register.minus(2), register.minus(2), register.minus(1));
-                    break;
+                    return Opcode.SUB;
                 case MUL:
-                    output.emitInstruction("mul", register.minus(2), register.minus(2), register.minus(1));
-                    break;
+                    return Opcode.MUL;
                 case DIV:
-                    output.emitInstruction("div", register.minus(2), register.minus(2), register.minus(1));
-                    break;
+                    return Opcode.DIV;
+                default:
+                    throw new IllegalArgumentException("Not an arithmetic operator: " + operator);
             }
-            register = register.minus(1);
         }
 
         public void logicOperator(BinaryExpression binaryExpression, String label) {
-            binaryExpression.leftOperand.accept(this);
-            binaryExpression.rightOperand.accept(this);
+            logicOperator(binaryExpression, label, false);
+        }
+
+        /**
+         * Branches to the label if the comparison does not hold, or if it holds when branchIfTrue is set.
+         */
+        public void logicOperator(BinaryExpression binaryExpression, String label, boolean branchIfTrue) {
+            Register first;
+            Register second;
+            int usedRegisters;
+            IntLiteral zero = options.immediateOperands ? ImmediateOperands.immediateOperand(binaryExpression) : null;
+            if (zero != null) {
+                ImmediateOperands.registerOperand(binaryExpression).accept(this);
+                first = zero == binaryExpression.leftOperand ? Register.ZERO : register.minus(1);
+                second = zero == binaryExpression.rightOperand ? Register.ZERO : register.minus(1);
+                usedRegisters = 1;
+            } else {
+                Pair<Register, Register> operands = evaluateOperands(binaryExpression);
+                first = operands.first;
+                second = operands.second;
+                usedRegisters = 2;
+            }
 
-            switch (binaryExpression.operator) {
+            switch (branchIfTrue ? negatedComparison(binaryExpression.operator) : binaryExpression.operator) {
                 case EQU:
-                    output.emitInstruction("bne", register.minus(2), register.minus(1), label);
+                    output.emitInstruction(Opcode.BNE, first, second, label);
                     break;
                 case NEQ:
-                    output.emitInstruction("beq", register.minus(2), register.minus(1), label);
+                    output.emitInstruction(Opcode.BEQ, first, second, label);
                     break;
                 case GRE:
-                    output.emitInstruction("blt", register.minus(2), register.minus(1), label);
+                    output.emitInstruction(Opcode.BLT, first, second, label);
                     break;
                 case LSE:
-                    output.emitInstruction("bgt", register.minus(2), register.minus(1), label);
+                    output.emitInstruction(Opcode.BGT, first, second, label);
                     break;
                 case GRT:
-                    output.emitInstruction("ble", register.minus(2), register.minus(1), label);
+                    output.emitInstruction(Opcode.BLE, first, second, label);
                     break;
                 case LST:
-                    output.emitInstruction("bge", register.minus(2), register.minus(1), label);
+                    output.emitInstruction(Opcode.BGE, first, second, label);
                     break;
 
             }
-            register = register.minus(2);
+            register = register.minus(usedRegisters);
+        }
+
+        private BinaryExpression.Operator negatedComparison(BinaryExpression.Operator operator) {
+            switch (operator) {
+                case EQU:
+                    return BinaryExpression.Operator.NEQ;
+                case NEQ:
+                    return BinaryExpression.Operator.EQU;
+                case LST:
+                    return BinaryExpression.Operator.GRE;
+                case LSE:
+                    return BinaryExpression.Operator.GRT;
+                case GRT:
+                    return BinaryExpression.Operator.LSE;
+                case GRE:
+                    return BinaryExpression.Operator.LST;
+                default:
+                    throw new IllegalArgumentException("Not a comparison operator: " + operator);
+            }
         }
 
         public void visit(NamedVariable namedVariable) {
             VariableEntry variableEntry = (VariableEntry) localTable.lookup(namedVariable.name);
-            output.emitInstruction("add", register, new Register(25), variableEntry.offset);
+            checkRegister();
+            output.emitInstruction(Opcode.ADD, register, new Register(25), variableEntry.offset);
             if(variableEntry.isReference){
-                output.emitInstruction("ldw", register, register, 0);
+                output.emitInstruction(Opcode.LDW, register, register, 0);
             }
             register = register.next();
         }
 
         public void visit(VariableExpression variableExpression) {
+            Register variableRegister = variableRegister(variableExpression.variable);
+            if (variableRegister != null) {
+                checkRegister();
+                output.emitInstruction(Opcode.ADD, register, variableRegister, Register.ZERO);
+                register = register.next();
+                return;
+            }
+            if (options.immediateOperands) {
+                Address address = evaluateAddress(variableExpression.variable);
+                if (!address.base.isFreeUse()) {
+                    checkRegister();
+                    register = register.next();
+                }
+                output.emitInstruction(Opcode.LDW, register.minus(1), address.base, address.offset);
+                return;
+            }
             variableExpression.variable.accept(this);
-            output.emitInstruction("ldw", register.minus(1), register.minus(1), 0);
+            output.emitInstruction(Opcode.LDW, register.minus(1), register.minus(1), 0);
         }
 
         public void visit(AssignStatement assignStatement) {
             register = new Register(8);
-            assignStatement.target.accept(this);
-            assignStatement.value.accept(this);
-
-            output.emitInstruction("stw", register.minus(1), register.minus(2), 0);
+            Register targetRegister = variableRegister(assignStatement.target);
+            if (targetRegister != null) {
+                assignStatement.value.accept(this);
+                output.emitInstruction(Opcode.ADD, targetRegister, register.minus(1), Register.ZERO);
+                return;
+            }
+            if (options.immediateOperands) {
+                assignWithImmediateOperands(assignStatement);
+                return;
+            }
+            Pair<Register, Register> targetAndValue = evaluatePair(
+                    () -> assignStatement.target.accept(this), assignStatement.target.ershovNumber,
+                    () -> assignStatement.value.accept(this), assignStatement.value.ershovNumber);
+            output.emitInstruction(Opcode.STW, targetAndValue.second, targetAndValue.first, 0);
             register = register.minus(2);
 
         }
 
+        /**
+         * Stores the value directly at the offset of the target variable. The literal 0 is taken from register $0.
+         */
+        private void assignWithImmediateOperands(AssignStatement assignStatement) {
+            Address[] target = new Address[1];
+            Register value;
+            if (ImmediateOperands.isZero(assignStatement.value)) {
+                target[0] = evaluateAddress(assignStatement.target);
+                value = Register.ZERO;
+            } else if (assignStatement.target.ershovNumber == 0) {
+                target[0] = evaluateAddress(assignStatement.target);
+                assignStatement.value.accept(this);
+                value = register.minus(1);
+            } else {
+                Pair<Register, Register> targetAndValue = evaluatePair(
+                        () -> target[0] = evaluateAddress(assignStatement.target), assignStatement.target.ershovNumber,
+                        () -> assignStatement.value.accept(this), assignStatement.value.ershovNumber);
+                target[0] = new Address(targetAndValue.first, target[0].offset);
+                value = targetAndValue.second;
+            }
+            output.emitInstruction(Opcode.STW, value, target[0].base, target[0].offset);
+        }
+
+        /**
+         * Evaluates the address of a variable as far as needed to access it with a single load or store.
+         * Offsets of local variables and constant indices are kept in the returned offset, an address lying at a
+         * constant offset from the frame pointer does not occupy a register at all.
+         */
+        private Address evaluateAddress(Variable variable) {
+            if (variable instanceof NamedVariable) {
+                VariableEntry variableEntry = (VariableEntry) localTable.lookup(((NamedVariable) variable).name);
+                if (!variableEntry.isReference) return new Address(Register.FRAME_POINTER, variableEntry.offset);
+
+                checkRegister();
+                output.emitInstruction(Opcode.LDW, register, Register.FRAME_POINTER, variableEntry.offset);
+                register = register.next();
+                return new Address(register.minus(1), 0);
+            }
+
+            ArrayAccess arrayAccess = (ArrayAccess) variable;
+            Integer constantIndex = ImmediateOperands.constantIndex(arrayAccess);
+            if (constantIndex != null) {
+                Address array = evaluateAddress(arrayAccess.array);
+                int elementSize = ((ArrayType) arrayAccess.array.dataType).baseType.byteSize;
+                return new Address(array.base, array.offset + constantIndex * elementSize);
+            }
+            if (arrayAccess.array.ershovNumber == 0) {
+                Address array = evaluateAddress(arrayAccess.array);
+                checkedIndex(arrayAccess);
+                output.emitInstruction(Opcode.ADD, register.minus(1), register.minus(1), array.base);
+                return new Address(register.minus(1), array.offset);
+            }
+
+            Address[] array = new Address[1];
+            Pair<Register, Register> arrayAndIndex = evaluatePair(
+                    () -> array[0] = evaluateAddress(arrayAccess.array), arrayAccess.array.ershovNumber,
+                    () -> checkedIndex(arrayAccess), VarAllocator.checkedIndexErshovNumber(arrayAccess));
+            output.emitInstruction(Opcode.ADD, register.minus(2), arrayAndIndex.first, arrayAndIndex.second);
+            register = register.minus(1);
+            return new Address(register.minus(1), array[0].offset);
+        }
+
+        /**
+         * Evaluates the address of a variable into a register, e.g. to pass it as reference argument.
+         */
+        private void loadAddress(Variable variable) {
+            Address address = evaluateAddress(variable);
+            if (!address.base.isFreeUse()) {
+                checkRegister();
+                output.emitInstruction(Opcode.ADD, register, address.base, address.offset);
+                register = register.next();
+            } else if (address.offset != 0) {
+                output.emitInstruction(Opcode.ADD, address.base, address.base, address.offset);
+            }
+        }
+
         public void visit(ArrayAccess arrayAccess) {
-            arrayAccess.array.accept(this);
+            Pair<Register, Register> arrayAndIndex = evaluatePair(
+                    () -> arrayAccess.array.accept(this), arrayAccess.array.ershovNumber,
+                    () -> checkedIndex(arrayAccess), VarAllocator.checkedIndexErshovNumber(arrayAccess));
+            output.emitInstruction(Opcode.ADD, register.minus(2), arrayAndIndex.first, arrayAndIndex.second);
+            register = register.minus(1);
+        }
+
+        /**
+         * Evaluates the index of an array access, checks it against the array bounds and scales it to a byte offset.
+         * The check is left out if the range analysis has shown the index to be always inside the bounds.
+         */
+        private void checkedIndex(ArrayAccess arrayAccess) {
             arrayAccess.index.accept(this);
             ArrayType arrayType= (ArrayType) arrayAccess.array.dataType;
-            output.emitInstruction("add", register, new Register(0), arrayType.arraySize);
-            output.emitInstruction("bgeu", register.minus(1), register, "_indexError");
-            output.emitInstruction("mul", register.minus(1), register.minus(1), arrayType.baseType.byteSize);
-            output.emitInstruction("add", register.minus(2), register.minus(2), register.minus(1));
-            register = register.minus(1);
+            if (arrayAccess.indexChecked) {
+                checkRegister();
+                output.emitInstruction(Opcode.ADD, register, new Register(0), arrayType.arraySize);
+                output.emitInstruction(Opcode.BGEU, register.minus(1), register, "_indexError");
+            }
+            output.emitInstruction(Opcode.MUL, register.minus(1), register.minus(1), arrayType.baseType.byteSize);
         }
 
         public void visit(WhileStatement whileStatement) {
             register = new Register(8);
-            String startLabel = "L" + lblCounter++;
-            String endLabel = "L" + lblCounter++;
+            String startLabel = newLabel();
+            String endLabel = newLabel();
+
+            if (options.loopOptimization) {
+                // The loop is entered only if the condition holds, afterwards it is tested at the end of every iteration
+                logicOperator((BinaryExpression) whileStatement.condition, endLabel);
+                output.emitLabel(startLabel);
+                whileStatement.body.accept(this);
+                register = new Register(8);
+                logicOperator((BinaryExpression) whileStatement.condition, startLabel, true);
+                output.emitLabel(endLabel);
+                return;
+            }
 
             output.emitLabel(startLabel);
             logicOperator((BinaryExpression) whileStatement.condition, endLabel);
             whileStatement.body.accept(this);
-            output.emitInstruction("j", startLabel);
+            output.emitInstruction(Opcode.J, startLabel);
             output.emitLabel(endLabel);
         }
 
         public void visit(IfStatement ifStatement) {
             register = new Register(8);
             if (ifStatement.elsePart instanceof EmptyStatement) {
-                String endlbl = "L" + lblCounter++;
+                String endlbl = newLabel();
                 logicOperator((BinaryExpression) ifStatement.condition, endlbl);
                 ifStatement.thenPart.accept(this);
                 output.emitLabel(endlbl);
             } else {
-                String startLbl = "L" + lblCounter++;
-                String endLbl = "L" + lblCounter++;
+                String elseLbl = newLabel();
+                String endLbl = newLabel();
 
-                logicOperator((BinaryExpression) ifStatement.condition, endLbl);
-                output.emitLabel(startLbl);
+                logicOperator((BinaryExpression) ifStatement.condition, elseLbl);
+                ifStatement.thenPart.accept(this);
+                output.emitInstruction(Opcode.J, endLbl);
+                output.emitLabel(elseLbl);
                 ifStatement.elsePart.accept(this);
                 output.emitLabel(endLbl);
             }
@@ -153,38 +508,97 @@ public class CodeGenerator {
         public void visit(CallStatement callStatement) {
             register = new Register(8);
             ProcedureEntry procedureEntry = (ProcedureEntry) localTable.lookup((callStatement.procedureName));
+            if (tailCalls.contains(callStatement)) {
+                tailCall(callStatement, procedureEntry);
+                return;
+            }
+            storeArguments(callStatement, procedureEntry, new Register(29));
+            output.emitInstruction(Opcode.JAL, callStatement.procedureName.toString());
+        }
+
+        /**
+         * Stores the arguments of the call at their offsets from the base register, or moves them into the registers
+         * they are passed in.
+         */
+        private void storeArguments(CallStatement callStatement, ProcedureEntry procedureEntry, Register base) {
             for (int i = 0; i < callStatement.arguments.size(); i++) {
+                ParameterType parameterType = procedureEntry.parameterTypes.get(i);
+                if (base.equals(Register.FRAME_POINTER) && TailCalls.passesThrough(callStatement, procedure, i)
+                        && parameterType.register == null
+                        && ((VariableEntry) localTable.lookup(procedure.parameters.get(i).name)).register == null) {
+                    continue;
+                }
+                if (options.immediateOperands && ImmediateOperands.isZero(callStatement.arguments.get(i))) {
+                    if (parameterType.register != null) output.emitInstruction(Opcode.ADD, new Register(parameterType.register), Register.ZERO, Register.ZERO);
+                    else output.emitInstruction(Opcode.STW, Register.ZERO, base, parameterType.offset);
+                    continue;
+                }
                 if (procedureEntry.parameterTypes.get(i).isReference) {
                     VariableExpression variableExpression = (VariableExpression) callStatement.arguments.get(i);
-                    variableExpression.variable.accept(this);
+                    if (options.immediateOperands) loadAddress(variableExpression.variable);
+                    else variableExpression.variable.accept(this);
                 } else {
                     callStatement.arguments.get(i).accept(this);
                 }
 
-                output.emitInstruction("stw", register.minus(1), new Register(29), procedureEntry.parameterTypes.get(i).offset);
+                if (parameterType.register != null) output.emitInstruction(Opcode.ADD, new Register(parameterType.register), register.minus(1), Register.ZERO);
+                else output.emitInstruction(Opcode.STW, register.minus(1), base, parameterType.offset);
                 register = register.minus(1);
             }
-            output.emitInstruction("jal", callStatement.procedureName.toString());
+        }
+
+        /**
+         * Replaces the arguments of the procedure by the arguments of the call and jumps to the start of the body of
+         * the procedure or to the callee. If an argument reads a parameter overwritten before, all arguments are
+         * evaluated into the outgoing area first.
+         */
+        private void tailCall(CallStatement callStatement, ProcedureEntry procedureEntry) {
+            if (TailCalls.storesDirectly(callStatement, procedure, globalTable)) {
+                storeArguments(callStatement, procedureEntry, Register.FRAME_POINTER);
+            } else {
+                storeArguments(callStatement, procedureEntry, Register.STACK_POINTER);
+                for (ParameterType parameterType : procedureEntry.parameterTypes) {
+                    if (parameterType.register != null) continue;
+                    output.emitInstruction(Opcode.LDW, register, Register.STACK_POINTER, parameterType.offset);
+                    output.emitInstruction(Opcode.STW, register, Register.FRAME_POINTER, parameterType.offset);
+                }
+            }
+            if (callStatement.procedureName.equals(procedure.name)) {
+                output.emitInstruction(Opcode.J, bodyLabel, "tail call");
+            } else {
+                emitProcedureExit(output, stackLayout, callStatement.procedureName.toString());
+            }
         }
 
         public void visit(ProcedureDeclaration procedureDeclaration) {
             ProcedureEntry procedureEntry = (ProcedureEntry) globalTable.lookup(procedureDeclaration.name);
-            output.emitExport(procedureDeclaration.name.toString());
-            output.emitLabel(procedureDeclaration.name.toString());
+            procedureName = procedureDeclaration.name.toString();
+            procedure = procedureDeclaration;
             localTable = procedureEntry.localTable;
-            output.emitInstruction("sub", new Register(29), new Register(29), procedureEntry.stackLayout.frameSize(), "allocate frame");
-            output.emitInstruction("stw", new Register(25), new Register(29), procedureEntry.stackLayout.oldFramePointerOffset(), "save old FP");
-            output.emitInstruction("add", new Register(25), new Register(29), procedureEntry.stackLayout.frameSize(), "new FP");
-            if (!procedureEntry.stackLayout.isLeafProcedure()) {
-                output.emitInstruction("stw", new Register(31), new Register(25), procedureEntry.stackLayout.oldReturnAddressOffset(), "save old return register");
+            stackLayout = procedureEntry.stackLayout;
+            lastTemporary = 23 - VarAllocator.registerVariableCount(procedureDeclaration, localTable);
+            emitProcedureEntry(output, procedureName, stackLayout);
+            if (options.tailCalls) {
+                tailCalls = TailCalls.find(procedureDeclaration, globalTable);
+                if (tailCalls.stream().anyMatch(call -> call.procedureName.equals(procedureDeclaration.name))) {
+                    bodyLabel = newLabel();
+                    output.emitLabel(bodyLabel);
+                }
             }
-            procedureDeclaration.body.forEach(n->n.accept(this));
-            if(!procedureEntry.stackLayout.isLeafProcedure()){
-                output.emitInstruction("ldw", new Register(31), new Register(25), procedureEntry.stackLayout.oldReturnAddressOffset(), "load return register");
+            for (int i = 0; i < procedureDeclaration.parameters.size(); i++) {
+                ParameterDeclaration parameter = procedureDeclaration.parameters.get(i);
+                VariableEntry variableEntry = (VariableEntry) localTable.lookup(parameter.name);
+                Integer argumentRegister = procedureEntry.parameterTypes.get(i).register;
+                if (argumentRegister != null && variableEntry.register != null) {
+                    output.emitInstruction(Opcode.ADD, new Register(variableEntry.register), new Register(argumentRegister), Register.ZERO, "move parameter " + parameter.name);
+                } else if (argumentRegister != null) {
+                    output.emitInstruction(Opcode.STW, new Register(argumentRegister), new Register(25), variableEntry.offset, "store parameter " + parameter.name);
+                } else if (variableEntry.register != null) {
+                    output.emitInstruction(Opcode.LDW, new Register(variableEntry.register), new Register(25), variableEntry.offset, "load parameter " + parameter.name);
+                }
             }
-            output.emitInstruction("ldw",new Register(25),new Register(29),procedureEntry.stackLayout.oldFramePointerOffset(), "restore FP" );
-            output.emitInstruction("add",new Register(29), new Register(29),procedureEntry.stackLayout.frameSize(),"release Frame");
-            output.emitInstruction("jr",new Register(31),"return to Adress");
+            procedureDeclaration.body.forEach(n->n.accept(this));
+            emitProcedureExit(output, stackLayout);
         }
 
         public void visit(Program program){
@@ -198,43 +612,137 @@ public class CodeGenerator {
 
     }
 
+    /**
+     * Emits the label of a procedure and the code allocating its stack frame and saving the registers it has to
+     * preserve.
+     */
+    private static void emitProcedureEntry(InstructionList output, String procedureName, StackLayout stackLayout) {
+        output.emitExport(procedureName);
+        output.emitLabel(procedureName);
+        output.emitInstruction(Opcode.SUB, new Register(29), new Register(29), stackLayout.frameSize(), "allocate frame");
+        output.emitInstruction(Opcode.STW, new Register(25), new Register(29), stackLayout.oldFramePointerOffset(), "save old FP");
+        output.emitInstruction(Opcode.ADD, new Register(25), new Register(29), stackLayout.frameSize(), "new FP");
+        if (!stackLayout.isLeafProcedure()) {
+            output.emitInstruction(Opcode.STW, new Register(31), new Register(25), stackLayout.oldReturnAddressOffset(), "save old return register");
+        }
+        for (int i = 0; i < stackLayout.savedRegisters.size(); i++) {
+            output.emitInstruction(Opcode.STW, new Register(stackLayout.savedRegisters.get(i)), new Register(25), stackLayout.savedRegisterOffset(i), "save register");
+        }
+    }
+
+    /**
+     * Emits the code restoring the saved registers, releasing the stack frame and returning to the caller.
+     */
+    private static void emitProcedureExit(InstructionList output, StackLayout stackLayout) {
+        emitProcedureExit(output, stackLayout, null);
+    }
+
+    /**
+     * Emits the code restoring the saved registers and releasing the stack frame. Afterwards it returns to the caller
+     * or jumps to the given procedure, which returns to the caller instead.
+     */
+    private static void emitProcedureExit(InstructionList output, StackLayout stackLayout, String tailCallTarget) {
+        for (int i = 0; i < stackLayout.savedRegisters.size(); i++) {
+            output.emitInstruction(Opcode.LDW, new Register(stackLayout.savedRegisters.get(i)), new Register(25), stackLayout.savedRegisterOffset(i), "restore register");
+        }
+        if(!stackLayout.isLeafProcedure()){
+            output.emitInstruction(Opcode.LDW, new Register(31), new Register(25), stackLayout.oldReturnAddressOffset(), "load return register");
+        }
+        output.emitInstruction(Opcode.LDW,new Register(25),new Register(29),stackLayout.oldFramePointerOffset(), "restore FP" );
+        output.emitInstruction(Opcode.ADD,new Register(29), new Register(29),stackLayout.frameSize(),"release Frame");
+        if (tailCallTarget != null) {
+            output.emitInstruction(Opcode.J, tailCallTarget, "tail call");
+            return;
+        }
+        output.emitInstruction(Opcode.JR,new Register(31),"return to Adress");
+    }
+
     /**
      * Initializes the code generator.
      *
-     * @param output             The PrintWriter to the output file.
-     * @param ershovOptimization Whether the ershov register optimization should be used (--ershov)
+     * @param output  The PrintWriter to the output file.
+     * @param options The options changing the generated code.
+     * @param cache   The cache the code of procedures is reused from, or null if no cache should be used (--cache)
      */
-
-    public CodeGenerator(PrintWriter output, boolean ershovOptimization) {
+    public CodeGenerator(PrintWriter output, Options options, CodeCache cache) {
         this.output = new CodePrinter(output);
-        this.ershovOptimization = ershovOptimization;
+        this.options = options;
+        this.cache = cache;
+
+        List<PeepholeOptimizer.Rule> rules = new ArrayList<>();
+        if (options.strengthReduction) rules.add(new StrengthReduction());
+        if (options.peephole) rules.addAll(PeepholeRules.defaultRules());
+        this.rewriter = rules.isEmpty() ? null : new PeepholeOptimizer(rules);
     }
 
     /**
      * Emits needed import statements, to allow usage of the predefined functions and sets the correct settings
-     * for the assembler.
+     * for the assembler. The routines imported are the predefined procedures of the global table, with
+     * --deadProcedures only those called by the program.
      */
-    private void assemblerProlog() {
-        output.emitImport("printi");
-        output.emitImport("printc");
-        output.emitImport("readi");
-        output.emitImport("readc");
-        output.emitImport("exit");
-        output.emitImport("time");
-        output.emitImport("clearAll");
-        output.emitImport("setPixel");
-        output.emitImport("drawLine");
-        output.emitImport("drawCircle");
-        output.emitImport("_indexError");
-        output.emit("");
-        output.emit("\t.code");
-        output.emit("\t.align\t4");
+    private void assemblerProlog(Program program, SymbolTable table) {
+        CallGraph callGraph = options.usedImports ? new CallGraph(program) : null;
+        Set<Identifier> calledProcedures = callGraph != null ? callGraph.calledProcedures() : null;
+        InstructionList prolog = new InstructionList();
+        table.names().stream()
+                .filter(name -> table.lookup(name) instanceof ProcedureEntry && ((ProcedureEntry) table.lookup(name)).isPredefined())
+                .filter(name -> calledProcedures == null || calledProcedures.contains(name))
+                .map(Identifier::toString)
+                .sorted()
+                .forEach(prolog::emitImport);
+        if (callGraph == null || callGraph.checksIndices()) prolog.emitImport("_indexError");
+        prolog.emitDirective("code", null);
+        prolog.emitDirective("align", "4");
+        output.emitInstructions(prolog);
     }
 
+    /**
+     * Generates the code of all procedures in parallel. Every procedure is collected into its own
+     * {@link InstructionList} by its own visitor and formatted into a buffer, the buffers are written to the output
+     * in source order.
+     * If a cache is used, the code of unchanged procedures is taken from the cache instead.
+     */
     public void generateCode(Program program, SymbolTable table) {
-        assemblerProlog();
-        CodeGeneratorVisitor codeGeneratorVisitor = new CodeGeneratorVisitor(table,output);
-        program.accept(codeGeneratorVisitor);
+        assemblerProlog(program, table);
+        List<String> procedures = Parallel.map(program.procedures(), procedure -> {
+            if (cache == null) return generateProcedure(procedure, table);
+
+            String key = cache.key(procedure, table, options.toString());
+            return cache.load(key).orElseGet(() -> {
+                String code = generateProcedure(procedure, table);
+                cache.store(key, code);
+                return code;
+            });
+        });
+        procedures.forEach(output::emitCode);
+        if (cache != null) cache.evict();
         //TODO (assignment 6): generate eco32 assembler code for the spl program
     }
+
+    private String generateProcedure(ProcedureDeclaration procedure, SymbolTable table) {
+        InstructionList instructions = new InstructionList();
+        if (options.linearScan) {
+            ProcedureEntry procedureEntry = (ProcedureEntry) table.lookup(procedure.name);
+            CodeSelector selector = new CodeSelector(procedureEntry.localTable, procedure.name.toString(), options,
+                    options.tailCalls ? TailCalls.find(procedure, table) : Set.of());
+            selector.select(procedure, procedureEntry.parameterTypes);
+            new LinearScanAllocator(selector, procedureEntry.stackLayout).allocate();
+            emitProcedureEntry(instructions, procedure.name.toString(), procedureEntry.stackLayout);
+            for (Instruction instruction : selector.output.instructions) {
+                if (instruction instanceof Instruction.TailCall) {
+                    emitProcedureExit(instructions, procedureEntry.stackLayout, ((Instruction.TailCall) instruction).procedure);
+                } else {
+                    instructions.instructions.add(instruction);
+                }
+            }
+            emitProcedureExit(instructions, procedureEntry.stackLayout);
+        } else {
+            procedure.accept(new CodeGeneratorVisitor(table, instructions));
+        }
+        if (rewriter != null) rewriter.optimize(instructions);
+
+        StringWriter code = new StringWriter();
+        new CodePrinter(new PrintWriter(code)).emitInstructions(instructions);
+        return code.toString();
+    }
 }
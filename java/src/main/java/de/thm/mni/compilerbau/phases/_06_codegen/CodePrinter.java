@@ -9,60 +9,45 @@ class CodePrinter {
         this.outputFile = outputFile;
     }
 
-    void emitInstruction(String opcode, Register r1, Register r2, Register r3) {
-        outputFile.printf("\t%s\t%s,%s,%s\n", opcode, r1, r2, r3);
-    }
-
-    void emitInstruction(String opcode, Register r1, Register r2, int value) {
-        outputFile.printf("\t%s\t%s,%s,%d\n", opcode, r1, r2, value);
-    }
-
-    void emitInstruction(String opcode, Register r1, Register r2, String label) {
-        outputFile.printf("\t%s\t%s,%s,%s\n", opcode, r1, r2, label);
-    }
-
-    void emitInstruction(String opcode, Register r1) {
-        outputFile.printf("\t%s\t%s\n", opcode, r1);
-    }
-
-    void emitInstruction(String opcode, String label) {
-        outputFile.printf("\t%s\t%s\n", opcode, label);
-    }
-
-    void emitInstruction(String opcode, Register r1, Register r2, Register r3, String comment) {
-        outputFile.printf("\t%s\t%s,%s,%s\t\t; %s\n", opcode, r1, r2, r3, comment);
-    }
-
-    void emitInstruction(String opcode, Register r1, Register r2, int value, String comment) {
-        outputFile.printf("\t%s\t%s,%s,%d\t\t; %s\n", opcode, r1, r2, value, comment);
-    }
-
-    void emitInstruction(String opcode, Register r1, Register r2, String label, String comment) {
-        outputFile.printf("\t%s\t%s,%s,%s\t\t; %s\n", opcode, r1, r2, label, comment);
-    }
-
-    void emitInstruction(String opcode, Register r1, String comment) {
-        outputFile.printf("\t%s\t%s\t\t\t; %s\n", opcode, r1, comment);
-    }
-
-    void emitInstruction(String opcode, String label, String comment) {
-        outputFile.printf("\t%s\t%s\t\t; %s\n", opcode, label, comment);
-    }
-
-    void emitLabel(String label) {
-        outputFile.printf("%s:\n", label);
-    }
-
-    void emitImport(String label) {
-        outputFile.printf("\t.import\t%s\n", label);
-    }
-
-    void emitExport(String label) {
-        outputFile.printf("\t.export\t%s\n", label);
-    }
-
-    void emit(String str) {
-        outputFile.println(str);
+    /**
+     * Writes the instructions of a procedure as ECO32 assembler text. This is the only place instructions are
+     * formatted, so the generated code looks the same no matter which part of the code generator created it.
+     */
+    void emitInstructions(InstructionList code) {
+        StringBuilder text = new StringBuilder();
+        for (Instruction instruction : code.instructions) {
+            if (instruction instanceof Instruction.Operation) {
+                appendOperation(text, (Instruction.Operation) instruction);
+            } else if (instruction instanceof Instruction.Label) {
+                text.append(((Instruction.Label) instruction).name).append(":\n");
+            } else {
+                Instruction.Directive directive = (Instruction.Directive) instruction;
+                text.append("\t.").append(directive.name);
+                if (directive.argument != null) text.append('\t').append(directive.argument);
+                text.append('\n');
+            }
+        }
+        outputFile.print(text);
+    }
+
+    private static void appendOperation(StringBuilder text, Instruction.Operation operation) {
+        text.append('\t').append(operation.opcode.mnemonic).append('\t');
+        for (int i = 0; i < operation.operands.size(); i++) {
+            if (i > 0) text.append(',');
+            text.append(operation.operands.get(i));
+        }
+        if (operation.comment != null) {
+            boolean singleRegister = operation.operands.size() == 1 && operation.operand(0) instanceof Register;
+            text.append(singleRegister ? "\t\t\t; " : "\t\t; ").append(operation.comment);
+        }
+        text.append('\n');
+    }
+
+    /**
+     * Emits code that has already been formatted by another CodePrinter.
+     */
+    void emitCode(String code) {
+        outputFile.print(code);
     }
 }
 
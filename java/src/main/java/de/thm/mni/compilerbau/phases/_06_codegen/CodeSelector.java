@@ -0,0 +1,761 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import de.thm.mni.compilerbau.absyn.*;
+import de.thm.mni.compilerbau.absyn.visitor.DoNothingVisitor;
+import de.thm.mni.compilerbau.phases._04e_cfg.AddressTaken;
+import de.thm.mni.compilerbau.phases._05_varalloc.ImmediateOperands;
+import de.thm.mni.compilerbau.phases._05_varalloc.TailCalls;
+import de.thm.mni.compilerbau.table.Identifier;
+import de.thm.mni.compilerbau.table.ParameterType;
+import de.thm.mni.compilerbau.table.ProcedureEntry;
+import de.thm.mni.compilerbau.table.SymbolTable;
+import de.thm.mni.compilerbau.table.VariableEntry;
+import de.thm.mni.compilerbau.types.ArrayType;
+import de.thm.mni.compilerbau.types.PrimitiveType;
+import de.thm.mni.compilerbau.utils.Pair;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Selects the instructions of a procedure body for the linear scan register allocation (--linearScan).
+ * <p>
+ * Unlike the {@link CodeGenerator}, which assigns registers while walking the expressions, every computed value gets
+ * a new {@link VirtualRegister}. Value parameters and local variables of type int that are never passed as reference
+ * argument are kept in a virtual register of their own for the whole procedure, so their values stay in registers
+ * across statements. The {@link LinearScanAllocator} maps the virtual registers to machine registers afterwards.
+ * Only the body is selected, the prologue and epilogue depend on the registers used and are added after the allocation.
+ * <p>
+ * With --loopOptimization, while loops test their condition at the end, guarded by a test in front of the loop. Values
+ * that cannot change inside the loop are computed once in front of it: the pointers held by reference parameters, the
+ * addresses of variables in the stack frame if immediate operands are disabled, and the values of variables in memory
+ * that are not assigned inside the loop. The latter requires that the loop contains no call, which might change them
+ * through a reference parameter, and for reference parameters that no other reference parameter is assigned.
+ * <p>
+ * With --inductionVariables, the variables of a loop that are only ever changed by adding or subtracting constants are
+ * induction variables. The address of an array access whose indices are an induction variable plus a constant or do
+ * not change inside the loop is computed once in front of the loop into a pointer. The pointer is advanced right after
+ * every step of the induction variable, so it always holds the address of the element, and the access only checks its
+ * indices instead of multiplying and adding them.
+ * <p>
+ * With --tailCalls, the arguments of a call reusing the stack frame are all evaluated before any parameter is
+ * replaced. A recursive call copies them into the registers and slots of the parameters and jumps to the start of the
+ * body, any other call stores them into the argument area and is left as an {@link Instruction.TailCall}, which the
+ * {@link CodeGenerator} replaces by releasing the frame and jumping to the callee.
+ * <p>
+ * With --registerArguments, the parameters passed in registers are moved into their virtual registers or stored into
+ * their slots at the start of the procedure, and the arguments of calls are moved into these registers right after they
+ * are evaluated. No other code uses the registers $4 - $7.
+ */
+class CodeSelector extends DoNothingVisitor {
+    /**
+     * The address of a variable, given by a base register and a constant offset.
+     */
+    private static class Address {
+        final Operand base;
+        final int offset;
+
+        Address(Operand base, int offset) {
+            this.base = base;
+            this.offset = offset;
+        }
+    }
+
+    private final SymbolTable localTable;
+    private final String procedureName;
+    private final boolean immediateOperands;
+    private final boolean loopOptimization;
+    private final boolean inductionVariables;
+    private final Set<CallStatement> tailCalls;
+    private ProcedureDeclaration procedure;
+    private String bodyLabel;
+    final InstructionList output = new InstructionList();
+    /**
+     * The virtual registers holding variables, mapped to the offsets of the variables from the frame pointer. A
+     * variable is kept at this offset whenever its register has to be spilled.
+     */
+    final Map<VirtualRegister, Integer> variableSlots = new HashMap<>();
+    private final Map<String, VirtualRegister> variableRegisters = new HashMap<>();
+    /**
+     * The registers holding values computed in front of the enclosing loops, see {@link #invariantKey}.
+     */
+    private final Map<String, VirtualRegister> invariants = new HashMap<>();
+    /**
+     * The pointers to the elements accessed in the enclosing loops, by the printed array access.
+     */
+    private final Map<String, VirtualRegister> inductionPointers = new HashMap<>();
+    /**
+     * The pointers to advance whenever an induction variable is stepped, each with the bytes to add per step of 1.
+     */
+    private final Map<String, List<Pair<VirtualRegister, Integer>>> pointerStrides = new HashMap<>();
+    int virtualRegisterCount = 0;
+    private int labelCounter = 0;
+    /**
+     * The register holding the value of the expression visited last.
+     */
+    private Operand value;
+    /**
+     * The register the expression visited next should be computed into, or null if a new one may be used.
+     */
+    private VirtualRegister destination;
+
+    /**
+     * @param tailCalls The calls reusing the stack frame of the procedure, see {@link TailCalls}.
+     */
+    CodeSelector(SymbolTable localTable, String procedureName, CodeGenerator.Options options, Set<CallStatement> tailCalls) {
+        this.localTable = localTable;
+        this.procedureName = procedureName;
+        this.immediateOperands = options.immediateOperands;
+        this.loopOptimization = options.loopOptimization;
+        this.inductionVariables = options.inductionVariables;
+        this.tailCalls = tailCalls;
+    }
+
+    /**
+     * @param parameterTypes The parameters of the procedure, telling which are passed in registers.
+     */
+    void select(ProcedureDeclaration procedureDeclaration, List<ParameterType> parameterTypes) {
+        procedure = procedureDeclaration;
+        Set<String> addressTaken = AddressTaken.find(procedureDeclaration, localTable);
+        for (int i = 0; i < procedureDeclaration.parameters.size(); i++) {
+            Identifier name = procedureDeclaration.parameters.get(i).name;
+            VirtualRegister register = variableRegister(name, addressTaken);
+            Integer argumentRegister = parameterTypes.get(i).register;
+            if (argumentRegister != null && register != null) {
+                output.emitOperation(Opcode.ADD, register, new Register(argumentRegister), Register.ZERO);
+            } else if (argumentRegister != null) {
+                VariableEntry entry = (VariableEntry) localTable.lookup(name);
+                output.emitOperation(Opcode.STW, new Register(argumentRegister), Register.FRAME_POINTER, new Immediate(entry.offset));
+            } else if (register != null) {
+                output.emitOperation(Opcode.LDW, register, Register.FRAME_POINTER, new Immediate(variableSlots.get(register)));
+            }
+        }
+        procedureDeclaration.variables.forEach(variable -> variableRegister(variable.name, addressTaken));
+        if (tailCalls.stream().anyMatch(call -> call.procedureName.equals(procedureDeclaration.name))) {
+            bodyLabel = newLabel();
+            output.emitLabel(bodyLabel);
+        }
+        procedureDeclaration.body.forEach(statement -> statement.accept(this));
+    }
+
+    /**
+     * Creates the virtual register of a variable if it may be kept in a register.
+     *
+     * @return The register of the variable, or null if it lives in memory.
+     */
+    private VirtualRegister variableRegister(Identifier name, Set<String> addressTaken) {
+        VariableEntry entry = (VariableEntry) localTable.lookup(name);
+        if (entry.type != PrimitiveType.intType || entry.isReference || addressTaken.contains(name.toString())) return null;
+        VirtualRegister register = newRegister();
+        variableRegisters.put(name.toString(), register);
+        variableSlots.put(register, entry.offset);
+        return register;
+    }
+
+    /**
+     * Collects the variables used and assigned inside a loop, the array accesses and whether it contains a call.
+     */
+    private static class LoopVisitor extends DoNothingVisitor {
+        final Set<String> used = new LinkedHashSet<>();
+        final Set<String> assigned = new HashSet<>();
+        /**
+         * The variables only changed by adding or subtracting constants.
+         */
+        final Set<String> stepped = new HashSet<>();
+        final Set<String> otherwiseAssigned = new HashSet<>();
+        /**
+         * The accesses to array elements, without the accesses to inner arrays they contain.
+         */
+        final List<ArrayAccess> accesses = new ArrayList<>();
+        boolean containsCall = false;
+
+        public void visit(NamedVariable namedVariable) {
+            used.add(namedVariable.name.toString());
+        }
+
+        public void visit(ArrayAccess arrayAccess) {
+            accesses.add(arrayAccess);
+            Variable array = arrayAccess;
+            while (array instanceof ArrayAccess) {
+                ((ArrayAccess) array).index.accept(this);
+                array = ((ArrayAccess) array).array;
+            }
+            array.accept(this);
+        }
+
+        public void visit(VariableExpression variableExpression) {
+            variableExpression.variable.accept(this);
+        }
+
+        public void visit(BinaryExpression binaryExpression) {
+            binaryExpression.leftOperand.accept(this);
+            binaryExpression.rightOperand.accept(this);
+        }
+
+        public void visit(AssignStatement assignStatement) {
+            assignStatement.target.accept(this);
+            assignStatement.value.accept(this);
+            Variable target = assignStatement.target;
+            while (target instanceof ArrayAccess) target = ((ArrayAccess) target).array;
+            String name = ((NamedVariable) target).name.toString();
+            assigned.add(name);
+            if (inductionStep(assignStatement) != null) stepped.add(name);
+            else otherwiseAssigned.add(name);
+        }
+
+        public void visit(CallStatement callStatement) {
+            containsCall = true;
+            callStatement.arguments.forEach(argument -> argument.accept(this));
+        }
+
+        public void visit(CompoundStatement compoundStatement) {
+            compoundStatement.statements.forEach(statement -> statement.accept(this));
+        }
+
+        public void visit(IfStatement ifStatement) {
+            ifStatement.condition.accept(this);
+            ifStatement.thenPart.accept(this);
+            ifStatement.elsePart.accept(this);
+        }
+
+        public void visit(WhileStatement whileStatement) {
+            whileStatement.condition.accept(this);
+            whileStatement.body.accept(this);
+        }
+    }
+
+    /**
+     * Computes the values that do not change inside the loop into new registers.
+     *
+     * @return The keys of the values computed, which are valid until the end of the loop.
+     */
+    private List<String> hoistInvariants(LoopVisitor loop) {
+        boolean referenceAssigned = loop.assigned.stream()
+                .anyMatch(name -> ((VariableEntry) localTable.lookup(new Identifier(name))).isReference);
+
+        List<String> hoisted = new ArrayList<>();
+        for (String name : loop.used) {
+            VariableEntry entry = (VariableEntry) localTable.lookup(new Identifier(name));
+            if (variableRegisters.containsKey(name)) continue;
+            boolean unchanged = !loop.containsCall && !loop.assigned.contains(name)
+                    && entry.type == PrimitiveType.intType && !(entry.isReference && referenceAssigned);
+
+            if (entry.isReference) {
+                VirtualRegister pointer = invariants.get(invariantKey("pointer", name));
+                if (pointer == null) {
+                    pointer = hoist(hoisted, invariantKey("pointer", name));
+                    output.emitOperation(Opcode.LDW, pointer, Register.FRAME_POINTER, new Immediate(entry.offset));
+                }
+                if (unchanged && !invariants.containsKey(invariantKey("value", name))) {
+                    output.emitOperation(Opcode.LDW, hoist(hoisted, invariantKey("value", name)), pointer, new Immediate(0));
+                }
+            } else if (unchanged) {
+                if (invariants.containsKey(invariantKey("value", name))) continue;
+                output.emitOperation(Opcode.LDW, hoist(hoisted, invariantKey("value", name)), Register.FRAME_POINTER, new Immediate(entry.offset));
+            } else if (!immediateOperands && !invariants.containsKey(invariantKey("frame", name))) {
+                output.emitOperation(Opcode.ADD, hoist(hoisted, invariantKey("frame", name)), Register.FRAME_POINTER, new Immediate(entry.offset));
+            }
+        }
+        return hoisted;
+    }
+
+    private VirtualRegister hoist(List<String> hoisted, String key) {
+        VirtualRegister register = newRegister();
+        invariants.put(key, register);
+        hoisted.add(key);
+        return register;
+    }
+
+    /**
+     * @param kind Either "pointer" for the pointer held by a reference parameter, "frame" for the address of a
+     *             variable in the stack frame or "value" for the value of a variable in memory.
+     */
+    private static String invariantKey(String kind, String name) {
+        return kind + " " + name;
+    }
+
+    /**
+     * @return The constant added to the assigned variable if the assignment has the form x := x + c, x := c + x or
+     * x := x - c, null otherwise.
+     */
+    private static Integer inductionStep(AssignStatement assignStatement) {
+        if (!(assignStatement.target instanceof NamedVariable) || !(assignStatement.value instanceof BinaryExpression)) return null;
+        String name = ((NamedVariable) assignStatement.target).name.toString();
+        BinaryExpression value = (BinaryExpression) assignStatement.value;
+        if (value.operator == BinaryExpression.Operator.ADD) {
+            if (isVariable(value.leftOperand, name) && value.rightOperand instanceof IntLiteral) return ((IntLiteral) value.rightOperand).value;
+            if (value.leftOperand instanceof IntLiteral && isVariable(value.rightOperand, name)) return ((IntLiteral) value.leftOperand).value;
+        } else if (value.operator == BinaryExpression.Operator.SUB) {
+            if (isVariable(value.leftOperand, name) && value.rightOperand instanceof IntLiteral) return -((IntLiteral) value.rightOperand).value;
+        }
+        return null;
+    }
+
+    private static boolean isVariable(Expression expression, String name) {
+        return expression instanceof VariableExpression && ((VariableExpression) expression).variable instanceof NamedVariable
+                && ((NamedVariable) ((VariableExpression) expression).variable).name.toString().equals(name);
+    }
+
+    /**
+     * Computes pointers to the array elements addressed by the induction variables of the loop.
+     *
+     * @return The printed accesses the pointers are computed for, which are valid until the end of the loop.
+     */
+    private List<String> reduceInductionVariables(LoopVisitor loop) {
+        Set<String> loopVariables = new HashSet<>(loop.stepped);
+        loopVariables.removeAll(loop.otherwiseAssigned);
+        loopVariables.retainAll(variableRegisters.keySet());
+
+        List<String> reduced = new ArrayList<>();
+        if (loopVariables.isEmpty()) return reduced;
+        for (ArrayAccess access : loop.accesses) {
+            String key = access.toString();
+            if (inductionPointers.containsKey(key)) continue;
+            Map<String, Integer> strides = inductionStrides(access, loopVariables, loop.assigned);
+            if (strides == null || strides.isEmpty()) continue;
+
+            Address address = evaluateOffsetAddress(access, false);
+            VirtualRegister pointer = newRegister();
+            output.emitOperation(Opcode.ADD, pointer, address.base, new Immediate(address.offset));
+            inductionPointers.put(key, pointer);
+            reduced.add(key);
+            strides.forEach((name, stride) -> pointerStrides.computeIfAbsent(name, n -> new ArrayList<>()).add(new Pair<>(pointer, stride)));
+        }
+        return reduced;
+    }
+
+    /**
+     * @return The bytes the address of the access changes by for every induction variable it depends on, or null if
+     * any index neither depends on an induction variable nor is unchanged inside the loop.
+     */
+    private Map<String, Integer> inductionStrides(ArrayAccess access, Set<String> loopVariables, Set<String> assigned) {
+        Map<String, Integer> strides = new HashMap<>();
+        Variable variable = access;
+        while (variable instanceof ArrayAccess) {
+            ArrayAccess arrayAccess = (ArrayAccess) variable;
+            int elementSize = ((ArrayType) arrayAccess.array.dataType).baseType.byteSize;
+            String loopVariable = inductionVariable(arrayAccess.index, loopVariables);
+            if (loopVariable != null) strides.merge(loopVariable, elementSize, Integer::sum);
+            else if (!isInvariant(arrayAccess.index, assigned)) return null;
+            variable = arrayAccess.array;
+        }
+        return strides;
+    }
+
+    /**
+     * @return The induction variable if the index has the form i, i + c, c + i or i - c, null otherwise.
+     */
+    private static String inductionVariable(Expression index, Set<String> loopVariables) {
+        if (index instanceof BinaryExpression) {
+            BinaryExpression binaryExpression = (BinaryExpression) index;
+            if (binaryExpression.operator == BinaryExpression.Operator.ADD && binaryExpression.leftOperand instanceof IntLiteral) {
+                index = binaryExpression.rightOperand;
+            } else if ((binaryExpression.operator == BinaryExpression.Operator.ADD || binaryExpression.operator == BinaryExpression.Operator.SUB)
+                    && binaryExpression.rightOperand instanceof IntLiteral) {
+                index = binaryExpression.leftOperand;
+            }
+        }
+        if (!(index instanceof VariableExpression) || !(((VariableExpression) index).variable instanceof NamedVariable)) return null;
+        String name = ((NamedVariable) ((VariableExpression) index).variable).name.toString();
+        return loopVariables.contains(name) ? name : null;
+    }
+
+    /**
+     * @return true if the expression only reads variables held in registers or in front of the loop that are not
+     * assigned inside it.
+     */
+    private boolean isInvariant(Expression expression, Set<String> assigned) {
+        if (expression instanceof IntLiteral) return true;
+        if (expression instanceof BinaryExpression) {
+            return isInvariant(((BinaryExpression) expression).leftOperand, assigned)
+                    && isInvariant(((BinaryExpression) expression).rightOperand, assigned);
+        }
+        if (!(expression instanceof VariableExpression) || !(((VariableExpression) expression).variable instanceof NamedVariable)) return false;
+        String name = ((NamedVariable) ((VariableExpression) expression).variable).name.toString();
+        return !assigned.contains(name) && (variableRegisters.containsKey(name) || invariants.containsKey(invariantKey("value", name)));
+    }
+
+    /**
+     * Advances the pointers depending on the variable stepped by the assignment.
+     */
+    private void advanceInductionPointers(AssignStatement assignStatement) {
+        List<Pair<VirtualRegister, Integer>> pointers = pointerStrides.get(((NamedVariable) assignStatement.target).name.toString());
+        if (pointers == null || pointers.isEmpty()) return;
+        int step = inductionStep(assignStatement);
+        pointers.forEach(pointer -> output.emitOperation(Opcode.ADD, pointer.first, pointer.first, new Immediate(step * pointer.second)));
+    }
+
+    VirtualRegister newRegister() {
+        return new VirtualRegister(virtualRegisterCount++);
+    }
+
+    private String newLabel() {
+        return procedureName + ".L" + labelCounter++;
+    }
+
+    /**
+     * Evaluates the expression.
+     *
+     * @param destination The register the result should be computed into, or null if any register may hold it.
+     * @return The register holding the result of the expression.
+     */
+    private Operand evaluate(Expression expression, VirtualRegister destination) {
+        this.destination = destination;
+        expression.accept(this);
+        return value;
+    }
+
+    /**
+     * @return The register the result of the expression currently visited is computed into.
+     */
+    private VirtualRegister target() {
+        VirtualRegister target = destination != null ? destination : newRegister();
+        destination = null;
+        return target;
+    }
+
+    /**
+     * Makes a register holding the result of a leaf expression the result, copying it into the destination if needed.
+     */
+    private void result(Operand register) {
+        if (destination != null) {
+            output.emitOperation(Opcode.ADD, destination, register, Register.ZERO);
+            register = destination;
+            destination = null;
+        }
+        value = register;
+    }
+
+    /**
+     * Evaluates the address of a variable living in memory. Without immediate operands, the address is always
+     * computed into a register.
+     */
+    private Address evaluateAddress(Variable variable) {
+        Address address = evaluateOffsetAddress(variable);
+        if (immediateOperands || address.base != Register.FRAME_POINTER && address.offset == 0) return address;
+        VirtualRegister base = newRegister();
+        output.emitOperation(Opcode.ADD, base, address.base, new Immediate(address.offset));
+        return new Address(base, 0);
+    }
+
+    private Address evaluateOffsetAddress(Variable variable) {
+        return evaluateOffsetAddress(variable, true);
+    }
+
+    /**
+     * @param checked Whether the indices are checked, which may be skipped if the element is not accessed yet.
+     */
+    private Address evaluateOffsetAddress(Variable variable, boolean checked) {
+        if (variable instanceof NamedVariable) {
+            VariableEntry variableEntry = (VariableEntry) localTable.lookup(((NamedVariable) variable).name);
+            VirtualRegister invariant = invariants.get(invariantKey(variableEntry.isReference ? "pointer" : "frame",
+                    ((NamedVariable) variable).name.toString()));
+            if (invariant != null) return new Address(invariant, 0);
+            if (!variableEntry.isReference) return new Address(Register.FRAME_POINTER, variableEntry.offset);
+
+            VirtualRegister address = newRegister();
+            output.emitOperation(Opcode.LDW, address, Register.FRAME_POINTER, new Immediate(variableEntry.offset));
+            return new Address(address, 0);
+        }
+
+        ArrayAccess arrayAccess = (ArrayAccess) variable;
+        ArrayType arrayType = (ArrayType) arrayAccess.array.dataType;
+        VirtualRegister pointer = inductionPointers.isEmpty() ? null : inductionPointers.get(arrayAccess.toString());
+        if (pointer != null) {
+            if (checked) checkIndices(arrayAccess);
+            return new Address(pointer, 0);
+        }
+
+        Address array = evaluateOffsetAddress(arrayAccess.array, checked);
+        Integer constantIndex = immediateOperands ? ImmediateOperands.constantIndex(arrayAccess) : null;
+        if (constantIndex != null) return new Address(array.base, array.offset + constantIndex * arrayType.baseType.byteSize);
+
+        Operand index = evaluate(arrayAccess.index, null);
+        if (checked && arrayAccess.indexChecked) checkIndex(index, arrayType);
+        VirtualRegister offset = newRegister();
+        output.emitOperation(Opcode.MUL, offset, index, new Immediate(arrayType.baseType.byteSize));
+        VirtualRegister address = newRegister();
+        output.emitOperation(Opcode.ADD, address, array.base, offset);
+        return new Address(address, array.offset);
+    }
+
+    private void checkIndex(Operand index, ArrayType arrayType) {
+        VirtualRegister size = newRegister();
+        output.emitOperation(Opcode.ADD, size, Register.ZERO, new Immediate(arrayType.arraySize));
+        output.emitOperation(Opcode.BGEU, index, size, new LabelReference("_indexError"));
+    }
+
+    /**
+     * Checks all indices of an access whose address is already known, from the outermost array inwards.
+     */
+    private void checkIndices(ArrayAccess arrayAccess) {
+        if (arrayAccess.array instanceof ArrayAccess) checkIndices((ArrayAccess) arrayAccess.array);
+        if (!arrayAccess.indexChecked || ImmediateOperands.constantIndex(arrayAccess) != null) return;
+        checkIndex(evaluate(arrayAccess.index, null), (ArrayType) arrayAccess.array.dataType);
+    }
+
+    /**
+     * @return The register holding the variable for the whole procedure, or null if it lives in memory.
+     */
+    private VirtualRegister variableRegister(Variable variable) {
+        if (!(variable instanceof NamedVariable)) return null;
+        return variableRegisters.get(((NamedVariable) variable).name.toString());
+    }
+
+    /**
+     * @return The register holding the value of a variable in memory in front of the enclosing loops, or null.
+     */
+    private VirtualRegister invariantValue(Variable variable) {
+        if (!(variable instanceof NamedVariable)) return null;
+        return invariants.get(invariantKey("value", ((NamedVariable) variable).name.toString()));
+    }
+
+    public void visit(IntLiteral intLiteral) {
+        if (intLiteral.value == 0 && immediateOperands) {
+            result(Register.ZERO);
+            return;
+        }
+        VirtualRegister target = target();
+        output.emitOperation(Opcode.ADD, target, Register.ZERO, new Immediate(intLiteral.value));
+        value = target;
+    }
+
+    public void visit(VariableExpression variableExpression) {
+        VirtualRegister variableRegister = variableRegister(variableExpression.variable);
+        if (variableRegister == null) variableRegister = invariantValue(variableExpression.variable);
+        if (variableRegister != null) {
+            result(variableRegister);
+            return;
+        }
+
+        VirtualRegister target = target();
+        Address address = evaluateAddress(variableExpression.variable);
+        output.emitOperation(Opcode.LDW, target, address.base, new Immediate(address.offset));
+        value = target;
+    }
+
+    public void visit(BinaryExpression binaryExpression) {
+        VirtualRegister target = target();
+        Opcode opcode = arithmeticOpcode(binaryExpression.operator);
+        IntLiteral immediate = immediateOperands ? ImmediateOperands.immediateOperand(binaryExpression) : null;
+        if (immediate != null) {
+            Operand operand = evaluate(ImmediateOperands.registerOperand(binaryExpression), null);
+            output.emitOperation(opcode, target, operand, new Immediate(immediate.value));
+        } else {
+            Operand left = evaluate(binaryExpression.leftOperand, null);
+            Operand right = evaluate(binaryExpression.rightOperand, null);
+            output.emitOperation(opcode, target, left, right);
+        }
+        value = target;
+    }
+
+    private static Opcode arithmeticOpcode(BinaryExpression.Operator operator) {
+        switch (operator) {
+            case ADD:
+                return Opcode.ADD;
+            case SUB:
+                return Opcode.SUB;
+            case MUL:
+                return Opcode.MUL;
+            case DIV:
+                return Opcode.DIV;
+            default:
+                throw new IllegalArgumentException("Not an arithmetic operator: " + operator);
+        }
+    }
+
+    /**
+     * Branches to the label if the condition does not hold.
+     */
+    private void branchUnless(Expression condition, String label) {
+        BinaryExpression comparison = (BinaryExpression) condition;
+        Operand left = evaluate(comparison.leftOperand, null);
+        Operand right = evaluate(comparison.rightOperand, null);
+        output.emitOperation(negatedBranch(comparison.operator), left, right, new LabelReference(label));
+    }
+
+    /**
+     * Branches to the label if the condition holds.
+     */
+    private void branchIf(Expression condition, String label) {
+        BinaryExpression comparison = (BinaryExpression) condition;
+        Operand left = evaluate(comparison.leftOperand, null);
+        Operand right = evaluate(comparison.rightOperand, null);
+        output.emitOperation(branch(comparison.operator), left, right, new LabelReference(label));
+    }
+
+    private static Opcode branch(BinaryExpression.Operator operator) {
+        switch (operator) {
+            case EQU:
+                return Opcode.BEQ;
+            case NEQ:
+                return Opcode.BNE;
+            case LST:
+                return Opcode.BLT;
+            case LSE:
+                return Opcode.BLE;
+            case GRT:
+                return Opcode.BGT;
+            case GRE:
+                return Opcode.BGE;
+            default:
+                throw new IllegalArgumentException("Not a comparison operator: " + operator);
+        }
+    }
+
+    private static Opcode negatedBranch(BinaryExpression.Operator operator) {
+        switch (operator) {
+            case EQU:
+                return Opcode.BNE;
+            case NEQ:
+                return Opcode.BEQ;
+            case LST:
+                return Opcode.BGE;
+            case LSE:
+                return Opcode.BGT;
+            case GRT:
+                return Opcode.BLE;
+            case GRE:
+                return Opcode.BLT;
+            default:
+                throw new IllegalArgumentException("Not a comparison operator: " + operator);
+        }
+    }
+
+    public void visit(AssignStatement assignStatement) {
+        VirtualRegister targetRegister = variableRegister(assignStatement.target);
+        if (targetRegister != null) {
+            evaluate(assignStatement.value, targetRegister);
+            advanceInductionPointers(assignStatement);
+            return;
+        }
+
+        Address target = evaluateAddress(assignStatement.target);
+        Operand value = evaluate(assignStatement.value, null);
+        output.emitOperation(Opcode.STW, value, target.base, new Immediate(target.offset));
+    }
+
+    public void visit(CallStatement callStatement) {
+        ProcedureEntry procedureEntry = (ProcedureEntry) localTable.lookup(callStatement.procedureName);
+        if (tailCalls.contains(callStatement)) {
+            tailCall(callStatement, procedureEntry);
+            return;
+        }
+        for (int i = 0; i < callStatement.arguments.size(); i++) {
+            Operand argument = evaluateArgument(callStatement, procedureEntry, i, null);
+            passArgument(argument, procedureEntry.parameterTypes.get(i), Register.STACK_POINTER);
+        }
+        output.emitOperation(Opcode.JAL, new LabelReference(callStatement.procedureName.toString()));
+    }
+
+    /**
+     * @param destination The register the value of a value argument should be computed into, or null if any
+     *                    register may hold it.
+     */
+    private Operand evaluateArgument(CallStatement callStatement, ProcedureEntry procedureEntry, int index, VirtualRegister destination) {
+        if (!procedureEntry.parameterTypes.get(index).isReference) return evaluate(callStatement.arguments.get(index), destination);
+
+        Address address = evaluateOffsetAddress(((VariableExpression) callStatement.arguments.get(index)).variable);
+        if (address.base != Register.FRAME_POINTER && address.offset == 0) return address.base;
+        VirtualRegister register = newRegister();
+        output.emitOperation(Opcode.ADD, register, address.base, new Immediate(address.offset));
+        return register;
+    }
+
+    /**
+     * Moves the argument into the register it is passed in or stores it at its offset from the base register.
+     */
+    private void passArgument(Operand argument, ParameterType parameterType, Register base) {
+        if (parameterType.register != null) {
+            output.emitOperation(Opcode.ADD, new Register(parameterType.register), argument, Register.ZERO);
+        } else {
+            output.emitOperation(Opcode.STW, argument, base, new Immediate(parameterType.offset));
+        }
+    }
+
+    private void tailCall(CallStatement callStatement, ProcedureEntry procedureEntry) {
+        boolean recursive = callStatement.procedureName.equals(procedure.name);
+        List<Operand> arguments = new ArrayList<>();
+        for (int i = 0; i < callStatement.arguments.size(); i++) {
+            // The values of parameters are copied, as the parameter may be replaced before the argument is used
+            boolean skipped = recursive && TailCalls.passesThrough(callStatement, procedure, i);
+            arguments.add(skipped ? null : evaluateArgument(callStatement, procedureEntry, i, newRegister()));
+        }
+        for (int i = 0; i < arguments.size(); i++) {
+            if (arguments.get(i) == null) continue;
+            if (!recursive) {
+                passArgument(arguments.get(i), procedureEntry.parameterTypes.get(i), Register.FRAME_POINTER);
+                continue;
+            }
+            // The start of the body lies behind the moves of the parameters passed in registers
+            Identifier name = procedure.parameters.get(i).name;
+            VirtualRegister parameter = variableRegisters.get(name.toString());
+            if (parameter != null) {
+                output.emitOperation(Opcode.ADD, parameter, arguments.get(i), Register.ZERO);
+            } else {
+                VariableEntry entry = (VariableEntry) localTable.lookup(name);
+                output.emitOperation(Opcode.STW, arguments.get(i), Register.FRAME_POINTER, new Immediate(entry.offset));
+            }
+        }
+        if (recursive) {
+            output.emitOperation(Opcode.J, new LabelReference(bodyLabel));
+        } else {
+            output.emitTailCall(callStatement.procedureName.toString());
+        }
+    }
+
+    public void visit(CompoundStatement compoundStatement) {
+        compoundStatement.statements.forEach(statement -> statement.accept(this));
+    }
+
+    public void visit(IfStatement ifStatement) {
+        String elseLabel = newLabel();
+        if (ifStatement.elsePart instanceof EmptyStatement) {
+            branchUnless(ifStatement.condition, elseLabel);
+            ifStatement.thenPart.accept(this);
+            output.emitLabel(elseLabel);
+            return;
+        }
+
+        String endLabel = newLabel();
+        branchUnless(ifStatement.condition, elseLabel);
+        ifStatement.thenPart.accept(this);
+        output.emitOperation(Opcode.J, new LabelReference(endLabel));
+        output.emitLabel(elseLabel);
+        ifStatement.elsePart.accept(this);
+        output.emitLabel(endLabel);
+    }
+
+    public void visit(WhileStatement whileStatement) {
+        String startLabel = newLabel();
+        String endLabel = newLabel();
+        LoopVisitor loop = new LoopVisitor();
+        whileStatement.accept(loop);
+        List<String> hoisted = List.of();
+        if (loopOptimization) {
+            branchUnless(whileStatement.condition, endLabel);
+            hoisted = hoistInvariants(loop);
+        }
+        List<String> reduced = inductionVariables ? reduceInductionVariables(loop) : List.of();
+        output.emitLabel(startLabel);
+        if (loopOptimization) {
+            whileStatement.body.accept(this);
+            branchIf(whileStatement.condition, startLabel);
+        } else {
+            branchUnless(whileStatement.condition, endLabel);
+            whileStatement.body.accept(this);
+            output.emitOperation(Opcode.J, new LabelReference(startLabel));
+        }
+        output.emitLabel(endLabel);
+        hoisted.forEach(invariants::remove);
+
+        Set<VirtualRegister> pointers = new HashSet<>();
+        reduced.forEach(key -> pointers.add(inductionPointers.remove(key)));
+        pointerStrides.values().forEach(strides -> strides.removeIf(stride -> pointers.contains(stride.first)));
+    }
+}
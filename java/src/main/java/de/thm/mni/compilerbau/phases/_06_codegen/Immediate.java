@@ -0,0 +1,34 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+/**
+ * A constant value used as operand of an instruction.
+ */
+class Immediate implements Operand {
+    final int value;
+
+    Immediate(int value) {
+        this.value = value;
+    }
+
+    /**
+     * @return true if the value fits into the signed 16 bit immediate field of an instruction.
+     */
+    static boolean isSigned16(long value) {
+        return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Immediate && ((Immediate) o).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+        return Integer.toString(value);
+    }
+}
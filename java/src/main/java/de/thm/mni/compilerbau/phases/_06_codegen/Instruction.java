@@ -0,0 +1,100 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import java.util.List;
+
+/**
+ * A single line of the generated code of a procedure.
+ * Instructions are collected in an {@link InstructionList} and turned into assembler text by the {@link CodePrinter}.
+ */
+abstract class Instruction {
+    private Instruction() {
+    }
+
+    /**
+     * An ECO32 instruction with its operands in assembler order, e.g. destination register first.
+     */
+    static class Operation extends Instruction {
+        final Opcode opcode;
+        final List<Operand> operands;
+        final String comment;
+
+        /**
+         * @param comment The comment printed next to the instruction, or null if there is none.
+         */
+        Operation(Opcode opcode, List<Operand> operands, String comment) {
+            this.opcode = opcode;
+            this.operands = List.copyOf(operands);
+            this.comment = comment;
+        }
+
+        Operand operand(int index) {
+            return operands.get(index);
+        }
+
+        /**
+         * @return The registers written by this instruction, as a bit mask indexed by register number.
+         */
+        int definedRegisters() {
+            if (opcode == Opcode.JAL) return Register.mask(Register.RETURN_ADDRESS);
+            if (!opcode.writesFirstOperand()) return 0;
+            return Register.mask((Register) operand(0));
+        }
+
+        /**
+         * @return The registers read by this instruction, as a bit mask indexed by register number.
+         */
+        int usedRegisters() {
+            if (opcode == Opcode.JAL) return Register.mask(Register.STACK_POINTER) | Register.ARGUMENT_REGISTERS;
+            int used = 0;
+            for (int i = opcode.writesFirstOperand() ? 1 : 0; i < operands.size(); i++) {
+                if (operand(i) instanceof Register) used |= Register.mask((Register) operand(i));
+            }
+            return used;
+        }
+
+        /**
+         * @return The label a jump or branch continues at, or null if this is no jump to a label.
+         */
+        String target() {
+            Operand last = operands.get(operands.size() - 1);
+            return last instanceof LabelReference && opcode != Opcode.JAL ? ((LabelReference) last).label : null;
+        }
+    }
+
+    /**
+     * The definition of a label at the current position of the code.
+     */
+    static class Label extends Instruction {
+        final String name;
+
+        Label(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * The place where a call in tail position leaves the procedure and continues in the called procedure
+     * (--tailCalls). The code selector emits it before the stack layout is complete, the code generator replaces it by
+     * the procedure exit ending with a jump to the called procedure.
+     */
+    static class TailCall extends Instruction {
+        final String procedure;
+
+        TailCall(String procedure) {
+            this.procedure = procedure;
+        }
+    }
+
+    /**
+     * An assembler directive like {@code .export}, with an argument or without one like {@code .code}.
+     */
+    static class Directive extends Instruction {
+        final String name;
+        final String argument;
+
+        Directive(String name, String argument) {
+            this.name = name;
+            this.argument = argument;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The code of a single procedure as a list of {@link Instruction}s.
+ * <p>
+ * The code generator appends to this list while visiting a procedure. Afterwards the list can be analysed and
+ * rewritten before the {@link CodePrinter} turns it into assembler text.
+ */
+class InstructionList {
+    final List<Instruction> instructions = new ArrayList<>();
+
+    void emitInstruction(Opcode opcode, Register r1, Register r2, Register r3) {
+        emitInstruction(opcode, r1, r2, r3, null);
+    }
+
+    void emitInstruction(Opcode opcode, Register r1, Register r2, int value) {
+        emitInstruction(opcode, r1, r2, value, null);
+    }
+
+    void emitInstruction(Opcode opcode, Register r1, Register r2, String label) {
+        emit(opcode, null, r1, r2, new LabelReference(label));
+    }
+
+    void emitInstruction(Opcode opcode, Register r1) {
+        emitInstruction(opcode, r1, null);
+    }
+
+    void emitInstruction(Opcode opcode, String label) {
+        emitInstruction(opcode, label, null);
+    }
+
+    void emitInstruction(Opcode opcode, Register r1, Register r2, Register r3, String comment) {
+        emit(opcode, comment, r1, r2, r3);
+    }
+
+    void emitInstruction(Opcode opcode, Register r1, Register r2, int value, String comment) {
+        emit(opcode, comment, r1, r2, new Immediate(value));
+    }
+
+    void emitInstruction(Opcode opcode, Register r1, String comment) {
+        emit(opcode, comment, r1);
+    }
+
+    void emitInstruction(Opcode opcode, String label, String comment) {
+        emit(opcode, comment, new LabelReference(label));
+    }
+
+    /**
+     * Emits an instruction with arbitrary operands, e.g. {@link VirtualRegister}s.
+     */
+    void emitOperation(Opcode opcode, Operand... operands) {
+        emit(opcode, null, operands);
+    }
+
+    void emitLabel(String label) {
+        instructions.add(new Instruction.Label(label));
+    }
+
+    void emitTailCall(String procedure) {
+        instructions.add(new Instruction.TailCall(procedure));
+    }
+
+    void emitExport(String label) {
+        instructions.add(new Instruction.Directive("export", label));
+    }
+
+    void emitImport(String label) {
+        instructions.add(new Instruction.Directive("import", label));
+    }
+
+    /**
+     * @param argument The argument of the directive, or null if it has none.
+     */
+    void emitDirective(String name, String argument) {
+        instructions.add(new Instruction.Directive(name, argument));
+    }
+
+    private void emit(Opcode opcode, String comment, Operand... operands) {
+        instructions.add(new Instruction.Operation(opcode, List.of(operands), comment));
+    }
+}
@@ -0,0 +1,28 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+/**
+ * A label used as operand of a jump or branch instruction.
+ * The label is either defined in the same procedure, the name of a procedure or a runtime library symbol.
+ */
+class LabelReference implements Operand {
+    final String label;
+
+    LabelReference(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof LabelReference && ((LabelReference) o).label.equals(label);
+    }
+
+    @Override
+    public int hashCode() {
+        return label.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,338 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import de.thm.mni.compilerbau.phases._05_varalloc.StackLayout;
+import de.thm.mni.compilerbau.phases._05_varalloc.VarAllocator;
+import de.thm.mni.compilerbau.utils.SplError;
+
+import java.util.*;
+
+/**
+ * Maps the {@link VirtualRegister}s of the code selected by the {@link CodeSelector} to the registers $8 - $23 with
+ * the linear scan algorithm by Poletto and Sarkar (--linearScan).
+ * <p>
+ * The live interval of a virtual register reaches from the first to the last instruction mentioning it. The interval
+ * of a variable is also extended over every loop the variable is used in, as its value may flow around the loop. The
+ * same holds for any register computed in front of a loop and used inside it.
+ * Loops are found as the ranges between a label and a backward jump to it.
+ * <p>
+ * The intervals are visited in the order of their start. An interval containing a call gets one of the registers
+ * $16 - $23, which every procedure preserves, other intervals prefer the registers $8 - $15. If no register is left,
+ * the interval that is cheapest to spill is spilled. The spill cost is the number of instructions mentioning the
+ * register, each one weighted by an estimate of how often it is executed: 10 times for every loop around it, half as
+ * often for every branch it lies in. An interval containing a call is spilled right away if it is cheaper to keep it in
+ * memory than to save and restore another one of the registers $16 - $23.
+ * <p>
+ * A spilled register is loaded before every use and stored after every definition. As this introduces new virtual
+ * registers, which are never spilled again, the allocation is repeated until nothing has to be spilled.
+ * <p>
+ * The spill area and the saved registers of the stack layout are only known after the allocation and are set by it.
+ */
+class LinearScanAllocator {
+    private static final int FIRST_CALLEE_SAVED_REGISTER = 16;
+    /**
+     * The cost of saving and restoring a register in the prologue and epilogue of the procedure.
+     */
+    private static final double SAVE_COST = 2;
+
+    private static class Interval {
+        final VirtualRegister register;
+        int start = Integer.MAX_VALUE;
+        int end = -1;
+        double spillCost = 0;
+        /**
+         * The part of the spill cost caused by loads of the register from its own slot, which are not needed anymore
+         * if the register is spilled.
+         */
+        double slotLoadCost = 0;
+        boolean containsCall = false;
+        Register assigned = null;
+
+        Interval(VirtualRegister register) {
+            this.register = register;
+        }
+    }
+
+    private final List<Instruction> code;
+    private final StackLayout stackLayout;
+    /**
+     * The stack frame slot every spilled register is kept in. Variables are kept in their own slots.
+     */
+    private final Map<VirtualRegister, Integer> slots;
+    private final Set<VirtualRegister> variables;
+    private final Set<VirtualRegister> unspillable = new HashSet<>();
+    private int virtualRegisterCount;
+    private int spillSlots = 0;
+
+    LinearScanAllocator(CodeSelector selector, StackLayout stackLayout) {
+        this.code = selector.output.instructions;
+        this.stackLayout = stackLayout;
+        this.slots = new HashMap<>(selector.variableSlots);
+        this.variables = selector.variableSlots.keySet();
+        this.virtualRegisterCount = selector.virtualRegisterCount;
+    }
+
+    void allocate() {
+        while (true) {
+            List<Interval> intervals = computeIntervals();
+            Set<VirtualRegister> spilled = assignRegisters(intervals);
+            if (spilled.isEmpty()) {
+                replaceRegisters(intervals);
+                break;
+            }
+            insertSpillCode(spilled);
+        }
+
+        Set<Integer> savedRegisters = new TreeSet<>();
+        for (Instruction instruction : code) {
+            if (!(instruction instanceof Instruction.Operation)) continue;
+            Instruction.Operation operation = (Instruction.Operation) instruction;
+            if (operation.opcode.writesFirstOperand() && ((Register) operation.operand(0)).number >= FIRST_CALLEE_SAVED_REGISTER) {
+                savedRegisters.add(((Register) operation.operand(0)).number);
+            }
+        }
+        stackLayout.spillAreaSize = spillSlots * VarAllocator.REGISTER_BYTESIZE;
+        stackLayout.savedRegisters = List.copyOf(savedRegisters);
+    }
+
+    private List<Interval> computeIntervals() {
+        Map<String, Integer> labels = new HashMap<>();
+        for (int i = 0; i < code.size(); i++) {
+            if (code.get(i) instanceof Instruction.Label) labels.put(((Instruction.Label) code.get(i)).name, i);
+        }
+
+        // A loop is the range from a label to a backward jump to it, a branch the range skipped by a forward jump
+        List<int[]> loops = new ArrayList<>();
+        int[] depthChange = new int[code.size() + 1];
+        int[] branchDepthChange = new int[code.size() + 1];
+        List<Integer> calls = new ArrayList<>();
+        for (int i = 0; i < code.size(); i++) {
+            Instruction.Operation operation = operation(i);
+            if (operation == null) continue;
+            if (operation.opcode == Opcode.JAL) calls.add(i);
+            Integer target = operation.target() == null ? null : labels.get(operation.target());
+            if (target != null && target < i) {
+                loops.add(new int[]{target, i});
+                depthChange[target]++;
+                depthChange[i + 1]--;
+            } else if (target != null) {
+                branchDepthChange[i + 1]++;
+                branchDepthChange[target]--;
+            }
+        }
+
+        Map<VirtualRegister, Interval> intervals = new LinkedHashMap<>();
+        Map<VirtualRegister, List<Integer>> uses = new HashMap<>();
+        int depth = 0;
+        int branchDepth = 0;
+        for (int i = 0; i < code.size(); i++) {
+            depth += depthChange[i];
+            branchDepth += branchDepthChange[i];
+            Instruction.Operation operation = operation(i);
+            if (operation == null) continue;
+            double frequency = Math.pow(10, Math.min(depth, 9)) / Math.pow(2, Math.min(branchDepth, 30));
+            for (Operand operand : operation.operands) {
+                if (!(operand instanceof VirtualRegister)) continue;
+                VirtualRegister register = (VirtualRegister) operand;
+                Interval interval = intervals.computeIfAbsent(register, Interval::new);
+                interval.start = Math.min(interval.start, i);
+                interval.end = i;
+                interval.spillCost = unspillable.contains(register) ? Double.POSITIVE_INFINITY
+                        : interval.spillCost + frequency;
+                if (isLoadFromSlot(operation, register)) interval.slotLoadCost += frequency;
+                uses.computeIfAbsent(register, r -> new ArrayList<>()).add(i);
+            }
+        }
+
+        uses.forEach((register, positions) -> {
+            Interval interval = intervals.get(register);
+            boolean variable = variables.contains(register);
+            for (int[] loop : loops) {
+                if (!variable && interval.start >= loop[0]) continue;
+                int next = Collections.binarySearch(positions, loop[0]);
+                if (next < 0) next = -next - 1;
+                if (next < positions.size() && positions.get(next) <= loop[1]) {
+                    interval.start = Math.min(interval.start, loop[0]);
+                    interval.end = Math.max(interval.end, loop[1]);
+                }
+            }
+        });
+
+        for (Interval interval : intervals.values()) {
+            int call = Collections.binarySearch(calls, interval.start);
+            if (call < 0) call = -call - 1;
+            interval.containsCall = call < calls.size() && calls.get(call) < interval.end;
+        }
+
+        List<Interval> sorted = new ArrayList<>(intervals.values());
+        sorted.sort(Comparator.comparingInt((Interval interval) -> interval.start).thenComparingInt(interval -> interval.end));
+        return sorted;
+    }
+
+    private Instruction.Operation operation(int position) {
+        Instruction instruction = code.get(position);
+        return instruction instanceof Instruction.Operation ? (Instruction.Operation) instruction : null;
+    }
+
+    /**
+     * Assigns a register to every interval.
+     *
+     * @return The virtual registers that have to be spilled, which have no register assigned.
+     */
+    private Set<VirtualRegister> assignRegisters(List<Interval> intervals) {
+        Set<VirtualRegister> spilled = new HashSet<>();
+        List<Interval> active = new ArrayList<>();
+        boolean[] free = new boolean[32];
+        boolean[] used = new boolean[32];
+        for (int number = 8; number <= 23; number++) free[number] = true;
+
+        for (Interval current : intervals) {
+            for (Iterator<Interval> iterator = active.iterator(); iterator.hasNext(); ) {
+                Interval interval = iterator.next();
+                if (interval.end < current.start) {
+                    free[interval.assigned.number] = true;
+                    iterator.remove();
+                }
+            }
+
+            Register register = freeRegister(free, used, current.containsCall);
+            if (register != null && current.containsCall && !used[register.number]
+                    && current.spillCost - 2 * current.slotLoadCost <= SAVE_COST) {
+                spilled.add(current.register);
+                continue;
+            }
+            if (register != null) {
+                free[register.number] = false;
+                used[register.number] = true;
+                current.assigned = register;
+                active.add(current);
+                continue;
+            }
+
+            Interval cheapest = current.spillCost == Double.POSITIVE_INFINITY ? null : current;
+            for (Interval interval : active) {
+                if (current.containsCall && interval.assigned.number < FIRST_CALLEE_SAVED_REGISTER) continue;
+                if (cheapest == null || interval.spillCost < cheapest.spillCost
+                        || interval.spillCost == cheapest.spillCost && interval.end > cheapest.end) {
+                    cheapest = interval;
+                }
+            }
+            if (cheapest == null || cheapest.spillCost == Double.POSITIVE_INFINITY) throw SplError.RegisterOverflow();
+
+            spilled.add(cheapest.register);
+            if (cheapest != current) {
+                current.assigned = cheapest.assigned;
+                cheapest.assigned = null;
+                active.remove(cheapest);
+                active.add(current);
+            }
+        }
+        return spilled;
+    }
+
+    /**
+     * @return A free register for an interval, or null if there is none. An interval containing a call gets one of
+     * $16 - $23, preferably one that is already saved because it has been used before.
+     */
+    private static Register freeRegister(boolean[] free, boolean[] used, boolean containsCall) {
+        if (containsCall) {
+            for (int number = FIRST_CALLEE_SAVED_REGISTER; number <= 23; number++) {
+                if (free[number] && used[number]) return new Register(number);
+            }
+        }
+        for (int number = containsCall ? FIRST_CALLEE_SAVED_REGISTER : 8; number <= 23; number++) {
+            if (free[number]) return new Register(number);
+        }
+        return null;
+    }
+
+    /**
+     * Keeps the spilled registers in their stack frame slots. Every instruction reading one of them gets a new
+     * register loaded right before it, every instruction writing one stores a new register right after it.
+     */
+    private void insertSpillCode(Set<VirtualRegister> spilled) {
+        for (VirtualRegister register : spilled) {
+            if (!slots.containsKey(register)) slots.put(register, stackLayout.spillSlotOffset(spillSlots++));
+        }
+
+        List<Instruction> rewritten = new ArrayList<>(code.size());
+        for (Instruction instruction : code) {
+            if (!(instruction instanceof Instruction.Operation)) {
+                rewritten.add(instruction);
+                continue;
+            }
+            Instruction.Operation operation = (Instruction.Operation) instruction;
+            if (operation.opcode == Opcode.LDW && spilled.contains(operation.operand(0))
+                    && isLoadFromSlot(operation, (VirtualRegister) operation.operand(0))) {
+                continue;
+            }
+
+            Map<VirtualRegister, VirtualRegister> replacements = new HashMap<>();
+            List<Operand> operands = new ArrayList<>(operation.operands);
+            int firstUse = operation.opcode.writesFirstOperand() ? 1 : 0;
+            for (int i = firstUse; i < operands.size(); i++) {
+                if (!spilled.contains(operands.get(i))) continue;
+                VirtualRegister register = (VirtualRegister) operands.get(i);
+                if (!replacements.containsKey(register)) {
+                    VirtualRegister reloaded = newUnspillableRegister();
+                    replacements.put(register, reloaded);
+                    rewritten.add(new Instruction.Operation(Opcode.LDW,
+                            List.of(reloaded, Register.FRAME_POINTER, new Immediate(slots.get(register))), "reload"));
+                }
+                operands.set(i, replacements.get(register));
+            }
+
+            VirtualRegister stored = null;
+            if (firstUse == 1 && spilled.contains(operands.get(0))) {
+                stored = (VirtualRegister) operands.get(0);
+                operands.set(0, replacements.computeIfAbsent(stored, register -> newUnspillableRegister()));
+            }
+            rewritten.add(new Instruction.Operation(operation.opcode, operands, operation.comment));
+            if (stored != null) {
+                rewritten.add(new Instruction.Operation(Opcode.STW,
+                        List.of(operands.get(0), Register.FRAME_POINTER, new Immediate(slots.get(stored))), "spill"));
+            }
+        }
+        code.clear();
+        code.addAll(rewritten);
+    }
+
+    /**
+     * @return true if the instruction loads the register from its own slot, like a parameter at the start of the
+     * procedure. Such a load is not needed anymore if the register is spilled.
+     */
+    private boolean isLoadFromSlot(Instruction.Operation operation, VirtualRegister register) {
+        return operation.opcode == Opcode.LDW && operation.operand(0).equals(register) && slots.containsKey(register)
+                && operation.operand(1).equals(Register.FRAME_POINTER)
+                && operation.operand(2).equals(new Immediate(slots.get(register)));
+    }
+
+    private VirtualRegister newUnspillableRegister() {
+        VirtualRegister register = new VirtualRegister(virtualRegisterCount++);
+        unspillable.add(register);
+        return register;
+    }
+
+    /**
+     * Replaces all virtual registers by their assigned registers and removes copies that became useless.
+     */
+    private void replaceRegisters(List<Interval> intervals) {
+        Map<VirtualRegister, Register> assignment = new HashMap<>();
+        intervals.forEach(interval -> assignment.put(interval.register, interval.assigned));
+
+        List<Instruction> rewritten = new ArrayList<>(code.size());
+        for (Instruction instruction : code) {
+            if (!(instruction instanceof Instruction.Operation)) {
+                rewritten.add(instruction);
+                continue;
+            }
+            Instruction.Operation operation = (Instruction.Operation) instruction;
+            List<Operand> operands = new ArrayList<>(operation.operands);
+            operands.replaceAll(operand -> operand instanceof VirtualRegister ? assignment.get(operand) : operand);
+            boolean uselessCopy = operation.opcode == Opcode.ADD && operands.get(2).equals(Register.ZERO)
+                    && operands.get(0).equals(operands.get(1));
+            if (!uselessCopy) rewritten.add(new Instruction.Operation(operation.opcode, operands, operation.comment));
+        }
+        code.clear();
+        code.addAll(rewritten);
+    }
+}
@@ -0,0 +1,83 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes which registers are live after every instruction of a procedure, i.e. which registers may still be read
+ * before they are written again.
+ * <p>
+ * Sets of registers are represented as bit masks indexed by the register number, see {@link Register#mask(Register)}.
+ */
+class Liveness {
+    /**
+     * The registers the caller still needs when the procedure returns or jumps to a label outside of the procedure:
+     * the registers every procedure has to preserve, the frame and stack pointer and the return address. The argument
+     * registers are included for jumps to another procedure at the end of a tail call.
+     */
+    static final int LIVE_AT_EXIT = 0xFF << 16 | Register.ARGUMENT_REGISTERS | Register.mask(Register.FRAME_POINTER)
+            | Register.mask(Register.STACK_POINTER) | Register.mask(Register.RETURN_ADDRESS);
+
+    private static final int EXIT = -1;
+    private static final int NONE = -2;
+
+    private final int[] liveIn;
+    private final int[] liveOut;
+
+    Liveness(List<Instruction> code) {
+        int size = code.size();
+        Map<String, Integer> labels = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            if (code.get(i) instanceof Instruction.Label) labels.put(((Instruction.Label) code.get(i)).name, i);
+        }
+
+        // Every instruction has at most two successors: the following instruction and the target of a jump
+        int[] next = new int[size];
+        int[] target = new int[size];
+        int[] used = new int[size];
+        int[] defined = new int[size];
+        for (int i = 0; i < size; i++) {
+            next[i] = i + 1 < size ? i + 1 : EXIT;
+            target[i] = NONE;
+            if (code.get(i) instanceof Instruction.Operation) {
+                Instruction.Operation operation = (Instruction.Operation) code.get(i);
+                used[i] = operation.usedRegisters();
+                defined[i] = operation.definedRegisters();
+                if (operation.opcode.isUnconditionalJump()) next[i] = NONE;
+                String label = operation.target();
+                if (operation.opcode == Opcode.JR) target[i] = EXIT;
+                else if (label != null) target[i] = labels.getOrDefault(label, EXIT);
+            }
+        }
+
+        liveIn = new int[size];
+        liveOut = new int[size];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = size - 1; i >= 0; i--) {
+                int out = liveAt(next[i]) | liveAt(target[i]);
+                int in = used[i] | out & ~defined[i];
+                if (in != liveIn[i] || out != liveOut[i]) {
+                    liveIn[i] = in;
+                    liveOut[i] = out;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private int liveAt(int index) {
+        if (index == EXIT) return LIVE_AT_EXIT;
+        if (index == NONE) return 0;
+        return liveIn[index];
+    }
+
+    /**
+     * @return true if the register may be read after the instruction at the given index before it is written again.
+     */
+    boolean isLiveAfter(int index, Register register) {
+        return (liveOut[index] & Register.mask(register)) != 0;
+    }
+}
@@ -0,0 +1,56 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+/**
+ * The ECO32 instructions used by the code generator.
+ * <p>
+ * Arithmetic instructions are always written in their register form. If the last operand is an {@link Immediate},
+ * the assembler selects the immediate form of the instruction on its own.
+ */
+enum Opcode {
+    ADD(Kind.COMPUTE), SUB(Kind.COMPUTE), MUL(Kind.COMPUTE), DIV(Kind.COMPUTE),
+    SLL(Kind.COMPUTE), SLR(Kind.COMPUTE), SAR(Kind.COMPUTE),
+    LDW(Kind.LOAD), STW(Kind.STORE),
+    BEQ(Kind.BRANCH), BNE(Kind.BRANCH), BLT(Kind.BRANCH), BLE(Kind.BRANCH), BGT(Kind.BRANCH), BGE(Kind.BRANCH),
+    BGEU(Kind.BRANCH),
+    J(Kind.JUMP), JAL(Kind.CALL), JR(Kind.JUMP);
+
+    private enum Kind {
+        COMPUTE, LOAD, STORE, BRANCH, JUMP, CALL
+    }
+
+    final String mnemonic;
+    private final Kind kind;
+
+    Opcode(Kind kind) {
+        this.mnemonic = name().toLowerCase();
+        this.kind = kind;
+    }
+
+    /**
+     * @return true if the first operand is the register the result of the instruction is written to.
+     */
+    boolean writesFirstOperand() {
+        return kind == Kind.COMPUTE || kind == Kind.LOAD;
+    }
+
+    /**
+     * @return true if the instruction accesses memory at the address given by its second and third operand.
+     */
+    boolean isMemoryAccess() {
+        return kind == Kind.LOAD || kind == Kind.STORE;
+    }
+
+    /**
+     * @return true if the instruction is a conditional branch to the label given as its last operand.
+     */
+    boolean isBranch() {
+        return kind == Kind.BRANCH;
+    }
+
+    /**
+     * @return true if execution never continues with the following instruction.
+     */
+    boolean isUnconditionalJump() {
+        return kind == Kind.JUMP;
+    }
+}
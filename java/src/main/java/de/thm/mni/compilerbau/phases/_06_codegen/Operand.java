@@ -0,0 +1,8 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+/**
+ * An operand of an {@link Instruction}: a {@link Register}, an {@link Immediate} value or a {@link LabelReference}.
+ * The string representation of an operand is its ECO32 assembler syntax.
+ */
+interface Operand {
+}
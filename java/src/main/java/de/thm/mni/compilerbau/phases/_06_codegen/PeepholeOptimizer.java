@@ -0,0 +1,152 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Improves the code of a procedure by replacing short sequences of instructions with shorter ones (--peephole).
+ * <p>
+ * Every {@link Rule} is tried at every position of the code, until no rule changes the code anymore.
+ * The rules used by default are defined in {@link PeepholeRules}.
+ */
+class PeepholeOptimizer {
+    /**
+     * A single rewriting of instruction sequences.
+     */
+    interface Rule {
+        /**
+         * Tries to rewrite the instructions starting at the given position.
+         *
+         * @return true if the code was changed.
+         */
+        boolean apply(Code code, int position);
+    }
+
+    private final List<Rule> rules;
+
+    PeepholeOptimizer() {
+        this(PeepholeRules.defaultRules());
+    }
+
+    PeepholeOptimizer(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    void optimize(InstructionList instructions) {
+        Code code = new Code(instructions.instructions);
+        boolean changed;
+        do {
+            changed = false;
+            for (int position = 0; position < code.size(); position++) {
+                for (Rule rule : rules) {
+                    if (position < code.size() && rule.apply(code, position)) changed = true;
+                }
+            }
+        } while (changed);
+    }
+
+    /**
+     * The instructions of a procedure together with facts about them. The facts are recomputed when needed after the
+     * instructions have been changed.
+     */
+    static class Code {
+        private final List<Instruction> instructions;
+        private Liveness liveness = null;
+        private Set<String> referencedLabels = null;
+
+        Code(List<Instruction> instructions) {
+            this.instructions = instructions;
+        }
+
+        int size() {
+            return instructions.size();
+        }
+
+        Instruction get(int position) {
+            return instructions.get(position);
+        }
+
+        /**
+         * @return The instruction at the given position if it is an {@link Instruction.Operation}, null otherwise.
+         */
+        Instruction.Operation operation(int position) {
+            Instruction instruction = position < instructions.size() ? instructions.get(position) : null;
+            return instruction instanceof Instruction.Operation ? (Instruction.Operation) instruction : null;
+        }
+
+        void replace(int position, Instruction instruction) {
+            instructions.set(position, instruction);
+            changed();
+        }
+
+        /**
+         * Replaces the instruction at the given position with a sequence of instructions.
+         */
+        void replace(int position, List<Instruction> replacement) {
+            instructions.remove(position);
+            instructions.addAll(position, replacement);
+            changed();
+        }
+
+        void remove(int position) {
+            instructions.remove(position);
+            changed();
+        }
+
+        private void changed() {
+            liveness = null;
+            referencedLabels = null;
+        }
+
+        /**
+         * @return true if the register may be read after the instruction at the given position before it is written.
+         */
+        boolean isLiveAfter(int position, Register register) {
+            // Most registers are written again within a few instructions, which does not require the full analysis.
+            // This only follows the next instructions, so it cannot start at a branch.
+            Instruction.Operation current = operation(position);
+            boolean branches = current != null && (current.opcode.isBranch() || current.opcode.isUnconditionalJump());
+            for (int i = position + 1; !branches && i < instructions.size(); i++) {
+                Instruction.Operation operation = operation(i);
+                if (operation == null || operation.opcode.isBranch() || operation.opcode.isUnconditionalJump()) break;
+                if ((operation.usedRegisters() & Register.mask(register)) != 0) return true;
+                if ((operation.definedRegisters() & Register.mask(register)) != 0) return false;
+            }
+
+            if (liveness == null) liveness = new Liveness(instructions);
+            return liveness.isLiveAfter(position, register);
+        }
+
+        /**
+         * @return A register for free use that is neither live after the instruction at the given position nor the
+         * excluded register, or null if all of them are in use.
+         */
+        Register unusedRegister(int position, Register excluded) {
+            for (int number = 8; number <= 23; number++) {
+                Register register = new Register(number);
+                if (!register.equals(excluded) && !isLiveAfter(position, register)) return register;
+            }
+            return null;
+        }
+
+        /**
+         * @return true if the label is used by any instruction or directive of the procedure.
+         */
+        boolean isReferenced(String label) {
+            if (referencedLabels == null) {
+                referencedLabels = new HashSet<>();
+                for (Instruction instruction : instructions) {
+                    if (instruction instanceof Instruction.Operation) {
+                        ((Instruction.Operation) instruction).operands.stream()
+                                .filter(operand -> operand instanceof LabelReference)
+                                .forEach(operand -> referencedLabels.add(((LabelReference) operand).label));
+                    } else if (instruction instanceof Instruction.Directive) {
+                        referencedLabels.add(((Instruction.Directive) instruction).argument);
+                    }
+                }
+            }
+            return referencedLabels.contains(label);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import de.thm.mni.compilerbau.phases._06_codegen.PeepholeOptimizer.Code;
+import de.thm.mni.compilerbau.phases._06_codegen.PeepholeOptimizer.Rule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The rules of the {@link PeepholeOptimizer}.
+ */
+class PeepholeRules {
+    private PeepholeRules() {
+    }
+
+    static List<Rule> defaultRules() {
+        return List.of(new FoldAddressIntoMemoryAccess(), new DropJumpToNextLabel(), new RemoveDeadLabel(),
+                new RemoveUnreachableCode(), new MergeRegisterAdjustments(), new PropagateCopy(), new CoalesceCopy());
+    }
+
+    /**
+     * Folds an address computed by adding a constant to a register into the offset of the load or store using it:
+     * <pre>
+     *     add  $8,$25,-4           ldw  $8,$25,-4
+     *     ldw  $8,$8,0       =&gt;
+     * </pre>
+     * This is only done if the address register is not read anymore and the base register is not changed between
+     * both instructions.
+     */
+    static class FoldAddressIntoMemoryAccess implements Rule {
+        @Override
+        public boolean apply(Code code, int position) {
+            Instruction.Operation add = code.operation(position);
+            Integer offset = constantAddend(add);
+            if (offset == null) return false;
+            Register address = (Register) add.operand(0);
+            Register base = (Register) add.operand(1);
+            if (address.equals(base)) return false;
+
+            for (int i = position + 1; i < code.size(); i++) {
+                Instruction.Operation operation = code.operation(i);
+                if (operation == null || operation.opcode.isBranch() || operation.opcode.isUnconditionalJump()
+                        || operation.opcode == Opcode.JAL) {
+                    return false;
+                }
+
+                if (operation.opcode.isMemoryAccess() && operation.operand(1).equals(address)
+                        && !(operation.opcode == Opcode.STW && operation.operand(0).equals(address))) {
+                    long folded = (long) offset + ((Immediate) operation.operand(2)).value;
+                    if (!Immediate.isSigned16(folded)) return false;
+                    boolean overwritten = (operation.definedRegisters() & Register.mask(address)) != 0;
+                    if (!overwritten && code.isLiveAfter(i, address)) return false;
+
+                    code.replace(i, new Instruction.Operation(operation.opcode,
+                            List.of(operation.operand(0), base, new Immediate((int) folded)), operation.comment));
+                    code.remove(position);
+                    return true;
+                }
+
+                if ((operation.usedRegisters() & Register.mask(address)) != 0) return false;
+                if ((operation.definedRegisters() & (Register.mask(address) | Register.mask(base))) != 0) return false;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Removes jumps and branches to a label directly following them:
+     * <pre>
+     *     j    main.L1
+     *     main.L1:           =&gt;      main.L1:
+     * </pre>
+     */
+    static class DropJumpToNextLabel implements Rule {
+        @Override
+        public boolean apply(Code code, int position) {
+            Instruction.Operation jump = code.operation(position);
+            if (jump == null || jump.opcode != Opcode.J && !jump.opcode.isBranch()) return false;
+
+            for (int i = position + 1; i < code.size() && code.get(i) instanceof Instruction.Label; i++) {
+                if (((Instruction.Label) code.get(i)).name.equals(jump.target())) {
+                    code.remove(position);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Removes labels that are neither jumped to nor exported.
+     */
+    static class RemoveDeadLabel implements Rule {
+        @Override
+        public boolean apply(Code code, int position) {
+            Instruction instruction = code.get(position);
+            if (!(instruction instanceof Instruction.Label) || code.isReferenced(((Instruction.Label) instruction).name)) {
+                return false;
+            }
+            code.remove(position);
+            return true;
+        }
+    }
+
+    /**
+     * Removes instructions behind an unconditional jump that no label leads to, like the jump over the else part
+     * behind a tail call:
+     * <pre>
+     *     j    f.L0               j    f.L0
+     *     j    f.L4       =&gt;      f.L3:
+     *     f.L3:
+     * </pre>
+     */
+    static class RemoveUnreachableCode implements Rule {
+        @Override
+        public boolean apply(Code code, int position) {
+            Instruction.Operation jump = code.operation(position);
+            if (jump == null || !jump.opcode.isUnconditionalJump() || code.operation(position + 1) == null) return false;
+            code.remove(position + 1);
+            return true;
+        }
+    }
+
+    /**
+     * Merges consecutive additions of constants to the same register, like adjustments of the stack pointer, and
+     * removes additions of zero:
+     * <pre>
+     *     sub  $29,$29,8
+     *     add  $29,$29,4     =&gt;      sub  $29,$29,4
+     * </pre>
+     */
+    static class MergeRegisterAdjustments implements Rule {
+        @Override
+        public boolean apply(Code code, int position) {
+            Instruction.Operation first = code.operation(position);
+            Integer firstAddend = adjustment(first);
+            if (firstAddend == null) return false;
+            if (firstAddend == 0) {
+                code.remove(position);
+                return true;
+            }
+
+            Instruction.Operation second = code.operation(position + 1);
+            Integer secondAddend = adjustment(second);
+            if (secondAddend == null || !second.operand(0).equals(first.operand(0))) return false;
+
+            long sum = (long) firstAddend + secondAddend;
+            if (!Immediate.isSigned16(sum)) return false;
+            Immediate value = new Immediate((int) (first.opcode == Opcode.SUB ? -sum : sum));
+            code.replace(position, new Instruction.Operation(first.opcode,
+                    List.of(first.operand(0), first.operand(1), value), first.comment));
+            code.remove(position + 1);
+            return true;
+        }
+
+        /**
+         * @return The constant added by an instruction adding a constant to a register in place, null otherwise.
+         */
+        private static Integer adjustment(Instruction.Operation operation) {
+            Integer addend = constantAddend(operation);
+            return addend != null && operation.operand(0).equals(operation.operand(1)) ? addend : null;
+        }
+    }
+
+    /**
+     * Reads the source of a copy instead of its destination in the next instruction reading the destination, and
+     * removes the copy if the destination is not read anymore afterwards:
+     * <pre>
+     *     add  $8,$23,$0
+     *     add  $8,$8,1       =&gt;      add  $8,$23,1
+     * </pre>
+     * This removes the copies of variables kept in registers (--registerVariables) into the registers used for the
+     * evaluation of expressions.
+     */
+    static class PropagateCopy implements Rule {
+        @Override
+        public boolean apply(Code code, int position) {
+            Instruction.Operation copy = code.operation(position);
+            if (!isCopy(copy)) return false;
+            Register destination = (Register) copy.operand(0);
+            Register source = (Register) copy.operand(1);
+            int copyRegisters = Register.mask(destination) | Register.mask(source);
+
+            for (int i = position + 1; i < code.size(); i++) {
+                Instruction.Operation operation = code.operation(i);
+                if (operation == null || operation.opcode.isUnconditionalJump() || operation.opcode == Opcode.JAL) {
+                    return false;
+                }
+
+                if ((operation.usedRegisters() & Register.mask(destination)) != 0) {
+                    boolean overwritten = (operation.definedRegisters() & Register.mask(destination)) != 0;
+                    if (!overwritten && code.isLiveAfter(i, destination)) return false;
+
+                    List<Operand> operands = new ArrayList<>(operation.operands);
+                    for (int j = operation.opcode.writesFirstOperand() ? 1 : 0; j < operands.size(); j++) {
+                        if (operands.get(j).equals(destination)) operands.set(j, source);
+                    }
+                    code.replace(i, new Instruction.Operation(operation.opcode, operands, operation.comment));
+                    code.remove(position);
+                    return true;
+                }
+
+                if ((operation.definedRegisters() & copyRegisters) != 0 || operation.opcode.isBranch()) return false;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Computes a value directly into the destination of a copy following it, if the register the value was computed
+     * into is not read anymore:
+     * <pre>
+     *     add  $8,$23,1
+     *     add  $23,$8,$0     =&gt;      add  $23,$23,1
+     * </pre>
+     * This removes the copies of the values assigned to variables kept in registers (--registerVariables).
+     */
+    static class CoalesceCopy implements Rule {
+        @Override
+        public boolean apply(Code code, int position) {
+            Instruction.Operation definition = code.operation(position);
+            Instruction.Operation copy = code.operation(position + 1);
+            if (definition == null || !definition.opcode.writesFirstOperand() || !isCopy(copy)) return false;
+            if (!copy.operand(1).equals(definition.operand(0)) || code.isLiveAfter(position + 1, (Register) copy.operand(1))) {
+                return false;
+            }
+
+            List<Operand> operands = new ArrayList<>(definition.operands);
+            operands.set(0, copy.operand(0));
+            code.replace(position, new Instruction.Operation(definition.opcode, operands, definition.comment));
+            code.remove(position + 1);
+            return true;
+        }
+    }
+
+    /**
+     * @return true if the instruction copies a register into another one by adding {@code $0}.
+     */
+    private static boolean isCopy(Instruction.Operation operation) {
+        return operation != null && operation.opcode == Opcode.ADD && operation.operand(2).equals(Register.ZERO)
+                && !operation.operand(0).equals(operation.operand(1));
+    }
+
+    /**
+     * @return The constant added by an {@code add} or {@code sub} instruction with an immediate operand, null if the
+     * instruction is of another kind.
+     */
+    private static Integer constantAddend(Instruction.Operation operation) {
+        if (operation == null || operation.opcode != Opcode.ADD && operation.opcode != Opcode.SUB) return null;
+        if (!(operation.operand(2) instanceof Immediate)) return null;
+        int value = ((Immediate) operation.operand(2)).value;
+        return operation.opcode == Opcode.ADD ? value : -value;
+    }
+}
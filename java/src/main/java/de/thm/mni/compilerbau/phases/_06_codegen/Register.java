@@ -1,6 +1,15 @@
 package de.thm.mni.compilerbau.phases._06_codegen;
 
-class Register {
+class Register implements Operand {
+    static final Register ZERO = new Register(0);
+    static final Register FRAME_POINTER = new Register(25);
+    static final Register STACK_POINTER = new Register(29);
+    static final Register RETURN_ADDRESS = new Register(31);
+    /**
+     * The registers $4 - $7 passing the first arguments of user-defined procedures (--registerArguments), as a bit mask.
+     */
+    static final int ARGUMENT_REGISTERS = 0xF << 4;
+
     final int number;
 
     Register(int number) {
@@ -42,6 +51,23 @@ class Register {
         return new Register(number + 1);
     }
 
+    /**
+     * @return A bit mask with only the bit of the register set. Sets of registers are represented by such masks.
+     */
+    static int mask(Register register) {
+        return 1 << register.number;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Register && ((Register) o).number == number;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(number);
+    }
+
     @Override
     public String toString() {
         return "$" + number;
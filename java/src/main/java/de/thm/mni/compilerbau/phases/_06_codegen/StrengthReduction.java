@@ -0,0 +1,110 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+import de.thm.mni.compilerbau.phases._06_codegen.PeepholeOptimizer.Code;
+import de.thm.mni.compilerbau.phases._06_codegen.PeepholeOptimizer.Rule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces multiplications and divisions by constants with shifts, additions and subtractions (--strengthReduction).
+ * The multiplier and the divider of the ECO32 need many cycles, while shifts and additions take only one.
+ * <ul>
+ * <li>Multiplications by powers of two become a single left shift, like the scaling of array indices.</li>
+ * <li>Multiplications by other constants of the form 2^a + 2^b or 2^a - 2^b become two shifts and an addition or
+ * subtraction.</li>
+ * <li>Signed divisions by powers of two become an arithmetic right shift. As the division rounds towards zero,
+ * 2^k - 1 is added to negative dividends first.</li>
+ * </ul>
+ * Division by other constants would need the high word of a product, which the ECO32 does not provide.
+ */
+class StrengthReduction implements Rule {
+    private static final int MAX_SHIFT_AND_ADD_LENGTH = 3;
+
+    @Override
+    public boolean apply(Code code, int position) {
+        Instruction.Operation operation = code.operation(position);
+        if (operation == null || operation.opcode != Opcode.MUL && operation.opcode != Opcode.DIV) return false;
+        if (!(operation.operand(2) instanceof Immediate)) return false;
+
+        Register result = (Register) operation.operand(0);
+        Register operand = (Register) operation.operand(1);
+        int constant = ((Immediate) operation.operand(2)).value;
+        // Registers other than the result and the operand may only be used if they are not live
+        Register temporary = result.equals(operand) ? code.unusedRegister(position, operand) : result;
+
+        List<Instruction> replacement = operation.opcode == Opcode.MUL
+                ? multiplication(result, operand, constant, temporary)
+                : division(result, operand, constant, temporary);
+        if (replacement == null) return false;
+        code.replace(position, replacement);
+        return true;
+    }
+
+    private static List<Instruction> multiplication(Register result, Register operand, int constant, Register temporary) {
+        List<Instruction> code = new ArrayList<>();
+        if (constant == 0) {
+            code.add(operation(Opcode.ADD, result, Register.ZERO, 0));
+            return code;
+        }
+
+        long factor = Math.abs((long) constant);
+        int low = Long.numberOfTrailingZeros(factor);
+        long remaining = factor - (1L << low);
+        if (remaining == 0) {
+            code.add(operation(Opcode.SLL, result, operand, low));
+        } else if (temporary != null && Long.bitCount(remaining) == 1) {
+            // factor = 2^high + 2^low
+            addShifted(code, Opcode.ADD, result, operand, Long.numberOfTrailingZeros(remaining) - low, low, temporary);
+        } else if (temporary != null && Long.bitCount(factor + (1L << low)) == 1) {
+            // factor = 2^high - 2^low
+            addShifted(code, Opcode.SUB, result, operand, Long.numberOfTrailingZeros(factor + (1L << low)) - low, low, temporary);
+        } else {
+            return null;
+        }
+
+        if (constant < 0) code.add(new Instruction.Operation(Opcode.SUB, List.of(result, Register.ZERO, result), null));
+        return code.size() <= MAX_SHIFT_AND_ADD_LENGTH ? code : null;
+    }
+
+    /**
+     * Computes result = ((operand << shift) +/- operand) << finalShift.
+     */
+    private static void addShifted(List<Instruction> code, Opcode combine, Register result, Register operand,
+                                   int shift, int finalShift, Register temporary) {
+        code.add(operation(Opcode.SLL, temporary, operand, shift));
+        Register combined = finalShift == 0 ? result : temporary;
+        code.add(new Instruction.Operation(combine, List.of(combined, temporary, operand), null));
+        if (finalShift != 0) code.add(operation(Opcode.SLL, result, temporary, finalShift));
+    }
+
+    private static List<Instruction> division(Register result, Register operand, int constant, Register temporary) {
+        // Division by -1 may overflow and division by 0 has to trap, both are left to the divider
+        if (constant == 0 || constant == -1 || constant == Integer.MIN_VALUE) return null;
+        long divisor = Math.abs((long) constant);
+        if (Long.bitCount(divisor) != 1) return null;
+
+        List<Instruction> code = new ArrayList<>();
+        int shift = Long.numberOfTrailingZeros(divisor);
+        if (shift == 0) {
+            code.add(operation(Opcode.ADD, result, operand, 0));
+        } else {
+            if (temporary == null) return null;
+            if (shift == 1) {
+                code.add(operation(Opcode.SLR, temporary, operand, 31));
+            } else {
+                code.add(operation(Opcode.SAR, temporary, operand, 31));
+                code.add(operation(Opcode.SLR, temporary, temporary, 32 - shift));
+            }
+            code.add(new Instruction.Operation(Opcode.ADD, List.of(temporary, operand, temporary), null));
+            code.add(operation(Opcode.SAR, result, temporary, shift));
+        }
+
+        if (constant < 0) code.add(new Instruction.Operation(Opcode.SUB, List.of(result, Register.ZERO, result), null));
+        return code;
+    }
+
+    private static Instruction operation(Opcode opcode, Register result, Register operand, int value) {
+        return new Instruction.Operation(opcode, List.of(result, operand, new Immediate(value)), null);
+    }
+}
@@ -0,0 +1,28 @@
+package de.thm.mni.compilerbau.phases._06_codegen;
+
+/**
+ * A register of unlimited supply used by the {@link CodeSelector}, which is mapped to one of the registers $8 - $23
+ * by the {@link LinearScanAllocator} before the code is printed (--linearScan).
+ */
+class VirtualRegister implements Operand {
+    final int number;
+
+    VirtualRegister(int number) {
+        this.number = number;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof VirtualRegister && ((VirtualRegister) o).number == number;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(number);
+    }
+
+    @Override
+    public String toString() {
+        return "%" + number;
+    }
+}
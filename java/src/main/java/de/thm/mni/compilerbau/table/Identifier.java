@@ -2,15 +2,16 @@ package de.thm.mni.compilerbau.table;
 
 /**
  * Represents an identifier in SPL.
- * Implements string interning internally to speed up lookups in symbol tables.
+ * <p>
+ * Identifiers are not interned: {@link String#intern()} goes through a table shared by the whole JVM, which
+ * concurrent compilations would contend on. Identifiers are short and their hash codes are cached,
+ * so comparing them in table lookups is cheap anyway.
  */
 public class Identifier {
     private final String identifier;
 
     public Identifier(String identifier) {
-        //Intern the identifier.
-        //This way string equality in table lookups can be determined by only comparing the references.
-        this.identifier = identifier.intern();
+        this.identifier = identifier;
     }
 
     public int hashCode() {
@@ -43,6 +43,14 @@ public class ProcedureEntry implements Entry {
         return procedureEntry;
     }
 
+    /**
+     * @return true if this entry was created by {@link #predefinedProcedureEntry}, i.e. the procedure is a routine
+     * of the runtime library.
+     */
+    public boolean isPredefined() {
+        return localTable == null;
+    }
+
     @Override
     public String toString() {
         return String.format("proc: (%s)", this.parameterTypes.stream().map(Objects::toString).collect(Collectors.joining(", ")));
@@ -2,10 +2,12 @@ package de.thm.mni.compilerbau.table;
 
 import de.thm.mni.compilerbau.utils.SplError;
 
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -47,9 +49,10 @@ public class SymbolTable {
      *
      * @param name  The name of the symbol that is entered.
      * @param entry The entry for the new symbol.
+     * @return false if a symbol with this name already exists in this scope, true otherwise.
      */
-    public void enter(Identifier name, Entry entry) {
-        this.entries.putIfAbsent(name, entry);
+    public boolean enter(Identifier name, Entry entry) {
+        return this.entries.putIfAbsent(name, entry) == null;
     }
 
     /**
@@ -62,10 +65,8 @@ public class SymbolTable {
      * @throws SplError If a symbol with this name is already defined.
      */
     public void enter(Identifier name, Entry entry, SplError error) {
-        if (this.entries.containsKey(name))
+        if (!this.enter(name, entry))
             throw error;
-
-        this.enter(name, entry);
     }
 
     /**
@@ -93,7 +94,10 @@ public class SymbolTable {
      * @see SymbolTable#find(Identifier)
      */
     public Entry lookup(Identifier name, SplError error) {
-        return find(name).orElseThrow(() -> error);
+        Entry entry = lookup(name);
+
+        if (entry == null) throw error;
+        return entry;
     }
 
     /**
@@ -108,6 +112,13 @@ public class SymbolTable {
         return Optional.ofNullable(lookup(name));
     }
 
+    /**
+     * @return The names of all symbols defined in this scope, without those of the outer scopes.
+     */
+    public Set<Identifier> names() {
+        return Collections.unmodifiableSet(this.entries.keySet());
+    }
+
     /**
      * Converts the table to a human-readable format.
      *
@@ -11,6 +11,7 @@ public class VariableEntry implements Entry {
     public final Type type;
     public final boolean isReference;
     public Integer offset = null; // This value has to be set in phase 5
+    public Integer register = null; // This value is set in phase 5 if the variable is kept in a register
 
     /**
      * Creates a new {@link Entry} representing a declared SPL variable. This variable can be a local variable or the
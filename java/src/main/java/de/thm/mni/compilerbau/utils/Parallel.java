@@ -0,0 +1,46 @@
+package de.thm.mni.compilerbau.utils;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Runs independent work, like the processing of single procedures, in parallel on the common fork-join pool.
+ * <p>
+ * The phases process every procedure by a visitor of its own, which only changes the table entries of its own
+ * procedure and reads everything else, so the work for different procedures never interferes. The syntax tree is
+ * immutable: a phase changing a procedure rebuilds it, sharing the unchanged parts of the tree, and keeps the
+ * procedures it does not change as they are.
+ * <p>
+ * Errors are reported as in a sequential run: if the work fails for several elements,
+ * the exception of the first of them is thrown, so the reported error does not depend on the scheduling.
+ */
+public class Parallel {
+    /**
+     * Applies a function to every element of a list in parallel.
+     *
+     * @param elements The elements to process.
+     * @param f        The function to apply. It must not depend on the results for other elements.
+     * @return The results in the order of the given elements.
+     */
+    public static <T, R> List<R> map(List<T> elements, Function<T, R> f) {
+        List<Try<R>> results = elements.parallelStream()
+                .map(element -> Try.execute(() -> f.apply(element)))
+                .collect(Collectors.toList());
+        return results.stream().map(Try::getOrThrow).collect(Collectors.toList());
+    }
+
+    /**
+     * Runs an action for every element of a list in parallel.
+     *
+     * @param elements The elements to process.
+     * @param action   The action to run. It must not depend on the actions for other elements.
+     */
+    public static <T> void forEach(List<T> elements, Consumer<T> action) {
+        map(elements, element -> {
+            action.accept(element);
+            return null;
+        });
+    }
+}
@@ -6,19 +6,22 @@ import de.thm.mni.compilerbau.table.Identifier;
 /**
  * An exception class, that encapsulates all possible SPL errors.
  * Contains static methods that construct exceptions for specific errors.
+ * <p>
+ * SplErrors describe errors in the compiled program, not in the compiler. They are reported by their message and
+ * position only, so they are created without a stack trace to keep them cheap.
  */
 public class SplError extends RuntimeException {
     public final Position position;
     public final int errorCode;
 
     private SplError(Position position, String message, Object... formatArgs) {
-        super(String.format(message, formatArgs));
+        super(String.format(message, formatArgs), null, false, false);
         this.errorCode = 1;
         this.position = position;
     }
 
     private SplError(int errorCode, Position position, String message, Object... formatArgs) {
-        super(String.format(message, formatArgs));
+        super(String.format(message, formatArgs), null, false, false);
         this.errorCode = errorCode;
         this.position = position;
     }
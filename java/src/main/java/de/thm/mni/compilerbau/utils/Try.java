@@ -71,4 +71,14 @@ public class Try<T> {
     public <U> Try<U> map(Function<T, U> f) {
         return this.isDefined() ? new Try<>(f.apply(this.value), null) : new Try<>(null, this.exception);
     }
+
+    /**
+     * @return The value of this Try if it is defined.
+     * @throws RuntimeException The contained exception, wrapped if it is a checked exception.
+     */
+    public T getOrThrow() {
+        if (this.isDefined()) return this.value;
+        if (this.exception instanceof RuntimeException) throw (RuntimeException) this.exception;
+        throw new RuntimeException(this.exception);
+    }
 }